@@ -28,9 +28,7 @@ package de.unkrig.txt2html.antlib;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -48,18 +46,24 @@ import de.unkrig.commons.file.filetransformation.FileTransformations;
 import de.unkrig.commons.file.filetransformation.FileTransformations.ArchiveCombiner;
 import de.unkrig.commons.file.filetransformation.FileTransformer;
 import de.unkrig.commons.file.filetransformation.FileTransformer.Mode;
-import de.unkrig.commons.io.IoUtil;
 import de.unkrig.commons.lang.protocol.PredicateUtil;
 import de.unkrig.commons.nullanalysis.Nullable;
 import de.unkrig.commons.text.pattern.Glob;
+import de.unkrig.txt2html.ConversionManifest;
+import de.unkrig.txt2html.ConversionStatistics;
+import de.unkrig.txt2html.SvgCache;
 import de.unkrig.txt2html.Txt2SvgFilterWriter;
 
 public
 class Txt2HtmlTask extends Task {
 
-    private Charset              charset   = Charset.forName("UTF-8");
-    @Nullable private File       tofile    = null;
-    private final List<Resource> resources = new ArrayList<>();
+    private Charset              charset      = Charset.forName("UTF-8");
+    @Nullable private File       tofile       = null;
+    private boolean              sharedStyles = false;
+    private boolean              compact      = false;
+    @Nullable private File       manifest     = null;
+    private boolean              statistics   = false;
+    private final List<Resource> resources    = new ArrayList<>();
     
     // ========================= CONFIGURATION SETTERS =========================
     
@@ -72,6 +76,32 @@ class Txt2HtmlTask extends Task {
     public void
     setTofile(File tofile) { this.tofile = tofile; }
 
+    /**
+     * Whether to emit one stylesheet and arrow head marker per HTML document, and let all diagrams refer to it,
+     * instead of repeating the styles in each diagram.
+     */
+    public void
+    setSharedStyles(boolean value) { this.sharedStyles = value; }
+
+    /**
+     * Whether to produce smaller SVG markup, with merged paths and without whitespace.
+     */
+    public void
+    setCompact(boolean value) { this.compact = value; }
+
+    /**
+     * If set, then the hashes of all input and output files are recorded in this file, and the next run skips the
+     * files that have not changed since.
+     */
+    public void
+    setManifest(File manifest) { this.manifest = manifest; }
+
+    /**
+     * Whether to count the documents, diagrams, detector probes and conversion times, and log a summary at the end.
+     */
+    public void
+    setStatistics(boolean value) { this.statistics = value; }
+
     public void
     addConfiguredFileSet(FileSet fileSet) {
         for (@SuppressWarnings("unchecked") Iterator<Resource> it = fileSet.iterator(); it.hasNext();) {
@@ -98,6 +128,11 @@ class Txt2HtmlTask extends Task {
         ExceptionHandler<IOException> exceptionHandler    = ExceptionHandler.defaultHandler();
 
 
+        // Javadoc trees repeat the same diagrams on many pages.
+        final SvgCache cache = new SvgCache(SvgCache.DEFAULT_MAX_BYTES);
+
+        final ConversionStatistics statistics = this.statistics ? new ConversionStatistics() : null;
+
         // Create a ContentsTransformer that does the ASCII-art-to-SVG transformation.
         ContentsTransformer ct = new ContentsTransformer() {
             
@@ -105,9 +140,16 @@ class Txt2HtmlTask extends Task {
             transform(String path, InputStream is, OutputStream os) throws IOException {
 
                 try {
-                    IoUtil.copy(
-                        new InputStreamReader(is, Txt2HtmlTask.this.charset),                           // reader
-                        Txt2SvgFilterWriter.make(new OutputStreamWriter(os, Txt2HtmlTask.this.charset)) // writer
+                    Txt2SvgFilterWriter.transform(
+                        is,                                    // is
+                        os,                                    // os
+                        Txt2HtmlTask.this.charset,             // charset
+                        Txt2SvgFilterWriter.PATTERN_ASCII_ART, // asciiArtPattern
+                        Txt2HtmlTask.this.sharedStyles,        // sharedStyles
+                        Txt2HtmlTask.this.compact,             // compact
+                        cache,                                 // cache
+                        path,                                  // path
+                        statistics                             // statistics
                     );
                 } catch (RuntimeException re) {
                     if (re == FileTransformer.NOT_IDENTICAL) {
@@ -118,6 +160,15 @@ class Txt2HtmlTask extends Task {
             }
         };
 
+        // Skip files that have not changed since the last run.
+        ConversionManifest manifest = null;
+        if (this.manifest != null) {
+            manifest = ConversionManifest.load(
+                this.manifest,
+                "charset=" + this.charset + ",sharedStyles=" + this.sharedStyles + ",compact=" + this.compact
+            );
+        }
+
         final File tofile = this.tofile;
         if (tofile != null && resources.size() != 1) {
             throw new BuildException(
@@ -139,6 +190,7 @@ class Txt2HtmlTask extends Task {
                     keepOriginals,          // keepOriginals
                     exceptionHandler        // exceptionHandler
                 );
+                if (manifest != null) ft = manifest.incremental(ft);
 
                 ft.transform(
                     file.getPath(),                 // path
@@ -162,5 +214,17 @@ class Txt2HtmlTask extends Task {
                 }
             }
         }
+
+        if (manifest != null) {
+            manifest.save();
+            this.log(
+                manifest.getTransformCount()
+                + " file(s) transformed, "
+                + manifest.getSkipCount()
+                + " unchanged file(s) skipped"
+            );
+        }
+
+        if (statistics != null) this.log(statistics.toString());
     }
 }
@@ -0,0 +1,94 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.txt2html.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.unkrig.txt2html.benchmarks.DiagramGenerator.Shape;
+import de.unkrig.txt2html.text.CharMatrix;
+import de.unkrig.txt2html.text.MutableCharMatrix;
+
+/**
+ * Measures how fast diagrams are read into, and copied between, {@link CharMatrix}es.
+ */
+@State(Scope.Benchmark) @BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1) @Measurement(iterations = 5, time = 1) @Fork(1)
+public
+class CharMatrixBenchmark {
+
+    /**
+     * The number of tiles of the diagram; each tile has 38 x 12 cells.
+     */
+    @Param({ "1", "16", "256" }) public int
+    tiles;
+
+    @Param({ "TEXT", "MIXED" }) public Shape
+    shape;
+
+    private String     text;
+    private String     html;
+    private CharMatrix matrix;
+
+    @Setup public void
+    setUp() {
+        this.text   = new DiagramGenerator(1).diagram(this.tiles, this.shape);
+        this.html   = DiagramGenerator.htmlEncode(this.text);
+        this.matrix = CharMatrix.readHtml(this.html);
+    }
+
+    /**
+     * {@link CharMatrix#read(java.io.Reader)}, which the command line tool uses for text files.
+     */
+    @Benchmark public CharMatrix
+    read() throws IOException { return CharMatrix.read(new StringReader(this.text)); }
+
+    /**
+     * {@link CharMatrix#readHtml(CharSequence)}, which the {@link de.unkrig.txt2html.Txt2SvgFilterWriter} uses for the
+     * HTML-encoded diagrams.
+     */
+    @Benchmark public CharMatrix
+    readHtml() { return CharMatrix.readHtml(this.html); }
+
+    /**
+     * {@link CharMatrix#copy()}, which the converter invokes once for each diagram.
+     */
+    @Benchmark public MutableCharMatrix
+    copy() { return this.matrix.copy(); }
+}
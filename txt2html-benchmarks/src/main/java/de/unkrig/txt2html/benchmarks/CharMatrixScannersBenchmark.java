@@ -0,0 +1,187 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package de.unkrig.txt2html.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.unkrig.txt2html.benchmarks.DiagramGenerator.Shape;
+import de.unkrig.txt2html.text.CharMatrix;
+import de.unkrig.txt2html.text.CharMatrix.Orientation;
+import de.unkrig.txt2html.text.CharMatrix.Turtle;
+import de.unkrig.txt2html.text.CharMatrixScanners;
+
+/**
+ * Compares the {@link CharMatrixScanners} with the regular expressions that they replaced, i.e. {@link
+ * Turtle#forward(Pattern)}. Each invocation makes {@value #PROBES} probes, starting at the '+' cells of the diagram in
+ * all four directions, so the scores are per probe.
+ */
+@State(Scope.Benchmark) @BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1) @Measurement(iterations = 5, time = 1) @Fork(1)
+public
+class CharMatrixScannersBenchmark {
+
+    private static final int PROBES = 1024;
+
+    private static final Pattern NEXT_CORNER_DOWN               = Pattern.compile("\\|+\\+");
+    private static final Pattern NEXT_CORNER_RIGHT              = Pattern.compile("-+\\+");
+    private static final Pattern NEXT_HORIZONAL_POLYGON_SEGMENT = Pattern.compile("[^|]*-\\+?");
+    private static final Pattern NEXT_VERTICAL_POLYGON_SEGMENT  = Pattern.compile("[^\\-]*\\|\\+?");
+
+    /**
+     * The number of tiles of the diagram; each tile has 38 x 12 cells.
+     */
+    @Param({ "1", "16" }) public int
+    tiles;
+
+    @Param({ "TABLE", "ARROWS" }) public Shape
+    shape;
+
+    private CharMatrix          matrix;
+    private final int[]         xs         = new int[PROBES];
+    private final int[]         ys         = new int[PROBES];
+    private final Orientation[] directions = new Orientation[PROBES];
+
+    @Setup public void
+    setUp() {
+
+        String diagram = new DiagramGenerator(1).diagram(this.tiles, this.shape);
+        this.matrix = CharMatrix.readHtml(DiagramGenerator.htmlEncode(diagram));
+
+        List<int[]> corners = new ArrayList<>();
+        for (int y = 0; y < this.matrix.height(); y++) {
+            for (int x = 0; x < this.matrix.width(); x++) {
+                if (this.matrix.charAt(x, y) == '+') corners.add(new int[] { x, y });
+            }
+        }
+
+        Orientation[] orientations = Orientation.values();
+        for (int i = 0; i < PROBES; i++) {
+            int[] corner = corners.get(i % corners.size());
+            this.xs[i]         = corner[0];
+            this.ys[i]         = corner[1];
+            this.directions[i] = orientations[i % orientations.length];
+        }
+    }
+
+    @Benchmark @OperationsPerInvocation(PROBES) public int
+    nextCornerRegex() {
+        int    result = 0;
+        Turtle turtle = this.matrix.new Turtle(0, 0, Orientation.EAST);
+        for (int i = 0; i < PROBES; i++) {
+            boolean horizontal = CharMatrixScannersBenchmark.isHorizontal(this.directions[i]);
+            result += CharMatrixScannersBenchmark.regexDistance(
+                turtle,
+                this.xs[i],
+                this.ys[i],
+                this.directions[i],
+                horizontal ? NEXT_CORNER_RIGHT : NEXT_CORNER_DOWN
+            );
+        }
+        return result;
+    }
+
+    @Benchmark @OperationsPerInvocation(PROBES) public int
+    nextCornerScanner() {
+        int result = 0;
+        for (int i = 0; i < PROBES; i++) {
+            boolean horizontal = CharMatrixScannersBenchmark.isHorizontal(this.directions[i]);
+            result += CharMatrixScanners.nextCorner(
+                this.matrix,
+                this.xs[i],
+                this.ys[i],
+                this.directions[i],
+                horizontal ? '-' : '|'
+            );
+        }
+        return result;
+    }
+
+    @Benchmark @OperationsPerInvocation(PROBES) public int
+    nextPolygonSegmentRegex() {
+        int    result = 0;
+        Turtle turtle = this.matrix.new Turtle(0, 0, Orientation.EAST);
+        for (int i = 0; i < PROBES; i++) {
+            boolean horizontal = CharMatrixScannersBenchmark.isHorizontal(this.directions[i]);
+            result += CharMatrixScannersBenchmark.regexDistance(
+                turtle,
+                this.xs[i],
+                this.ys[i],
+                this.directions[i],
+                horizontal ? NEXT_HORIZONAL_POLYGON_SEGMENT : NEXT_VERTICAL_POLYGON_SEGMENT
+            );
+        }
+        return result;
+    }
+
+    @Benchmark @OperationsPerInvocation(PROBES) public int
+    nextPolygonSegmentScanner() {
+        int result = 0;
+        for (int i = 0; i < PROBES; i++) {
+            boolean horizontal = CharMatrixScannersBenchmark.isHorizontal(this.directions[i]);
+            result += CharMatrixScanners.nextPolygonSegment(
+                this.matrix,
+                this.xs[i],
+                this.ys[i],
+                this.directions[i],
+                horizontal ? '-' : '|', // line
+                horizontal ? '|' : '-'  // barrier
+            );
+        }
+        return result;
+    }
+
+    /**
+     * The regex equivalent of the scanners; moves the <var>turtle</var> to {@code (x, y)} first.
+     */
+    private static int
+    regexDistance(Turtle turtle, int x, int y, Orientation direction, Pattern pattern) {
+        turtle.setX(x);
+        turtle.setY(y);
+        turtle.setOrientation(direction);
+        if (turtle.forward(pattern) == null) return -1;
+        return Math.abs(turtle.getX() - x) + Math.abs(turtle.getY() - y);
+    }
+
+    private static boolean
+    isHorizontal(Orientation direction) { return direction == Orientation.EAST || direction == Orientation.WEST; }
+}
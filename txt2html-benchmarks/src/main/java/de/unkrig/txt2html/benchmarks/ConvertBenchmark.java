@@ -0,0 +1,89 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.txt2html.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.unkrig.txt2html.CharMatrix2Svg;
+import de.unkrig.txt2html.benchmarks.DiagramGenerator.Shape;
+import de.unkrig.txt2html.text.CharMatrix;
+
+/**
+ * Measures {@link CharMatrix2Svg#convert(CharMatrix)} end to end, i.e. the detection plus the rendering of the SVG
+ * markup.
+ */
+@State(Scope.Benchmark) @BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1) @Measurement(iterations = 5, time = 1) @Fork(1)
+public
+class ConvertBenchmark {
+
+    /**
+     * The number of tiles of the diagram; each tile has 38 x 12 cells.
+     */
+    @Param({ "1", "16", "256" }) public int
+    tiles;
+
+    @Param({ "TEXT", "TABLE", "DOCUMENT", "ARROWS", "MIXED" }) public Shape
+    shape;
+
+    /**
+     * @see CharMatrix2Svg#setCompact(boolean)
+     */
+    @Param({ "false" }) public boolean
+    compact;
+
+    private CharMatrix matrix;
+
+    @Setup public void
+    setUp() {
+        String diagram = new DiagramGenerator(1).diagram(this.tiles, this.shape);
+        this.matrix = CharMatrix.readHtml(DiagramGenerator.htmlEncode(diagram));
+    }
+
+    /**
+     * @return The number of characters of SVG markup
+     */
+    @Benchmark public long
+    convert() {
+        CountingWriter w      = new CountingWriter();
+        CharMatrix2Svg cm2svg = new CharMatrix2Svg(w);
+        cm2svg.setCompact(this.compact);
+        cm2svg.convert(this.matrix);
+        return w.getCount();
+    }
+}
@@ -0,0 +1,178 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.txt2html.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Generates a corpus with the {@link CorpusGenerator}, runs the {@link de.unkrig.txt2html.Main txt2html command line
+ * tool} on it several times, and reports the throughput of each run.
+ * <p>
+ *   Usage:
+ * </p>
+ * <pre>
+ *   java -cp benchmarks.jar de.unkrig.txt2html.benchmarks.CorpusBenchmark [ <var>option</var> ... ] [ -- [
+ *       <var>txt2html-option</var> ... ] ]
+ * </pre>
+ * <p>
+ *   Options:
+ * </p>
+ * <dl>
+ *   <dt>{@code --seed} <var>n</var></dt>                <dd>See {@link CorpusGenerator#setSeed(long)}</dd>
+ *   <dt>{@code --packages} <var>n</var></dt>            <dd>See {@link CorpusGenerator#setPackageCount(int)}</dd>
+ *   <dt>{@code --classes} <var>n</var></dt>             <dd>See {@link CorpusGenerator#setClassesPerPackage(int)}</dd>
+ *   <dt>{@code --diagrams} <var>mean</var></dt>         <dd>See {@link CorpusGenerator#setDiagramsPerPage(double)}</dd>
+ *   <dt>{@code --tiles} <var>mean</var></dt>            <dd>See {@link CorpusGenerator#setTilesPerDiagram(double)}</dd>
+ *   <dt>{@code --repetition} <var>probability</var></dt><dd>See {@link CorpusGenerator#setRepetition(double)}</dd>
+ *   <dt>{@code --archives} <var>n</var></dt>            <dd>See {@link CorpusGenerator#setArchiveCount(int)}</dd>
+ *   <dt>{@code --runs} <var>n</var></dt>                <dd>The number of runs; default 5</dd>
+ *   <dt>{@code --work-dir} <var>dir</var></dt>
+ *   <dd>
+ *     Where to generate the corpus (in the "corpus" subdirectory) and the output of the runs; it is kept after the
+ *     benchmark. By default, a temporary directory is used, and deleted afterwards.
+ *   </dd>
+ * </dl>
+ * <p>
+ *   The <var>txt2html-option</var>s (e.g. {@code --threads 4}) are passed to the command line tool. On Java 9 and
+ *   later, transforming the archives requires the JVM option {@code --add-opens java.base/java.lang=ALL-UNNAMED}.
+ * </p>
+ */
+public final
+class CorpusBenchmark {
+
+    private CorpusBenchmark() {}
+
+    public static void
+    main(String[] args) throws IOException {
+
+        CorpusGenerator cg          = new CorpusGenerator();
+        int             runs        = 5;
+        File            workDir     = null;
+        List<String>    mainOptions = new ArrayList<>();
+
+        // Process the command line options.
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--".equals(arg)) {
+                mainOptions.addAll(Arrays.asList(args).subList(i + 1, args.length));
+                break;
+            } else
+            if ("--seed".equals(arg)) {
+                cg.setSeed(Long.parseLong(args[++i]));
+            } else
+            if ("--packages".equals(arg)) {
+                cg.setPackageCount(Integer.parseInt(args[++i]));
+            } else
+            if ("--classes".equals(arg)) {
+                cg.setClassesPerPackage(Integer.parseInt(args[++i]));
+            } else
+            if ("--diagrams".equals(arg)) {
+                cg.setDiagramsPerPage(Double.parseDouble(args[++i]));
+            } else
+            if ("--tiles".equals(arg)) {
+                cg.setTilesPerDiagram(Double.parseDouble(args[++i]));
+            } else
+            if ("--repetition".equals(arg)) {
+                cg.setRepetition(Double.parseDouble(args[++i]));
+            } else
+            if ("--archives".equals(arg)) {
+                cg.setArchiveCount(Integer.parseInt(args[++i]));
+            } else
+            if ("--runs".equals(arg)) {
+                runs = Integer.parseInt(args[++i]);
+            } else
+            if ("--work-dir".equals(arg)) {
+                workDir = new File(args[++i]);
+            } else
+            {
+                System.err.println("Invalid command line option \"" + arg + "\"");
+                System.exit(1);
+            }
+        }
+
+        boolean keepWorkDir = workDir != null;
+        if (workDir == null) workDir = Files.createTempDirectory("txt2html-corpus").toFile();
+        try {
+
+            File corpus = new File(workDir, "corpus");
+            cg.generate(corpus);
+            System.out.printf(
+                "Corpus: %d files, %d diagrams, %.1f MB in \"%s\"%n",
+                cg.getDocumentCount(),
+                cg.getDiagramCount(),
+                cg.getByteCount() / 1e6,
+                corpus
+            );
+
+            double best = Double.MAX_VALUE;
+            for (int run = 1; run <= runs; run++) {
+                File out = new File(workDir, "out" + run);
+
+                List<String> mainArgs = new ArrayList<>(mainOptions);
+                mainArgs.add(corpus.getPath());
+                mainArgs.add(out.getPath());
+
+                long start = System.nanoTime();
+                de.unkrig.txt2html.Main.main(mainArgs.toArray(new String[mainArgs.size()]));
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                CorpusBenchmark.report("Run " + run, seconds, cg);
+                best = Math.min(best, seconds);
+
+                if (!keepWorkDir) CorpusBenchmark.delete(out);
+            }
+            if (runs > 1) CorpusBenchmark.report("Best", best, cg);
+        } finally {
+            if (!keepWorkDir) CorpusBenchmark.delete(workDir);
+        }
+    }
+
+    private static void
+    report(String label, double seconds, CorpusGenerator cg) {
+        System.out.printf(
+            "%-6s %7.3f s, %8.1f files/s, %6.2f MB/s, %8.1f diagrams/s%n",
+            label + ":",
+            seconds,
+            cg.getDocumentCount() / seconds,
+            cg.getByteCount() / 1e6 / seconds,
+            cg.getDiagramCount() / seconds
+        );
+    }
+
+    private static void
+    delete(File file) throws IOException {
+        File[] members = file.listFiles();
+        if (members != null) {
+            for (File member : members) CorpusBenchmark.delete(member);
+        }
+        Files.delete(file.toPath());
+    }
+}
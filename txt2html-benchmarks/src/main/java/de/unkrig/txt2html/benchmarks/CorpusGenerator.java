@@ -0,0 +1,327 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.txt2html.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import de.unkrig.txt2html.benchmarks.DiagramGenerator.Shape;
+
+/**
+ * Produces a reproducible, JAVADOC-like tree of HTML documents with ASCII art diagrams (see {@link
+ * DiagramGenerator}), plus zero or more "-javadoc.jar" archives that contain more such trees.
+ * <p>
+ *   Like in real JAVADOC, many diagrams appear more than once, e.g. in the description of a class and again in the
+ *   descriptions of its subclasses; see {@link #setRepetition(double)}.
+ * </p>
+ */
+public final
+class CorpusGenerator {
+
+    private static final String[] NAME_PARTS = {
+        "Abstract", "Array", "Char", "Matrix", "Svg", "Filter", "Writer", "Reader", "Scene", "Detector", "Cache",
+        "Manifest", "Text", "Box", "Arrow", "Table", "Document", "Html", "Stream", "Buffer", "Parser", "Scanner",
+    };
+    private static final String[] TYPES = { "int", "boolean", "String", "void", "char[]", "List&lt;String&gt;" };
+    private static final String[] PROSE = {
+        "Returns the number of elements. ", "See <code>%s</code>. ", "Lorem ipsum dolor sit amet, ",
+        "<a href=\"#%s()\">%s()</a> is invoked exactly once. ", "&lt;T&gt; the type of the elements; ",
+        "<em>Never</em> returns <code>null</code>. ", "Notice that this method is not thread-safe. ",
+        "Consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore. ",
+    };
+
+    private long   seed              = 1;
+    private int    packageCount      = 10;
+    private int    classesPerPackage = 20;
+    private double diagramsPerPage   = 1;
+    private double tilesPerDiagram   = 2;
+    private double repetition        = 0.3;
+    private int    archiveCount      = 1;
+
+    // The diagrams of the current package, for repetition.
+    private final List<String> diagrams = new ArrayList<>();
+
+    private Random           random           = new Random();
+    private DiagramGenerator diagramGenerator = new DiagramGenerator(0);
+    private long             documentCount, diagramCount, byteCount;
+
+    /**
+     * The seed of the random numbers; equal seeds (and settings) produce identical corpora. The default is 1.
+     */
+    public void
+    setSeed(long value) { this.seed = value; }
+
+    /**
+     * The number of packages of the tree, and of each tree in an archive; the default is 10.
+     */
+    public void
+    setPackageCount(int value) { this.packageCount = value; }
+
+    /**
+     * The number of class documents per package; the default is 20.
+     */
+    public void
+    setClassesPerPackage(int value) { this.classesPerPackage = value; }
+
+    /**
+     * The average number of diagrams per class document; the default is 1. The numbers are geometrically
+     * distributed, i.e. many documents have none, and a few have many.
+     */
+    public void
+    setDiagramsPerPage(double value) { this.diagramsPerPage = value; }
+
+    /**
+     * The average number of tiles per diagram (see {@link DiagramGenerator#diagram(int, Shape)}); the default is 2.
+     */
+    public void
+    setTilesPerDiagram(double value) { this.tilesPerDiagram = value; }
+
+    /**
+     * The probability that a diagram repeats one that appeared earlier in the same package; the default is 0.3.
+     */
+    public void
+    setRepetition(double value) { this.repetition = value; }
+
+    /**
+     * The number of "-javadoc.jar" archives in the "lib" subdirectory of the tree; the default is 1.
+     */
+    public void
+    setArchiveCount(int value) { this.archiveCount = value; }
+
+    /**
+     * @return The number of HTML documents that the last {@link #generate(File)} produced, including those in the
+     *         archives
+     */
+    public long
+    getDocumentCount() { return this.documentCount; }
+
+    /**
+     * @return The number of diagrams that the last {@link #generate(File)} produced, including those in the archives
+     */
+    public long
+    getDiagramCount() { return this.diagramCount; }
+
+    /**
+     * @return The total size of the files that the last {@link #generate(File)} produced (with the archives
+     *         compressed)
+     */
+    public long
+    getByteCount() { return this.byteCount; }
+
+    /**
+     * Creates the tree in the directory <var>dir</var>, which must not exist.
+     */
+    public void
+    generate(File dir) throws IOException {
+
+        this.random           = new Random(this.seed);
+        this.diagramGenerator = new DiagramGenerator(this.seed);
+        this.documentCount    = 0;
+        this.diagramCount     = 0;
+        this.byteCount        = 0;
+
+        if (!dir.mkdirs()) throw new IOException("Could not create directory \"" + dir + "\"");
+
+        this.tree((path, content) -> {
+            File file = new File(dir, path);
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), content);
+            this.byteCount += content.length;
+        });
+
+        for (int i = 0; i < this.archiveCount; i++) {
+            File archive = new File(dir, "lib/module" + i + "-javadoc.jar");
+            archive.getParentFile().mkdirs();
+            try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(archive))) {
+                this.tree((path, content) -> {
+                    zos.putNextEntry(new ZipEntry(path));
+                    zos.write(content);
+                    zos.closeEntry();
+                });
+            }
+            this.byteCount += archive.length();
+        }
+    }
+
+    private
+    interface Sink { void add(String path, byte[] content) throws IOException; }
+
+    /**
+     * Adds the documents of one JAVADOC tree to the <var>sink</var>.
+     */
+    private void
+    tree(Sink sink) throws IOException {
+
+        sink.add("stylesheet.css", "body { background-color:#ffffff; }\n".getBytes(StandardCharsets.UTF_8));
+
+        StringBuilder overview = new StringBuilder();
+        for (int i = 0; i < this.packageCount; i++) {
+            String packageName = "com.example." + this.name().toLowerCase() + i;
+            String packagePath = packageName.replace('.', '/');
+
+            this.diagrams.clear();
+
+            StringBuilder summary = new StringBuilder();
+            for (int j = 0; j < this.classesPerPackage; j++) {
+                String className = this.name() + this.name() + j;
+                sink.add(packagePath + "/" + className + ".html", this.classDocument(packageName, className));
+                summary.append("<tr><td class=\"colFirst\"><a href=\"").append(className).append(".html\">");
+                summary.append(className).append("</a></td><td class=\"colLast\">");
+                this.prose(summary, 80);
+                summary.append("</td></tr>\n");
+            }
+            sink.add(packagePath + "/package-summary.html", this.document(
+                "Package " + packageName,                                // title
+                "../../../",                                             // root
+                "<table class=\"typeSummary\">\n" + summary + "</table>\n" // body
+            ));
+            overview.append("<li><a href=\"").append(packagePath).append("/package-summary.html\">");
+            overview.append(packageName).append("</a></li>\n");
+        }
+        sink.add("index.html", this.document("Overview", "", "<ul>\n" + overview + "</ul>\n"));
+    }
+
+    private byte[]
+    classDocument(String packageName, String className) {
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("<div class=\"subTitle\">").append(packageName).append("</div>\n");
+        sb.append("<ul class=\"inheritance\"><li>java.lang.Object</li><li>").append(className).append("</li></ul>\n");
+
+        // The description of the class, and the descriptions of its methods; the diagrams are spread among them.
+        int   methodCount = 3 + this.random.nextInt(10);
+        int[] diagrams    = new int[methodCount + 1];
+        for (int n = CorpusGenerator.geometric(this.random, this.diagramsPerPage); n > 0; n--) {
+            diagrams[this.random.nextInt(diagrams.length)]++;
+        }
+
+        sb.append("<div class=\"description\"><div class=\"block\">");
+        this.prose(sb, 400);
+        this.diagrams(sb, diagrams[0]);
+        sb.append("</div></div>\n");
+
+        sb.append("<table class=\"memberSummary\">\n");
+        for (int i = 0; i < methodCount; i++) {
+            sb.append("<tr><td class=\"colFirst\"><code>").append(TYPES[this.random.nextInt(TYPES.length)]);
+            sb.append("</code></td><td class=\"colLast\"><code><a href=\"#m").append(i).append("()\">m").append(i);
+            sb.append("</a>()</code><div class=\"block\">");
+            this.prose(sb, 80);
+            sb.append("</div></td></tr>\n");
+        }
+        sb.append("</table>\n");
+
+        for (int i = 0; i < methodCount; i++) {
+            sb.append("<a name=\"m").append(i).append("()\"></a><h4>m").append(i).append("</h4>\n");
+            sb.append("<pre>public&nbsp;").append(TYPES[this.random.nextInt(TYPES.length)]);
+            sb.append("&nbsp;m").append(i).append("()</pre>\n<div class=\"block\">");
+            this.prose(sb, 200);
+            this.diagrams(sb, diagrams[i + 1]);
+            sb.append("</div>\n");
+        }
+
+        return this.document("Class " + className, "../../../", sb.toString());
+    }
+
+    private void
+    diagrams(StringBuilder sb, int n) {
+        for (; n > 0; n--) {
+            String diagram;
+            if (!this.diagrams.isEmpty() && this.random.nextDouble() < this.repetition) {
+                diagram = this.diagrams.get(this.random.nextInt(this.diagrams.size()));
+            } else {
+                int tiles = 1 + CorpusGenerator.geometric(this.random, this.tilesPerDiagram - 1);
+                diagram = DiagramGenerator.htmlEncode(this.diagramGenerator.diagram(tiles, Shape.MIXED));
+                this.diagrams.add(diagram);
+            }
+            sb.append("\n<pre class=\"asciiart\"><code>\n").append(diagram).append("</code></pre>\n");
+            this.diagramCount++;
+        }
+    }
+
+    /**
+     * @param root The relative path from the document to the root of the tree
+     */
+    private byte[]
+    document(String title, String root, String body) {
+
+        this.documentCount++;
+
+        return (
+            ""
+            + "<!DOCTYPE HTML PUBLIC \"-//W3C//DTD HTML 4.01 Transitional//EN\" "
+            + "\"http://www.w3.org/TR/html4/loose.dtd\">\n"
+            + "<html lang=\"en\">\n"
+            + "<head>\n"
+            + "<meta http-equiv=\"Content-Type\" content=\"text/html; charset=UTF-8\">\n"
+            + "<title>" + title + "</title>\n"
+            + "<link rel=\"stylesheet\" type=\"text/css\" href=\"" + root + "stylesheet.css\" title=\"Style\">\n"
+            + "</head>\n"
+            + "<body>\n"
+            + "<div class=\"topNav\"><ul class=\"navList\">"
+            + "<li><a href=\"" + root + "index.html\">Overview</a></li>"
+            + "<li class=\"navBarCell1Rev\">Class</li>"
+            + "<li><a href=\"" + root + "index-all.html\">Index</a></li>"
+            + "</ul></div>\n"
+            + "<div class=\"header\"><h2 class=\"title\">" + title + "</h2></div>\n"
+            + "<div class=\"contentContainer\">\n"
+            + body
+            + "</div>\n"
+            + "</body>\n"
+            + "</html>\n"
+        ).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Appends about <var>length</var> characters of prose.
+     */
+    private void
+    prose(StringBuilder sb, int length) {
+        for (int end = sb.length() + length; sb.length() < end;) {
+            String name = this.name();
+            sb.append(String.format(PROSE[this.random.nextInt(PROSE.length)], name, name, name));
+        }
+    }
+
+    private String
+    name() { return NAME_PARTS[this.random.nextInt(NAME_PARTS.length)]; }
+
+    /**
+     * @return A geometrically distributed random number with the given <var>mean</var>
+     */
+    private static int
+    geometric(Random random, double mean) {
+        if (mean <= 0) return 0;
+        return (int) (Math.log(1 - random.nextDouble()) / Math.log(mean / (mean + 1)));
+    }
+}
@@ -0,0 +1,322 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.txt2html.benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Produces reproducible ASCII art diagrams in the vocabulary that {@link de.unkrig.txt2html.CharMatrix2Svg}
+ * recognizes: Tables, document symbols, arrows with '+' joints and text.
+ * <p>
+ *   A diagram consists of "tiles" that are laid out in a grid. Each tile is framed (a table with one cell), so that
+ *   the arrow detectors, which scan across blank cells, never connect artifacts of different tiles.
+ * </p>
+ */
+public final
+class DiagramGenerator {
+
+    /**
+     * The kinds of tiles.
+     */
+    public
+    enum Shape {
+
+        /** Lines of words. */
+        TEXT,
+
+        /** A table with two to four rows and two or three columns; some of its cells contain nested tables. */
+        TABLE,
+
+        /** A document symbol (a box with a dog-ear) with text. */
+        DOCUMENT,
+
+        /** Three boxes, connected by arrows with labels, '+' joints and corners. */
+        ARROWS,
+
+        /** A random one of the above, for each tile. */
+        MIXED,
+    }
+
+    // The size of the content of each tile, excluding the frame.
+    private static final int TILE_WIDTH  = 36;
+    private static final int TILE_HEIGHT = 10;
+
+    // None of these contains one of the characters that the arrow and box detectors look for ("v<>^|+-").
+    private static final String[] WORDS = {
+        "parsed", "compiled", "into", "class", "files", "unit", "source", "token", "scanner", "parser", "method",
+        "field", "type", "byte", "code", "block", "statement", "attribute", "constant", "pool", "loader", "stream",
+        "reader", "writer", "buffer", "cache", "index", "table", "entry", "node", "tree", "path", "file", "archive",
+        "jar", "zip", "html", "doc", "page", "frame", "style", "sheet", "marker", "o.c.j.Parser", "ClassFile",
+        "Annotation[]", "...",
+    };
+    private static final Shape[] SHAPES = { Shape.TEXT, Shape.TABLE, Shape.DOCUMENT, Shape.ARROWS };
+
+    private final Random random;
+
+    private char[][] canvas = new char[0][];
+
+    public
+    DiagramGenerator(long seed) { this.random = new Random(seed); }
+
+    /**
+     * @return A diagram with <var>tiles</var> tiles of the given <var>shape</var>, as lines separated with {@code
+     *         "\n"}; the lines have no trailing blanks
+     */
+    public String
+    diagram(int tiles, Shape shape) {
+
+        int columns = (int) Math.ceil(Math.sqrt(tiles));
+        int rows    = (tiles + columns - 1) / columns;
+
+        // Tiles are separated by two blank columns and one blank row.
+        int width  = columns * (TILE_WIDTH + 4) - 2;
+        int height = rows * (TILE_HEIGHT + 3) - 1;
+
+        this.canvas = new char[height][width];
+        for (char[] row : this.canvas) Arrays.fill(row, ' ');
+
+        for (int i = 0; i < tiles; i++) {
+            int x = (i % columns) * (TILE_WIDTH + 4);
+            int y = (i / columns) * (TILE_HEIGHT + 3);
+
+            this.box(x, y, TILE_WIDTH + 2, TILE_HEIGHT + 2);
+
+            Shape s = shape == Shape.MIXED ? SHAPES[this.random.nextInt(SHAPES.length)] : shape;
+            switch (s) {
+            case TEXT:     this.text(x + 1, y + 1);     break;
+            case TABLE:    this.table(x + 2, y + 1, x + TILE_WIDTH - 1, y + TILE_HEIGHT, true); break;
+            case DOCUMENT: this.document(x + 1, y + 1); break;
+            case ARROWS:   this.arrows(x + 1, y + 1);   break;
+            default:       throw new AssertionError(s);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder(width * height + height);
+        for (char[] row : this.canvas) {
+            int length = row.length;
+            while (length > 0 && row[length - 1] == ' ') length--;
+            sb.append(row, 0, length).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return The <var>text</var>, with the characters that are special in HTML replaced with character references
+     */
+    public static String
+    htmlEncode(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private void
+    text(int x, int y) {
+        for (int i = 0; i < TILE_HEIGHT; i++) {
+            if (this.random.nextInt(4) != 0) this.words(x + 1 + this.random.nextInt(2), y + i, TILE_WIDTH - 3);
+        }
+    }
+
+    /**
+     * Draws a table within {@code (x1, y1)} and {@code (x2, y2)}. Iff <var>nest</var>, some cells contain a nested
+     * table instead of text.
+     */
+    private void
+    table(int x1, int y1, int x2, int y2, boolean nest) {
+
+        // Two or three columns, each at least seven cells wide (excluding the borders).
+        int   columnCount = Math.min(2 + this.random.nextInt(2), (x2 - x1) / 8);
+        int[] xs          = new int[columnCount + 1];
+        xs[0]           = x1;
+        xs[columnCount] = x2;
+        for (int i = 1; i < columnCount; i++) {
+            int slack = x2 - xs[i - 1] - 8 * (columnCount - i + 1);
+            xs[i] = xs[i - 1] + 8 + this.random.nextInt(slack / 2 + 1);
+        }
+
+        // Two to four rows, each with one line of text, or with five lines for nested tables.
+        int   maxRowCount = 2 + this.random.nextInt(3);
+        int[] ys          = new int[maxRowCount + 1];
+        int   rowCount    = 0;
+        for (ys[0] = y1; rowCount < maxRowCount; rowCount++) {
+            int height = nest && this.random.nextInt(3) == 0 ? 6 : 2;
+            if (ys[rowCount] + height > y2) height = 2;
+            if (ys[rowCount] + height > y2) break;
+            ys[rowCount + 1] = ys[rowCount] + height;
+        }
+
+        for (int i = 0; i < rowCount; i++) {
+            for (int j = 0; j < columnCount; j++) {
+                this.box(xs[j], ys[i], xs[j + 1] - xs[j] + 1, ys[i + 1] - ys[i] + 1);
+                if (ys[i + 1] - ys[i] == 6 && xs[j + 1] - xs[j] >= 18) {
+                    this.table(xs[j] + 2, ys[i] + 1, xs[j + 1] - 2, ys[i + 1] - 1, false);
+                } else {
+                    this.words(xs[j] + 2, ys[i] + 1, xs[j + 1] - xs[j] - 3);
+                }
+            }
+        }
+    }
+
+    private void
+    document(int x, int y) {
+
+        //   +------+
+        //   |      |\
+        //   | text +-+
+        //   |        |
+        //   +--------+
+        int x1 = x + 1;
+        int x2 = x1 + 12 + this.random.nextInt(TILE_WIDTH - 17);
+        int y2 = y + 4 + this.random.nextInt(TILE_HEIGHT - 4);
+
+        this.hline(x1, y, x2);
+        this.vline(x1, y, y2);
+        this.hline(x1, y2, x2 + 2);
+        this.vline(x2 + 2, y + 2, y2);
+        this.set(x2, y + 1, '|');
+        this.set(x2 + 1, y + 1, '\\');
+        this.hline(x2, y + 2, x2 + 2);
+        this.set(x1, y, '+');
+        this.set(x2, y, '+');
+        this.set(x1, y2, '+');
+        this.set(x2, y + 2, '+');
+        this.set(x2 + 2, y + 2, '+');
+        this.set(x2 + 2, y2, '+');
+
+        for (int yy = y + 1; yy < y2; yy++) {
+            if (yy == y + 1 || this.random.nextBoolean()) this.words(x1 + 2, yy, x2 - x1 - 3);
+        }
+    }
+
+    private void
+    arrows(int x, int y) {
+
+        //   +-------+         +--------+
+        //   | alpha |--+----->| beta   |
+        //   +-------+  |      +--------+
+        //              |           ^
+        //              |           |
+        //              |         label
+        //              v           |
+        //           +--------+     |
+        //           | gamma  |-----+
+        //           +--------+
+        int ax1 = x + 1;
+        int ax2 = ax1 + 8 + this.random.nextInt(3);
+        int jx  = ax2 + 3 + this.random.nextInt(3);
+        int cx1 = jx - 3;
+        int cx2 = cx1 + 9;
+        int bx1 = jx + 8 + this.random.nextInt(3);
+        int bx2 = bx1 + 8 + this.random.nextInt(2);
+        int bcx = (bx1 + bx2) / 2;
+
+        this.box(ax1, y, ax2 - ax1 + 1, 3);
+        this.words(ax1 + 2, y + 1, ax2 - ax1 - 3);
+        this.box(bx1, y, bx2 - bx1 + 1, 3);
+        this.words(bx1 + 2, y + 1, bx2 - bx1 - 3);
+        this.box(cx1, y + 7, cx2 - cx1 + 1, 3);
+        this.words(cx1 + 2, y + 8, cx2 - cx1 - 3);
+
+        // A horizontal arrow from box A to box B (or vice versa), with a '+' joint where the vertical arrow to box C
+        // branches off.
+        this.hline(ax2 + 1, y + 1, bx1 - 1);
+        if (this.random.nextBoolean()) {
+            this.set(bx1 - 1, y + 1, '>');
+        } else {
+            this.set(ax2 + 1, y + 1, '<');
+        }
+        this.set(jx, y + 1, '+');
+        this.vline(jx, y + 2, y + 5);
+        this.set(jx, y + 6, 'v');
+
+        // An arrow with a corner and a label from box C to box B.
+        this.hline(cx2 + 1, y + 8, bcx);
+        this.set(bcx, y + 8, '+');
+        this.vline(bcx, y + 4, y + 7);
+        this.set(bcx, y + 3, '^');
+        String label = WORDS[this.random.nextInt(WORDS.length)];
+        if (label.length() > 8) label = label.substring(0, 8);
+        this.put(bcx - label.length() / 2, y + 5, label);
+    }
+
+    /**
+     * Draws the outline of a box (or a table cell) with '+' corners.
+     */
+    private void
+    box(int x, int y, int width, int height) {
+        int x2 = x + width - 1, y2 = y + height - 1;
+        this.hline(x, y, x2);
+        this.hline(x, y2, x2);
+        this.vline(x, y, y2);
+        this.vline(x2, y, y2);
+        this.set(x, y, '+');
+        this.set(x2, y, '+');
+        this.set(x, y2, '+');
+        this.set(x2, y2, '+');
+    }
+
+    /**
+     * Draws '-'s from {@code (x1, y)} through {@code (x2, y)}, except where there are '+'s already.
+     */
+    private void
+    hline(int x1, int y, int x2) {
+        for (int x = x1; x <= x2; x++) {
+            if (this.canvas[y][x] != '+') this.canvas[y][x] = '-';
+        }
+    }
+
+    /**
+     * Draws '|'s from {@code (x, y1)} through {@code (x, y2)}, except where there are '+'s already.
+     */
+    private void
+    vline(int x, int y1, int y2) {
+        for (int y = y1; y <= y2; y++) {
+            if (this.canvas[y][x] != '+') this.canvas[y][x] = '|';
+        }
+    }
+
+    /**
+     * Writes random words, separated by single blanks, starting at {@code (x, y)}, but no more than <var>width</var>
+     * characters.
+     */
+    private void
+    words(int x, int y, int width) {
+        for (int end = x + width;;) {
+            String word = WORDS[this.random.nextInt(WORDS.length)];
+            if (x + word.length() > end) {
+                if (word.length() > width) this.put(x, y, word.substring(0, Math.max(0, end - x)));
+                return;
+            }
+            this.put(x, y, word);
+            x += word.length() + 1;
+        }
+    }
+
+    private void
+    put(int x, int y, String s) { s.getChars(0, s.length(), this.canvas[y], x); }
+
+    private void
+    set(int x, int y, char c) { this.canvas[y][x] = c; }
+}
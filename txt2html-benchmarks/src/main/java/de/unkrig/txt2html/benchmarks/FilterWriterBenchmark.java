@@ -0,0 +1,160 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.txt2html.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.unkrig.commons.io.IoUtil;
+import de.unkrig.txt2html.Txt2SvgFilterWriter;
+import de.unkrig.txt2html.benchmarks.DiagramGenerator.Shape;
+
+/**
+ * Measures the throughput of the {@link Txt2SvgFilterWriter} on an HTML document of about 256 KiB, with and without
+ * diagrams, through the character-oriented {@link Txt2SvgFilterWriter#make(Writer, java.util.regex.Pattern, boolean,
+ * boolean, de.unkrig.txt2html.SvgCache) filter writer} and through the byte-oriented {@link
+ * Txt2SvgFilterWriter#transform(java.io.InputStream, java.io.OutputStream, java.nio.charset.Charset,
+ * java.util.regex.Pattern, boolean, boolean, de.unkrig.txt2html.SvgCache) transform()} method; for comparison, also
+ * through the filter writer between an {@link InputStreamReader} and an {@link OutputStreamWriter}, which is how
+ * {@code transform()} processed the bytes before it scanned them directly.
+ */
+@State(Scope.Benchmark) @BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1) @Measurement(iterations = 5, time = 1) @Fork(1)
+public
+class FilterWriterBenchmark {
+
+    private static final String[] PROSE = {
+        "Returns the number of elements. ", "See <code>Foo</code>. ", "Lorem ipsum dolor sit amet, ",
+        "<a href=\"../Bar.html#baz()\">baz()</a> ", "&lt;T&gt; the type of the elements; ", "<em>never</em> null. ",
+    };
+
+    /**
+     * The number of diagrams in the document.
+     */
+    @Param({ "0", "8" }) public int
+    diagrams;
+
+    /**
+     * The number of tiles of each diagram; each tile has 38 x 12 cells.
+     */
+    @Param({ "1", "16" }) public int
+    tiles;
+
+    @Param({ "MIXED" }) public Shape
+    shape;
+
+    private char[] html;
+    private byte[] bytes;
+
+    @Setup public void
+    setUp() {
+        DiagramGenerator dg = new DiagramGenerator(1);
+        Random           r  = new Random(1);
+
+        // Paragraphs of prose, with the diagrams evenly spread between them.
+        StringBuilder sb = new StringBuilder("<html><head><title>Benchmark</title></head><body>\n");
+        for (int i = 0, paragraphs = 256; i < paragraphs; i++) {
+            sb.append("<p>");
+            for (int end = sb.length() + 1000; sb.length() < end;) sb.append(PROSE[r.nextInt(PROSE.length)]);
+            sb.append("</p>\n");
+            if (this.diagrams > 0 && i % (paragraphs / this.diagrams) == 0) {
+                sb.append("<pre class=\"asciiart\"><code>\n");
+                sb.append(DiagramGenerator.htmlEncode(dg.diagram(this.tiles, this.shape)));
+                sb.append("</code></pre>\n");
+            }
+        }
+        sb.append("</body></html>\n");
+
+        this.html  = sb.toString().toCharArray();
+        this.bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The number of characters written
+     */
+    @Benchmark public long
+    writer() throws IOException {
+        CountingWriter cw = new CountingWriter();
+        try (Writer w = Txt2SvgFilterWriter.make(cw, Txt2SvgFilterWriter.PATTERN_ASCII_ART, false, false, null)) {
+            w.write(this.html);
+        }
+        return cw.getCount();
+    }
+
+    /**
+     * @return The number of bytes written
+     */
+    @Benchmark public long
+    bytes() throws IOException {
+        CountingOutputStream cos = new CountingOutputStream();
+        Txt2SvgFilterWriter.transform(
+            new ByteArrayInputStream(this.bytes),  // is
+            cos,                                   // os
+            StandardCharsets.UTF_8,                // charset
+            Txt2SvgFilterWriter.PATTERN_ASCII_ART, // asciiArtPattern
+            false,                                 // sharedStyles
+            false,                                 // compact
+            null                                   // cache
+        );
+        return cos.getCount();
+    }
+
+    /**
+     * @return The number of bytes written
+     */
+    @Benchmark public long
+    readerWriter() throws IOException {
+        CountingOutputStream cos = new CountingOutputStream();
+        try (Writer w = Txt2SvgFilterWriter.make(
+            new OutputStreamWriter(cos, StandardCharsets.UTF_8), // delegate
+            Txt2SvgFilterWriter.PATTERN_ASCII_ART,               // asciiArtPattern
+            false,                                               // sharedStyles
+            false,                                               // compact
+            null                                                 // cache
+        )) {
+            IoUtil.copy(new InputStreamReader(new ByteArrayInputStream(this.bytes), StandardCharsets.UTF_8), w);
+        }
+        return cos.getCount();
+    }
+}
@@ -0,0 +1,91 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.txt2html;
+
+import de.unkrig.txt2html.text.MutableCharMatrix;
+
+/**
+ * Recognizes one kind of ASCII art artifact (an arrow, a table, a piece of text, ...) in a {@link MutableCharMatrix},
+ * and renders it through a {@link CharMatrix2Svg}.
+ * <p>
+ *   The converter runs its detectors in passes (see {@link #getPass()}); each pass visits the cells in column-major
+ *   order, and invokes, for each cell, only the detectors that declare the cell's character as a trigger (see {@link
+ *   #isTrigger(char)}). Thus a detector costs nothing for cells that it does not care about.
+ * </p>
+ * <p>
+ *   Implementations of this interface that are registered as a service (in {@code
+ *   META-INF/services/de.unkrig.txt2html.ArtifactDetector}) are found through the {@link java.util.ServiceLoader}, and
+ *   used in addition to the built-in detectors.
+ * </p>
+ * <p>
+ *   A detector must not modify the matrix other than by blanking cells, because the converter collects the candidate
+ *   cells of all passes before the first pass. And because one instance serves all converters, which may run
+ *   concurrently (e.g. on the files of a directory tree), a detector must be thread-safe.
+ * </p>
+ */
+public
+interface ArtifactDetector {
+
+    /**
+     * The pass of the built-in arrow detectors.
+     */
+    int PASS_ARROWS = 100;
+
+    /**
+     * The pass of the built-in table and document symbol detectors.
+     */
+    int PASS_BOXES = 200;
+
+    /**
+     * The pass of the built-in text detector, which picks up everything that the other detectors left over.
+     */
+    int PASS_TEXT = 300;
+
+    /**
+     * @return The pass in which this detector is executed; passes with lower numbers are executed first. Detectors with
+     *         equal pass numbers are executed in the same pass, in their registration order
+     * @see    #PASS_ARROWS
+     * @see    #PASS_BOXES
+     * @see    #PASS_TEXT
+     */
+    int getPass();
+
+    /**
+     * Notice that the result must only depend on <var>c</var>, because the converter tabulates it.
+     *
+     * @return Whether this detector could possibly detect an artifact at a cell with character <var>c</var>; never
+     *         invoked for blank cells
+     */
+    boolean isTrigger(char c);
+
+    /**
+     * Checks whether an artifact starts at {@code (x, y)}, and, if so, renders it through <var>cm2svg</var> and blanks
+     * its cells.
+     *
+     * @return Whether an artifact was detected
+     */
+    boolean detect(MutableCharMatrix mcm, int x, int y, CharMatrix2Svg cm2svg);
+}
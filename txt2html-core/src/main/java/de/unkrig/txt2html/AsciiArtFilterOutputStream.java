@@ -0,0 +1,149 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.txt2html;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The byte-oriented counterpart of {@link AsciiArtFilterWriter}, for ASCII-compatible charsets (see {@link
+ * #isAsciiCompatible(Charset)}): Bytes outside of the ASCII art regions are passed through in bulk and without
+ * decoding; only the bodies of the ASCII art regions are decoded, and only their replacements are encoded.
+ */
+final
+class AsciiArtFilterOutputStream extends OutputStream {
+
+    private final OutputStream                  delegate;
+    private final Charset                       charset;
+    private final AsciiArtFilterWriter.Replacer replacer;
+
+    private byte[] body = new byte[256];
+    private int    bodyLength;
+
+    private final AsciiArtMatcher<byte[]> matcher = new AsciiArtMatcher<byte[]>() {
+
+        @Override int
+        elementAt(byte[] chunk, int i) { return chunk[i]; }
+
+        @Override int
+        indexOfLt(byte[] chunk, int from, int to) {
+            while (from < to && chunk[from] != '<') from++;
+            return from;
+        }
+
+        @Override void
+        passThrough(byte[] chunk, int off, int len) throws IOException {
+            AsciiArtFilterOutputStream.this.delegate.write(chunk, off, len);
+        }
+
+        @Override void
+        passThrough(String s, int start, int end) throws IOException {
+            for (int i = start; i < end; i++) AsciiArtFilterOutputStream.this.delegate.write(s.charAt(i));
+        }
+
+        @Override void
+        appendBody(byte[] chunk, int off, int len) { AsciiArtFilterOutputStream.this.appendBody(chunk, off, len); }
+
+        @Override void
+        passThroughBody() throws IOException {
+            AsciiArtFilterOutputStream aafos = AsciiArtFilterOutputStream.this;
+            aafos.delegate.write(aafos.body, 0, aafos.bodyLength);
+            aafos.bodyLength = 0;
+        }
+
+        @Override void
+        replaceBody(long offset) throws IOException {
+            AsciiArtFilterOutputStream aafos = AsciiArtFilterOutputStream.this;
+            String                     text  = new String(aafos.body, 0, aafos.bodyLength, aafos.charset);
+            aafos.delegate.write(aafos.replacer.replace(text, offset).getBytes(aafos.charset));
+            aafos.bodyLength = 0;
+        }
+    };
+
+    /**
+     * @param charset Must be ASCII-compatible; see {@link #isAsciiCompatible(Charset)}
+     */
+    AsciiArtFilterOutputStream(OutputStream delegate, Charset charset, AsciiArtFilterWriter.Replacer replacer) {
+        assert AsciiArtFilterOutputStream.isAsciiCompatible(charset) : charset;
+        this.delegate = delegate;
+        this.charset  = charset;
+        this.replacer = replacer;
+    }
+
+    /**
+     * @return Whether the <var>charset</var> encodes each ASCII character as the identical single byte, and never
+     *         uses bytes in the ASCII range for anything else; true for UTF-8, US-ASCII, the ISO-8859 family and
+     *         most other single-byte charsets
+     */
+    static boolean
+    isAsciiCompatible(Charset charset) {
+
+        if (charset.equals(StandardCharsets.UTF_8)) return true;
+        if (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1) return false;
+
+        byte[] ascii = new byte[128];
+        for (int i = 0; i < 128; i++) ascii[i] = (byte) i;
+        String s = new String(ascii, charset);
+        return s.equals(new String(ascii, StandardCharsets.US_ASCII)) && Arrays.equals(s.getBytes(charset), ascii);
+    }
+
+    @Override public void
+    write(int b) throws IOException { this.write(new byte[] { (byte) b }, 0, 1); }
+
+    @Override public void
+    write(byte[] b, int off, int len) throws IOException { this.matcher.scan(b, off, len); }
+
+    /**
+     * Writes the pending partial match as it is (like {@link AsciiArtFilterWriter#flush()} does), and then flushes
+     * the delegate.
+     */
+    @Override public void
+    flush() throws IOException {
+        this.matcher.passThroughPending();
+        this.delegate.flush();
+    }
+
+    /**
+     * Writes the pending partial match as it is, and then closes the delegate.
+     */
+    @Override public void
+    close() throws IOException {
+        this.matcher.passThroughPending();
+        this.delegate.close();
+    }
+
+    private void
+    appendBody(byte[] b, int off, int len) {
+        if (this.bodyLength + len > this.body.length) {
+            this.body = Arrays.copyOf(this.body, Math.max(2 * this.body.length, this.bodyLength + len));
+        }
+        System.arraycopy(b, off, this.body, this.bodyLength, len);
+        this.bodyLength += len;
+    }
+}
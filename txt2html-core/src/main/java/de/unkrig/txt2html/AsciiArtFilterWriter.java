@@ -0,0 +1,126 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.txt2html;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Replaces all matches of {@link Txt2SvgFilterWriter#PATTERN_ASCII_ART} in the text written to it, without the
+ * overhead of the regex engine: Text outside of the ASCII art regions is passed through in bulk, and only the body
+ * of an ASCII art region is buffered (plus the current partial match of its opening or closing tags).
+ * <p>
+ *   Produces exactly the same output as {@link de.unkrig.commons.text.pattern.PatternUtil#replaceAllFilterWriter(
+ *   java.util.regex.Pattern, de.unkrig.commons.lang.protocol.FunctionWhichThrows, Appendable)
+ *   PatternUtil.replaceAllFilterWriter(PATTERN_ASCII_ART, ...)}.
+ * </p>
+ */
+final
+class AsciiArtFilterWriter extends Writer {
+
+    /**
+     * Maps the (still HTML-encoded) body of an ASCII art region to its replacement.
+     */
+    interface Replacer {
+
+        /**
+         * @param offset The position of the region's opening tag in the stream, in chars (or, for the {@link
+         *               AsciiArtFilterOutputStream}, in bytes)
+         */
+        String replace(String body, long offset);
+    }
+
+    private final Writer        delegate;
+    private final Replacer      replacer;
+    private final StringBuilder body = new StringBuilder();
+
+    private final AsciiArtMatcher<char[]> matcher = new AsciiArtMatcher<char[]>() {
+
+        @Override int
+        elementAt(char[] chunk, int i) { return chunk[i]; }
+
+        @Override int
+        indexOfLt(char[] chunk, int from, int to) {
+            while (from < to && chunk[from] != '<') from++;
+            return from;
+        }
+
+        @Override void
+        passThrough(char[] chunk, int off, int len) throws IOException {
+            AsciiArtFilterWriter.this.delegate.write(chunk, off, len);
+        }
+
+        @Override void
+        passThrough(String s, int start, int end) throws IOException {
+            AsciiArtFilterWriter.this.delegate.write(s, start, end - start);
+        }
+
+        @Override void
+        appendBody(char[] chunk, int off, int len) { AsciiArtFilterWriter.this.body.append(chunk, off, len); }
+
+        @Override void
+        passThroughBody() throws IOException {
+            AsciiArtFilterWriter.this.delegate.append(AsciiArtFilterWriter.this.body);
+            AsciiArtFilterWriter.this.body.setLength(0);
+        }
+
+        @Override void
+        replaceBody(long offset) throws IOException {
+            AsciiArtFilterWriter.this.delegate.write(
+                AsciiArtFilterWriter.this.replacer.replace(AsciiArtFilterWriter.this.body.toString(), offset)
+            );
+            AsciiArtFilterWriter.this.body.setLength(0);
+        }
+    };
+
+    AsciiArtFilterWriter(Writer delegate, Replacer replacer) {
+        this.delegate = delegate;
+        this.replacer = replacer;
+    }
+
+    @Override public void
+    write(char[] cbuf, int off, int len) throws IOException { this.matcher.scan(cbuf, off, len); }
+
+    /**
+     * Writes the pending partial match as it is (like the regex-based filter writer does), and then flushes the
+     * delegate. Notice that {@link de.unkrig.commons.io.IoUtil#copy(java.io.Reader, Writer)} flushes, but does not
+     * close its writer.
+     */
+    @Override public void
+    flush() throws IOException {
+        this.matcher.passThroughPending();
+        this.delegate.flush();
+    }
+
+    /**
+     * Writes the pending partial match as it is, and then closes the delegate.
+     */
+    @Override public void
+    close() throws IOException {
+        this.matcher.passThroughPending();
+        this.delegate.close();
+    }
+}
@@ -0,0 +1,241 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.txt2html;
+
+import java.io.IOException;
+
+/**
+ * The state machine that {@link AsciiArtFilterWriter} and {@link AsciiArtFilterOutputStream} share: Finds the matches
+ * of {@link Txt2SvgFilterWriter#PATTERN_ASCII_ART} in a sequence of chars or bytes, which arrives in chunks. Because
+ * the pattern is pure ASCII, chars and bytes (of an ASCII-compatible charset) are matched the same way.
+ * <p>
+ *   The subclass reads, passes through and buffers the elements of the chunks; the bulk operations (scanning for
+ *   {@code '<'}, passing through text, buffering a body) are its business, so they run on the raw arrays.
+ * </p>
+ *
+ * @param <B> The type of the chunks, e.g. {@code char[]} or {@code byte[]}
+ */
+abstract
+class AsciiArtMatcher<B> {
+
+    static final String PREFIX = "<pre class=\"asciiart\"><code>";
+    static final String SUFFIX = "</code></pre>";
+
+    private static final int IN_TEXT      = 0; // Outside of an ASCII art region
+    private static final int IN_PREFIX    = 1; // "matched" elements of the PREFIX have been seen
+    private static final int AFTER_PREFIX = 2; // The optional "." may follow
+    private static final int IN_BODY      = 3;
+    private static final int IN_SUFFIX    = 4; // "matched" elements of the SUFFIX have been seen
+
+    private int     state = IN_TEXT;
+    private int     matched;
+    private boolean dot;
+    private long    position;   // The number of elements scanned so far
+    private long    matchStart; // The position of the current match
+
+    /**
+     * @return The element at index <var>i</var> of the <var>chunk</var>; non-ASCII elements must not be mistaken for
+     *         ASCII chars
+     */
+    abstract int
+    elementAt(B chunk, int i);
+
+    /**
+     * @return The index of the first {@code '<'} in {@code chunk[from ... to-1]}, or <var>to</var>
+     */
+    abstract int
+    indexOfLt(B chunk, int from, int to);
+
+    /**
+     * Writes {@code chunk[off ... off+len-1]} to the delegate.
+     */
+    abstract void
+    passThrough(B chunk, int off, int len) throws IOException;
+
+    /**
+     * Writes {@code s.substring(start, end)}, which is pure ASCII, to the delegate.
+     */
+    abstract void
+    passThrough(String s, int start, int end) throws IOException;
+
+    /**
+     * Appends {@code chunk[off ... off+len-1]} to the body of the current match.
+     */
+    abstract void
+    appendBody(B chunk, int off, int len);
+
+    /**
+     * Writes the body of the current match to the delegate, and then clears it.
+     */
+    abstract void
+    passThroughBody() throws IOException;
+
+    /**
+     * Writes the replacement of the body of the current match to the delegate, and then clears the body.
+     *
+     * @param offset The position of the match's opening tag
+     */
+    abstract void
+    replaceBody(long offset) throws IOException;
+
+    /**
+     * Processes {@code chunk[off ... off+len-1]}.
+     */
+    final void
+    scan(B chunk, int off, int len) throws IOException {
+
+        long base = this.position - off; // The position of "chunk[0]"
+        this.position += len;
+
+        for (int end = off + len; off < end;) {
+            switch (this.state) {
+
+            case IN_TEXT:
+                {
+                    int i = this.indexOfLt(chunk, off, end);
+                    if (i > off) this.passThrough(chunk, off, i - off);
+                    if (i == end) return;
+                    this.state      = IN_PREFIX;
+                    this.matched    = 1;
+                    this.matchStart = base + i;
+                    off             = i + 1;
+                }
+                break;
+
+            case IN_PREFIX:
+                if (this.elementAt(chunk, off) != PREFIX.charAt(this.matched)) {
+                    this.mismatch(base + off);
+                    break;
+                }
+                off++;
+                if (++this.matched == PREFIX.length()) this.state = AFTER_PREFIX;
+                break;
+
+            case AFTER_PREFIX:
+                this.dot = this.elementAt(chunk, off) == '.';
+                if (this.dot) off++;
+                this.state = IN_BODY;
+                break;
+
+            case IN_BODY:
+                {
+                    int i = this.indexOfLt(chunk, off, end);
+                    this.appendBody(chunk, off, i - off);
+                    if (i == end) return;
+                    this.state   = IN_SUFFIX;
+                    this.matched = 1;
+                    off          = i + 1;
+                }
+                break;
+
+            case IN_SUFFIX:
+                if (this.elementAt(chunk, off) != SUFFIX.charAt(this.matched)) {
+                    this.mismatch(base + off);
+                    break;
+                }
+                off++;
+                if (++this.matched == SUFFIX.length()) {
+                    this.replaceBody(this.matchStart);
+                    this.state = IN_TEXT;
+                }
+                break;
+
+            default:
+                throw new AssertionError(this.state);
+            }
+        }
+    }
+
+    /**
+     * Writes the pending partial match as it is (like the regex-based filter writer does), e.g. when the stream is
+     * flushed or closed.
+     */
+    final void
+    passThroughPending() throws IOException {
+        this.passThroughPending(0);
+        this.state = IN_TEXT;
+    }
+
+    /**
+     * Passes the pending partial match through, because the current element does not continue it. The caller then
+     * re-examines the current element, which may start the next match.
+     * <p>
+     *   Neither the PREFIX nor the SUFFIX contains {@code "<p"}, so a new match can only start at the current
+     *   element, or at a {@code '<'} right before it.
+     * </p>
+     *
+     * @param position The position of the current element
+     */
+    private void
+    mismatch(long position) throws IOException {
+
+        boolean trailingLt = (
+            this.state == IN_PREFIX
+            ? this.matched > 1 && PREFIX.charAt(this.matched - 1) == '<'
+            : SUFFIX.charAt(this.matched - 1) == '<'
+        );
+        if (trailingLt) {
+            this.passThroughPending(1);
+            this.state      = IN_PREFIX;
+            this.matched    = 1;
+            this.matchStart = position - 1;
+        } else {
+            this.passThroughPending(0);
+            this.state = IN_TEXT;
+        }
+    }
+
+    /**
+     * Writes the pending partial match, except its last <var>omit</var> elements, and clears the body.
+     */
+    private void
+    passThroughPending(int omit) throws IOException {
+        switch (this.state) {
+
+        case IN_TEXT:
+            break;
+
+        case IN_PREFIX:
+            this.passThrough(PREFIX, 0, this.matched - omit);
+            break;
+
+        case AFTER_PREFIX:
+            this.passThrough(PREFIX, 0, PREFIX.length());
+            break;
+
+        case IN_BODY:
+        case IN_SUFFIX:
+            this.passThrough(PREFIX, 0, PREFIX.length());
+            if (this.dot) this.passThrough(".", 0, 1);
+            this.passThroughBody();
+            if (this.state == IN_SUFFIX) this.passThrough(SUFFIX, 0, this.matched - omit);
+            break;
+
+        default:
+            throw new AssertionError(this.state);
+        }
+    }
+}
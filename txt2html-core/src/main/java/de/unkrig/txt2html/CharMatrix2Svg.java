@@ -25,19 +25,28 @@
 
 package de.unkrig.txt2html;
 
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.regex.MatchResult;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntPredicate;
 
 import de.unkrig.commons.lang.AssertionUtil;
+import de.unkrig.commons.nullanalysis.Nullable;
+import de.unkrig.txt2html.text.ArrayCharMatrix;
 import de.unkrig.txt2html.text.CharMatrix;
 import de.unkrig.txt2html.text.CharMatrix.Orientation;
-import de.unkrig.txt2html.text.CharMatrix.Turtle;
+import de.unkrig.txt2html.text.CharMatrixScanners;
 import de.unkrig.txt2html.text.MutableCharMatrix;
 
 public
@@ -45,53 +54,51 @@ class CharMatrix2Svg {
     
     static { AssertionUtil.enableAssertionsForThisClass(); }
 
-    // Starting from a table's corner, finds the next table corner below.
-    private static final Pattern PATTERN_TABLE_NEXT_CORNER_DOWN = Pattern.compile("\\|+\\+");
-    // Starting from a table's corner, finds the next table corner to the right.
-    private static final Pattern PATTERN_TABLE_NEXT_CORNER_RIGHT = Pattern.compile("-+\\+");
-
-    // Starting at a corner of an arrow ('+'), finds the next corner (or the root) of the arrow.
-    private static final Pattern PATTERN_NEXT_HORIZONAL_POLYGON_SEGMENT = Pattern.compile("[^|]*-\\+?");
-    private static final Pattern PATTERN_NEXT_VERTICAL_POLYGON_SEGMENT  = Pattern.compile("[^\\-]*\\|\\+?");
+    // "Orientation.values()" creates a new array on each invocation.
+    private static final Orientation[] ORIENTATIONS = Orientation.values();
     
-    private int cellWidth  = 6;
-    private int cellHeight = 15;
-
-    interface ArtifactDetector { boolean detect(MutableCharMatrix mcm, int x, int y, CharMatrix2Svg cm2svg); }
+    // The body of a built-in artifact detector; see "BUILT_IN_DETECTORS".
+    private interface Detection { boolean detect(MutableCharMatrix mcm, int x, int y, CharMatrix2Svg cm2svg); }
 
-    private static final ArtifactDetector NORMAL_TEXT = (mcm, x, y, cm2svg) -> {
+    private static final Detection NORMAL_TEXT = (mcm, x, y, cm2svg) -> {
         
         {
             final char c = mcm.charAt(x, y);
             if (c == ' ' || c == '+' || c == '|' || c == '^' || c == '-') return false;
         }
         
-        int x2 = x;
-        for (int i = x; i < mcm.width(); i++) {
-            final char c = mcm.charAt(i, y);
+        // Fetch the rest of the row at once, instead of calling "charAt()" for each cell.
+        int    rowLength = mcm.width() - x;
+        char[] row       = cm2svg.scratch.row(rowLength);
+        mcm.getRow(x, y, rowLength, row, 0);
+
+        int length = 0;
+        for (int i = 0; i < rowLength; i++) {
+            final char c = row[i];
             if (c == '+' || c == '|') break;
             if (c == ' ') {
-                if (i == mcm.width() - 1 || " +".indexOf(mcm.charAt(i + 1, y)) != -1) break;
+                if (i == rowLength - 1 || " +".indexOf(row[i + 1]) != -1) break;
             } else {
-                x2 = i + 1;
+                length = i + 1;
             }
         }
-        cm2svg.text(x, y, mcm.horizontalSection(y).subSequence(x, x2));
+        int x2 = x + length;
+        cm2svg.text(x, y, row, 0, length);
         mcm.fill(x, y, x2 - x, 1, ' ');
         return true;
     };
     
-    private static final ArtifactDetector DOCUMENT_SYMBOL = (cm, x, y, cm2svg) -> {
+    private static final Detection DOCUMENT_SYMBOL = (cm, x, y, cm2svg) -> {
         if (cm.charAt(x, y) != '+' || x + 3 > cm.width() || y + 3 > cm.height()) return false;
         
-        int[] hCorners = corners(cm.horizontalSection(y), x, PATTERN_TABLE_NEXT_CORNER_RIGHT);
-        int[] vCorners = corners(cm.verticalSection(x),   y, PATTERN_TABLE_NEXT_CORNER_DOWN);
+        Scratch s = cm2svg.scratch;
+        s.corners(cm, x, y);
 
-        if (hCorners.length != 2 || vCorners.length != 2) return false;
-        int x2 = hCorners[1];
-        int y2 = vCorners[1];
+        if (s.hCornerCount != 2 || s.vCornerCount != 2) return false;
+        int x2 = s.hCorners[1];
+        int y2 = s.vCorners[1];
         if (
-            x2 + 2 > cm.width()
+            x2 + 3 > cm.width()
             || cm.charAt(x2, y + 1) != '|'
             || cm.charAt(x2 + 1, y + 1) != '\\'
             || cm.charAt(x2,     y + 2) != '+'
@@ -100,18 +107,12 @@ class CharMatrix2Svg {
             || cm.charAt(x2 + 2, y2)    != '+'
         ) return false;
         
-        for (int xx = x + 1; xx < x2; xx++) {
-            if (cm.charAt(xx, y) != '-') return false;
-        }
-        for (int yy = y + 3; yy < y2; yy++) {
-            if (cm.charAt(x2 + 2, yy) != '|') return false;
-        }
-        for (int xx = x + 1; xx < x2 + 2; xx++) {
-            if (cm.charAt(xx, y2) != '-') return false;
-        }
-        for (int yy = y + 1; yy < y2; yy++) {
-            if (cm.charAt(x, yy) != '|') return false;
-        }
+        if (
+            !cm.rowConsistsOf(x + 1, y, x2 - x - 1, '-')
+            || !cm.columnConsistsOf(x2 + 2, y + 3, y2 - y - 3, '|')
+            || !cm.rowConsistsOf(x + 1, y2, x2 - x + 1, '-')
+            || !cm.columnConsistsOf(x, y + 1, y2 - y - 1, '|')
+        ) return false;
         cm2svg.polyline(x2, y, x, y, x, y2, x2 + 2, y2, x2 + 2, y + 2, x2, y, x2, y + 2, x2 + 2, y + 2);
         
         cm2svg.convertSubmatrix(cm, x + 1, y + 1, x2 - x - 1, y2 - y - 1);
@@ -121,22 +122,26 @@ class CharMatrix2Svg {
         return true;
     };
     
-    private static final ArtifactDetector TABLE = (cm, x, y, cm2svg) -> {
+    private static final Detection TABLE = (cm, x, y, cm2svg) -> {
         if (cm.charAt(x, y) != '+') return false;
         
-        int[] hCorners = corners(cm.horizontalSection(y), x, PATTERN_TABLE_NEXT_CORNER_RIGHT);
-        int[] vCorners = corners(cm.verticalSection(x),   y, PATTERN_TABLE_NEXT_CORNER_DOWN);
+        Scratch s = cm2svg.scratch;
+        s.corners(cm, x, y);
 
-        if (hCorners.length < 2 || vCorners.length < 2) return false;
-        
-        int tableX1 = hCorners[0], tableX2 = hCorners[hCorners.length - 1];
-        int tableY1 = vCorners[0], tableY2 = vCorners[vCorners.length - 1];
+        if (s.hCornerCount < 2 || s.vCornerCount < 2) return false;
         
-        for (int hci = 0; hci < hCorners.length; hci++) {
-            for (int vci = 0; vci < vCorners.length; vci++) {
-                if (cm.charAt(hCorners[hci], vCorners[vci]) != '+') return false;
+        for (int hci = 0; hci < s.hCornerCount; hci++) {
+            for (int vci = 0; vci < s.vCornerCount; vci++) {
+                if (cm.charAt(s.hCorners[hci], s.vCorners[vci]) != '+') return false;
             }
         }
+
+        // It's a table; copy the corners, because the conversion of the cells below re-uses the scratch buffers.
+        int[] hCorners = Arrays.copyOf(s.hCorners, s.hCornerCount);
+        int[] vCorners = Arrays.copyOf(s.vCorners, s.vCornerCount);
+
+        int tableX1 = hCorners[0], tableX2 = hCorners[hCorners.length - 1];
+        int tableY1 = vCorners[0], tableY2 = vCorners[vCorners.length - 1];
         
         cm2svg.polyline(tableX1, tableY2, tableX1, tableY1, tableX2, tableY1);
         
@@ -147,13 +152,11 @@ class CharMatrix2Svg {
                 int cellY1 = vCorners[vci];
                 int cellY2 = vCorners[vci + 1];
                 
-                for (int x2 = cellX1 + 1; x2 < cellX2; x2++) {
-                    if (cm.charAt(x2, cellY2) != '-') return false;
-                }
-                for (int y2 = cellY1 + 1; y2 < cellY2; y2++) {
-                    if (cm.charAt(cellX2, y2) != '|') return false;
-                }
-                if (cm.charAt(cellX2, cellY2) != '+') return false;
+                if (
+                    !cm.rowConsistsOf(cellX1 + 1, cellY2, cellX2 - cellX1 - 1, '-')
+                    || !cm.columnConsistsOf(cellX2, cellY1 + 1, cellY2 - cellY1 - 1, '|')
+                    || cm.charAt(cellX2, cellY2) != '+'
+                ) return false;
                 
                 cm2svg.convertSubmatrix(cm, cellX1 + 1, cellY1 + 1, cellX2 - cellX1 - 1, cellY2 - cellY1 - 1);
                 
@@ -169,132 +172,477 @@ class CharMatrix2Svg {
     /**
      * Detects an arrow with its tip at {@code (x, y)}.
      */
-    private static final ArtifactDetector DOWN_ARROW = (cm, x, y, cm2svg) -> {
+    private static final Detection DOWN_ARROW = (cm, x, y, cm2svg) -> {
         if (cm.charAt(x, y) != 'v') return false;
-        Turtle turtle = cm.new Turtle(x, y, Orientation.NORTH);
-        MatchResult mr = turtle.forward(PATTERN_NEXT_VERTICAL_POLYGON_SEGMENT);
-        if (mr == null) return false;
+        Scratch s = cm2svg.scratch;
+        if (!s.forward(cm, x, y, Orientation.NORTH)) return false;
+        int x2 = s.x, y2 = s.y;
         cm.charAt(x, y, ' ');
-        for (int yy = y; yy < turtle.getY(); yy++) {
+        for (int yy = y; yy < y2; yy++) {
             if (cm.charAt(x, yy) == '|') cm.charAt(x, yy, ' ');
         }
-        cm2svg.arrow(turtle.getX(), turtle.getY(), x, y);
-        cookArrowSegments(cm2svg, turtle);
+        cm2svg.arrow(x2, y2, x, y);
+        cookArrowSegments(cm, x2, y2, Orientation.NORTH, cm2svg);
         return true;
     };
     
     /**
      * Detects an arrow with its tip at {@code (x, y)}.
      */
-    private static final ArtifactDetector UP_ARROW = (cm, x, y, cm2svg) -> {
+    private static final Detection UP_ARROW = (cm, x, y, cm2svg) -> {
         if (cm.charAt(x, y) != '^') return false;
-        Turtle turtle = cm.new Turtle(x, y, Orientation.SOUTH);
-        MatchResult mr = turtle.forward(PATTERN_NEXT_VERTICAL_POLYGON_SEGMENT);
-        if (mr == null) return false;
+        Scratch s = cm2svg.scratch;
+        if (!s.forward(cm, x, y, Orientation.SOUTH)) return false;
+        int x2 = s.x, y2 = s.y;
         cm.charAt(x, y, ' ');
-        for (int yy = y; yy > turtle.getY(); yy--) {
+        for (int yy = y; yy > y2; yy--) {
             if (cm.charAt(x, yy) == '|') cm.charAt(x, yy, ' ');
         }
-        cm2svg.arrow(turtle.getX(), turtle.getY(), x, y);
-        cookArrowSegments(cm2svg, turtle);
+        cm2svg.arrow(x2, y2, x, y);
+        cookArrowSegments(cm, x2, y2, Orientation.SOUTH, cm2svg);
         return true;
     };
     
     /**
      * Detects an arrow with its tip at {@code (x, y)}.
      */
-    private static final ArtifactDetector LEFT_ARROW = (cm, x, y, cm2svg) -> {
+    private static final Detection LEFT_ARROW = (cm, x, y, cm2svg) -> {
         if (cm.charAt(x, y) != '<') return false;
-        Turtle turtle = cm.new Turtle(x, y, Orientation.EAST);
-        MatchResult mr = turtle.forward(PATTERN_NEXT_HORIZONAL_POLYGON_SEGMENT);
-        if (mr == null) return false;
+        Scratch s = cm2svg.scratch;
+        if (!s.forward(cm, x, y, Orientation.EAST)) return false;
+        int x2 = s.x, y2 = s.y;
         cm.charAt(x, y, ' ');
-        for (int xx = x; xx < turtle.getX(); xx++) {
+        for (int xx = x; xx < x2; xx++) {
             if (cm.charAt(xx, y) == '-') cm.charAt(xx, y, ' ');
         }
-        cm2svg.arrow(turtle.getX(), turtle.getY(), x, y);
-        cookArrowSegments(cm2svg, turtle);
+        cm2svg.arrow(x2, y2, x, y);
+        cookArrowSegments(cm, x2, y2, Orientation.EAST, cm2svg);
         return true;
     };
     
     /**
      * Detects an arrow with its tip at {@code (x, y)}.
      */
-    private static final ArtifactDetector RIGHT_ARROW = (cm, x, y, cm2svg) -> {
+    private static final Detection RIGHT_ARROW = (cm, x, y, cm2svg) -> {
         if (cm.charAt(x, y) != '>') return false;
-        Turtle turtle = cm.new Turtle(x, y, Orientation.WEST);
-        MatchResult mr = turtle.forward(PATTERN_NEXT_HORIZONAL_POLYGON_SEGMENT);
-        if (mr == null) return false;
+        Scratch s = cm2svg.scratch;
+        if (!s.forward(cm, x, y, Orientation.WEST)) return false;
+        int x2 = s.x, y2 = s.y;
         cm.charAt(x, y, ' ');
-        for (int xx = x; xx > turtle.getX(); xx--) {
+        for (int xx = x; xx > x2; xx--) {
             if (cm.charAt(xx, y) == '-') cm.charAt(xx, y, ' ');
         }
-        cm2svg.arrow(turtle.getX(), turtle.getY(), x, y);
-        cookArrowSegments(cm2svg, turtle);
+        cm2svg.arrow(x2, y2, x, y);
+        cookArrowSegments(cm, x2, y2, Orientation.WEST, cm2svg);
         return true;
     };
     
+    /**
+     * Iff the cell at {@code (x, y)} is a '+', traces and renders the arrow segments that branch off from it, except
+     * for the one that leads back in the <var>orientation</var>'s opposite direction.
+     */
     private static void
-    cookArrowSegments(CharMatrix2Svg cm2svg, final Turtle turtle) {
+    cookArrowSegments(CharMatrix cm, int x, int y, Orientation orientation, CharMatrix2Svg cm2svg) {
 
-        if (turtle.charAt() != '+') return;
+        if (cm.charAt(x, y) != '+') return;
         
-        for (Orientation orientation : Orientation.values()) {
-            if (orientation == turtle.getOrientation().opposite()) continue;
-            final Turtle turtle2 = turtle.clone();
-            turtle2.setOrientation(orientation);
-            MatchResult mr;
-            switch (orientation) {
-            case EAST:
-            case WEST:
-                mr = turtle2.forward(PATTERN_NEXT_HORIZONAL_POLYGON_SEGMENT);
-                if (mr != null) {
-                    cm2svg.line(turtle.getX(), turtle.getY(), turtle2.getX(), turtle2.getY());
-                    cookArrowSegments(cm2svg, turtle2);
+        Scratch s = cm2svg.scratch;
+        for (Orientation orientation2 : ORIENTATIONS) {
+            if (orientation2 == orientation.opposite()) continue;
+            if (s.forward(cm, x, y, orientation2)) {
+                int x2 = s.x, y2 = s.y;
+                cm2svg.line(x, y, x2, y2);
+                cookArrowSegments(cm, x2, y2, orientation2, cm2svg);
+            }
+        }
+    }
+
+    private static final List<ArtifactDetector> BUILT_IN_DETECTORS = Collections.unmodifiableList(Arrays.asList(
+        CharMatrix2Svg.detector("DOWN_ARROW",      ArtifactDetector.PASS_ARROWS, c -> c == 'v', DOWN_ARROW),
+        CharMatrix2Svg.detector("UP_ARROW",        ArtifactDetector.PASS_ARROWS, c -> c == '^', UP_ARROW),
+        CharMatrix2Svg.detector("LEFT_ARROW",      ArtifactDetector.PASS_ARROWS, c -> c == '<', LEFT_ARROW),
+        CharMatrix2Svg.detector("RIGHT_ARROW",     ArtifactDetector.PASS_ARROWS, c -> c == '>', RIGHT_ARROW),
+        CharMatrix2Svg.detector("DOCUMENT_SYMBOL", ArtifactDetector.PASS_BOXES,  c -> c == '+', DOCUMENT_SYMBOL),
+        CharMatrix2Svg.detector("TABLE",           ArtifactDetector.PASS_BOXES,  c -> c == '+', TABLE),
+        CharMatrix2Svg.detector(
+            "NORMAL_TEXT",
+            ArtifactDetector.PASS_TEXT,
+            c -> c != '+' && c != '|' && c != '^' && c != '-',
+            NORMAL_TEXT
+        )
+    ));
+
+    private static ArtifactDetector
+    detector(final String name, final int pass, final IntPredicate isTrigger, final Detection detection) {
+
+        return new ArtifactDetector() {
+
+            // Identifies the detector in the "ConversionStatistics".
+            @Override public String
+            toString() { return name; }
+
+            @Override public int
+            getPass() { return pass; }
+
+            @Override public boolean
+            isTrigger(char c) { return isTrigger.test(c); }
+
+            @Override public boolean
+            detect(MutableCharMatrix mcm, int x, int y, CharMatrix2Svg cm2svg) {
+                return detection.detect(mcm, x, y, cm2svg);
+            }
+        };
+    }
+
+    /**
+     * Maps each character to the detectors that it triggers, grouped by pass. Thus the cost of dispatching a cell to
+     * its detectors does not depend on the total number of detectors. The detectors are represented by their indexes,
+     * so that the per-detector counters of the statistics are found in constant time.
+     * <p>
+     *   The table is filled lazily, in blocks of 256 characters, because most diagrams use only very few blocks.
+     *   It is thread-safe; the {@link DefaultDetectorTable} is shared by all converters.
+     * </p>
+     */
+    private static final
+    class DetectorTable {
+
+        final int                        passCount;
+        private final ArtifactDetector[] detectors;   // Ordered by pass
+        private final String[]           names;       // Parallel to "detectors"; see "detectorName()"
+        private final int[]              passIndexes; // Parallel to "detectors"
+
+        // Indexed by "c >> 8"; each block is indexed by "c & 0xff" and pass index, and contains detector indexes.
+        private final AtomicReferenceArray<int[][][]> blocks = new AtomicReferenceArray<>(256);
+
+        // Characters that trigger the same set of detectors share one "int[][]". Guarded by "this".
+        private final Map<BitSet, int[][]> interned = new HashMap<>();
+
+        DetectorTable(List<ArtifactDetector> detectors) {
+
+            // Sort the detectors by pass; "List.sort()" is stable, so the registration order is kept within a pass.
+            detectors = new ArrayList<>(detectors);
+            detectors.sort((ad1, ad2) -> Integer.compare(ad1.getPass(), ad2.getPass()));
+            this.detectors = detectors.toArray(new ArtifactDetector[detectors.size()]);
+
+            this.names = new String[this.detectors.length];
+            for (int i = 0; i < this.detectors.length; i++) this.names[i] = detectorName(this.detectors[i]);
+
+            this.passIndexes = new int[this.detectors.length];
+            int passCount = 0;
+            for (int i = 0; i < this.detectors.length; i++) {
+                if (i > 0 && this.detectors[i].getPass() != this.detectors[i - 1].getPass()) passCount++;
+                this.passIndexes[i] = passCount;
+            }
+            this.passCount = this.detectors.length == 0 ? 0 : passCount + 1;
+        }
+
+        /**
+         * @return The number of detectors
+         */
+        int
+        size() { return this.detectors.length; }
+
+        /**
+         * @return The detector with the given <var>index</var>
+         */
+        ArtifactDetector
+        detector(int index) { return this.detectors[index]; }
+
+        /**
+         * @return For each pass, the indexes of the detectors that <var>c</var> triggers
+         */
+        int[][]
+        get(char c) {
+            int[][][] block = this.blocks.get(c >> 8);
+            if (block == null) block = this.computeBlock(c >> 8);
+            return block[c & 0xff];
+        }
+
+        private synchronized int[][][]
+        computeBlock(int blockIndex) {
+
+            int[][][] block = this.blocks.get(blockIndex);
+            if (block != null) return block;
+
+            block = new int[256][][];
+            BitSet triggered = new BitSet(this.detectors.length);
+            for (int i = 0; i < 256; i++) {
+                char c = (char) (blockIndex << 8 | i);
+
+                triggered.clear();
+                if (c != ' ') {
+                    for (int j = 0; j < this.detectors.length; j++) {
+                        if (this.detectors[j].isTrigger(c)) triggered.set(j);
+                    }
                 }
-                break;
-            case NORTH:
-            case SOUTH:
-                mr = turtle2.forward(PATTERN_NEXT_VERTICAL_POLYGON_SEGMENT);
-                if (mr != null) {
-                    cm2svg.line(turtle.getX(), turtle.getY(), turtle2.getX(), turtle2.getY());
-                    cookArrowSegments(cm2svg, turtle2);
+
+                int[][] byPass = this.interned.get(triggered);
+                if (byPass == null) {
+                    byPass = new int[this.passCount][];
+                    for (int pass = 0; pass < this.passCount; pass++) {
+                        int[] indexes = new int[triggered.cardinality()];
+                        int   n       = 0;
+                        for (int j = triggered.nextSetBit(0); j != -1; j = triggered.nextSetBit(j + 1)) {
+                            if (this.passIndexes[j] == pass) indexes[n++] = j;
+                        }
+                        byPass[pass] = Arrays.copyOf(indexes, n);
+                    }
+                    this.interned.put((BitSet) triggered.clone(), byPass);
                 }
-                break;
+                block[i] = byPass;
             }
+
+            this.blocks.set(blockIndex, block);
+            return block;
         }
     }
 
-    private final PrintWriter pw;
-    private int               currentXOffset = 5, currentYOffset = 1;
+    /**
+     * The built-in detectors, plus those registered as services. The services are looked up through the class loader
+     * of this class, and then through the context class loader of the thread that first uses the table (if that is a
+     * different one), which sees e.g. the detectors on a Maven or Ant project class path.
+     */
+    private static final
+    class DefaultDetectorTable {
+
+        static final DetectorTable INSTANCE;
+        static {
+            List<ArtifactDetector> detectors = new ArrayList<>(BUILT_IN_DETECTORS);
+            Set<Class<?>>          classes   = new HashSet<>();
+
+            ClassLoader cl  = CharMatrix2Svg.class.getClassLoader();
+            ClassLoader ccl = Thread.currentThread().getContextClassLoader();
+            for (ClassLoader l : ccl == null || ccl == cl ? new ClassLoader[] { cl } : new ClassLoader[] { cl, ccl }) {
+
+                // A service that both class loaders see is used only once.
+                for (ArtifactDetector ad : ServiceLoader.load(ArtifactDetector.class, l)) {
+                    if (classes.add(ad.getClass())) detectors.add(ad);
+                }
+            }
+            INSTANCE = new DetectorTable(detectors);
+        }
+    }
+
+    /**
+     * The CSS styles and the arrow head marker that the diagrams refer to in {@link #setSharedStyles(boolean) shared
+     * styles} mode. Must appear once in the HTML document, before the first diagram.
+     */
+    public static final String SHARED_STYLES = (
+        ""
+        + "<style>%n"
+        + "svg.asciiart { font-family:Consolas; font-size:11px }%n"
+        + "svg.asciiart .box { fill:none; stroke:black; stroke-width:1 }%n"
+        + "svg.asciiart .line, svg.asciiart .arrow { fill:none; stroke:rgb(220,220,220); stroke-width:4 }%n"
+        + "svg.asciiart .arrow { marker-end:url(#asciiart-head) }%n"
+        + "</style>%n"
+        + "<svg width=\"0\" height=\"0\" style=\"position:absolute\">%n"
+        + "  <defs>%n"
+        + "    <marker id=\"asciiart-head\" markerWidth=\"4\" markerHeight=\"4\"%n"
+        + "      style=\"fill:rgb(220,220,220)\"%n"
+        + "      orient=\"auto\" refY=\"2\">%n"
+        + "      <path d=\"M0,0 L4,2 0,4\" />%n"
+        + "    </marker>%n"
+        + "  </defs>%n"
+        + "</svg>%n"
+    ).replace("%n", System.lineSeparator());
+
+    private final SvgEmitter    out;
+    private final DetectorTable detectors;
+    private final Scratch       scratch;
+    private final Scene         sceneBuffer = new Scene(0, 0); // Re-used by "convert(CharMatrix)"
+    @Nullable private Scene     scene;                         // The scene that is currently being detected
+    private int                 currentXOffset, currentYOffset;
+    private int                 depth; // Nesting level of "convert(MutableCharMatrix)"
+    private boolean             dualLayout;
+    private boolean             sharedStyles;
+    private boolean             compact;
+
+    // While statistics are enabled: The probes and hits of each detector (indexed like "DetectorTable.detectors"),
+    // and the non-blank cells scanned, since the last "flushStatistics()".
+    @Nullable private ConversionStatistics statistics;
+    @Nullable private long[]               probes, hits;
+    private long                           cellsScanned;
     
+    /**
+     * Uses the built-in {@link ArtifactDetector}s, plus those that are registered as services.
+     */
+    public
+    CharMatrix2Svg(Writer w) { this(new SvgEmitter(w), DefaultDetectorTable.INSTANCE); }
+
+    /**
+     * Writes the SVG markup UTF-8-encoded to <var>os</var>; uses the built-in {@link ArtifactDetector}s, plus those
+     * that are registered as services.
+     */
     public
-    CharMatrix2Svg(Writer w) {
-        this.pw = w instanceof PrintWriter ? (PrintWriter) w : new PrintWriter(w);
+    CharMatrix2Svg(OutputStream os) { this(new SvgEmitter(os), DefaultDetectorTable.INSTANCE); }
+
+    /**
+     * Uses the built-in {@link ArtifactDetector}s, plus the <var>additionalDetectors</var> (but not those that are
+     * registered as services).
+     */
+    public
+    CharMatrix2Svg(Writer w, Iterable<? extends ArtifactDetector> additionalDetectors) {
+        this(new SvgEmitter(w), CharMatrix2Svg.detectorTable(additionalDetectors));
+    }
+
+    /**
+     * Uses only the given <var>detectors</var>; neither the built-in {@link ArtifactDetector}s nor those that are
+     * registered as services. This is useful for measuring or testing detectors in isolation.
+     *
+     * @see #builtInDetectors()
+     */
+    public static CharMatrix2Svg
+    withDetectors(Writer w, Iterable<? extends ArtifactDetector> detectors) {
+        List<ArtifactDetector> l = new ArrayList<>();
+        for (ArtifactDetector ad : detectors) l.add(ad);
+        return new CharMatrix2Svg(new SvgEmitter(w), new DetectorTable(l));
+    }
+
+    /**
+     * @return The built-in {@link ArtifactDetector}s: The down, up, left and right arrows, the document symbol, the
+     *         table and the normal text, in this order
+     */
+    public static List<ArtifactDetector>
+    builtInDetectors() { return BUILT_IN_DETECTORS; }
+
+    /**
+     * @return The detectors that {@link #CharMatrix2Svg(Writer)} uses
+     */
+    static List<ArtifactDetector>
+    defaultDetectors() { return Collections.unmodifiableList(Arrays.asList(DefaultDetectorTable.INSTANCE.detectors)); }
+
+    /**
+     * @return The {@link Object#toString()} of a built-in <var>detector</var>; for any other detector its class name,
+     *         followed by its {@link Object#toString()} in parentheses iff that is overridden (the inherited one differs
+     *         for each instance)
+     */
+    static String
+    detectorName(ArtifactDetector detector) {
+
+        if (BUILT_IN_DETECTORS.contains(detector)) return detector.toString();
+
+        String className = detector.getClass().getName();
+        try {
+            if (detector.getClass().getMethod("toString").getDeclaringClass() == Object.class) return className;
+        } catch (NoSuchMethodException nsme) {
+            throw new AssertionError(nsme);
+        }
+        return className + "(" + detector + ")";
+    }
+
+    private
+    CharMatrix2Svg(SvgEmitter out, DetectorTable detectors) {
+        this.out       = out;
+        this.detectors = detectors;
+        this.scratch   = new Scratch(detectors.passCount);
+    }
+
+    private static DetectorTable
+    detectorTable(Iterable<? extends ArtifactDetector> additionalDetectors) {
+        List<ArtifactDetector> detectors = new ArrayList<>(BUILT_IN_DETECTORS);
+        for (ArtifactDetector ad : additionalDetectors) detectors.add(ad);
+        return new DetectorTable(detectors);
     }
 
+    /**
+     * Whether to keep a column-major copy of the diagram while converting it; this speeds up the column-by-column
+     * detection passes and the vertical scans on large diagrams, at the cost of more memory.
+     *
+     * @see ArrayCharMatrix#setDualLayout(boolean)
+     */
+    public void
+    setDualLayout(boolean value) { this.dualLayout = value; }
+
+    /**
+     * Whether to style the SVG elements through the CSS classes of the {@link #SHARED_STYLES}, instead of inline
+     * {@code style} attributes, and to refer to the arrow head marker defined there, instead of defining one in each
+     * {@code <svg>} element. This saves many bytes and avoids duplicate element IDs when an HTML document contains
+     * many diagrams; the document must then contain the {@link #SHARED_STYLES} once, before the first diagram.
+     */
+    public void
+    setSharedStyles(boolean value) { this.sharedStyles = value; }
+
+    /**
+     * Whether to produce smaller SVG markup: All line segments and all box edges are merged into one {@code <path>}
+     * each (with relative coordinates), the texts of each row go into one {@code <text>} element (the second and
+     * following as {@code <tspan>}s), and there is no whitespace between the elements. Renders the same picture.
+     */
+    public void
+    setCompact(boolean value) { this.compact = value; }
+
+    /**
+     * The charset with which the SVG markup will eventually be encoded; text characters that it cannot encode are
+     * written as numeric character references (e.g. {@code "&#8364;"}). {@code null} (the default) means that the
+     * charset can encode all characters.
+     */
+    public void
+    setCharset(@Nullable Charset value) { this.out.setCharset(value); }
+
+    /**
+     * Where to add the number of non-blank cells scanned, and the probes and hits of each {@link ArtifactDetector};
+     * {@code null} (the default) disables the counting.
+     */
+    public void
+    setStatistics(@Nullable ConversionStatistics value) {
+        this.statistics   = value;
+        this.probes       = value == null ? null : new long[this.detectors.size()];
+        this.hits         = value == null ? null : new long[this.detectors.size()];
+        this.cellsScanned = 0;
+    }
+
+    /**
+     * Writes one {@code <svg>} element that depicts <var>cm</var>; equivalent with {@code render(toScene(cm))}, but
+     * re-uses the scene.
+     *
+     * @throws java.io.UncheckedIOException Writing the SVG markup failed
+     */
     public void
     convert(CharMatrix cm) {
-        this.pw.printf(
-            "<svg class=\"asciiart\" width=\"%d\" height=\"%d\" style=\"font-family:Consolas;font-size:11px\">%n",
-            x2px(cm.width()) + 35,
-            y2px(cm.height()) + 15
-        );
-        this.pw.printf(
-            ""
-            + "  <defs>%n"
-            + "    <marker id=\"head\" markerWidth=\"4\" markerHeight=\"4\"%n"
-            + "      style=\"fill:rgb(220,220,220)\"%n"
-            + "      orient=\"auto\" refY=\"2\">%n"
-            + "      <path d=\"M0,0 L4,2 0,4\" />%n"
-            + "    </marker>%n"
-            + "  </defs>%n"
-        );
-        this.convert(cm.copy());
-        this.pw.printf("</svg>%n");
+        this.sceneBuffer.reset(cm.width(), cm.height());
+        this.render(this.detect(cm, this.sceneBuffer));
     }
 
-    private void
+    /**
+     * Runs the artifact detectors on a copy of <var>cm</var>, and returns what they found.
+     */
+    public Scene
+    toScene(CharMatrix cm) { return this.detect(cm, new Scene(cm.width(), cm.height())); }
+
+    /**
+     * Writes one {@code <svg>} element that depicts the <var>scene</var>.
+     *
+     * @throws java.io.UncheckedIOException Writing the SVG markup failed
+     */
+    public void
+    render(Scene scene) {
+        try {
+            new SvgRenderer(this.out, this.sharedStyles, this.compact).render(scene);
+        } finally {
+            this.out.flush();
+        }
+    }
+
+    private Scene
+    detect(CharMatrix cm, Scene scene) {
+
+        MutableCharMatrix mcm = cm.copy();
+        if (this.dualLayout && mcm instanceof ArrayCharMatrix) ((ArrayCharMatrix) mcm).setDualLayout(true);
+
+        Scene previous = this.scene;
+        this.scene = scene;
+        try {
+            this.convert(mcm);
+        } finally {
+            this.scene = previous;
+        }
+        this.flushStatistics();
+        return scene;
+    }
+
+    /**
+     * Converts the given region of <var>cm</var> as a diagram of its own, e.g. the content of a table cell.
+     */
+    public void
     convertSubmatrix(MutableCharMatrix cm, int x, int y, int width, int height) {
         
         this.currentXOffset += x;
@@ -307,209 +655,260 @@ class CharMatrix2Svg {
         }
     }
 
-    private void
+    /**
+     * Adds the text <var>cs</var>, starting at {@code (x, y)}, to the scene.
+     *
+     * @throws IllegalStateException No conversion is in progress
+     */
+    public void
     text(int x, int y, CharSequence cs) {
-        this.pw.printf(
-            "<text x=\"%d\" y=\"%d\">%s</text>%n",
-            x2px(x) + cellWidth / 2,
-            y2px(y) + (3 * cellHeight) / 4,
-            sgmlEscape(cs)
-        );
+        this.scene().addText(this.currentXOffset + x, this.currentYOffset + y, cs);
     }
 
-    private String
-    sgmlEscape(CharSequence cs) {
-        int l = cs.length();
-        
-        int i = 0;
-        for (;; i++) {
-            if (i == l) return cs.toString();
-            char c = cs.charAt(i);
-            if (c == '<' || c == '>' || c == '"' || c == '&') break;
-        }
-        
-        StringWriter sw = new StringWriter(l + 5);
-        sw.append(cs.subSequence(0,  i));
-        for (; i < l; i++) {
-            char c = cs.charAt(i);
-            if (c == '<') {
-                sw.append("&lt;");
-            } else
-            if (c == '>') {
-                sw.append("&gt;");
-            } else
-            if (c == '"') {
-                sw.append("&quot;");
-            } else
-            if (c == '&') {
-                sw.append("&amp;");
-            } else
-            {
-                sw.append(c);
-            }
-        }
-        return sw.toString();
+    private void
+    text(int x, int y, char[] ca, int offset, int length) {
+        this.scene().addText(this.currentXOffset + x, this.currentYOffset + y, ca, offset, length);
     }
 
-    private void
+    /**
+     * Adds a black polyline through the cells {@code (xy[0], xy[1])}, {@code (xy[2], xy[3])}, ... to the scene.
+     *
+     * @throws IllegalStateException No conversion is in progress
+     */
+    public void
     polyline(int... xy) {
-        this.pw.printf("<polyline points=\"");
-        for (int i = 0; i < xy.length;) {
-            if (i > 0) this.pw.append(' ');
-            int x = xy[i++];
-            int y = xy[i++];
-            this.pw.printf("%d,%d", x2px(x) + cellWidth / 2, y2px(y) + cellHeight / 2);
-        }
-        this.pw.printf("\" style=\"fill:none;stroke:black;stroke-width:1\" />%n");
+        this.scene().addPolyline(this.currentXOffset, this.currentYOffset, xy);
     }
 
     /**
-     * Renders a line starting at {@code (x1, y1)} and ending at {@code (x2, y2)}.
+     * Adds a line starting at {@code (x1, y1)} and ending at {@code (x2, y2)} to the scene.
+     *
+     * @throws IllegalStateException No conversion is in progress
      */
-    private void
+    public void
     line(int x1, int y1, int x2, int y2) {
-        
-        int x1px = x2px(x1);
-        int y1px = y2px(y1);
-        int x2px = x2px(x2);
-        int y2px = y2px(y2);
-        
-        if (x1 == x2) {
-            if (y2 > y1) {
-                
-                // Downward line.
-                x1px += cellWidth;
-                y1px -= cellHeight / 2;
-                x2px += cellWidth;
-                y2px -= cellHeight / 2;
-            } else {
-                
-                // Upward line
-                x1px += cellWidth;
-                y1px += cellHeight / 2;
-                x2px += cellWidth;
-                y2px -= cellHeight / 2;
-            }
+        int dx = this.currentXOffset, dy = this.currentYOffset;
+        this.scene().addLine(x1 + dx, y1 + dy, x2 + dx, y2 + dy);
+    }
+
+    /**
+     * Adds an arrow starting at {@code (x1, y1)} and ending with a tip at {@code (x2, y2)} to the scene.
+     *
+     * @throws IllegalStateException No conversion is in progress
+     */
+    public void
+    arrow(int x1, int y1, int x2, int y2) {
+        int dx = this.currentXOffset, dy = this.currentYOffset;
+        this.scene().addArrow(x1 + dx, y1 + dy, x2 + dx, y2 + dy);
+    }
+
+    private Scene
+    scene() {
+        Scene result = this.scene;
+        if (result == null) throw new IllegalStateException("No conversion in progress");
+        return result;
+    }
+
+    /**
+     * Re-usable state of one conversion; keeps the artifact detectors from allocating memory for probes that fail.
+     * Notice that the conversion of a table cell or a document symbol's content re-uses the same scratch, so any
+     * results must be copied before the detector recurses.
+     */
+    private static final
+    class Scratch {
+
+        // One set of candidate lists per nesting level; see "convert(MutableCharMatrix)".
+        private final int    passCount;
+        private Candidates[] candidates = new Candidates[4];
+
+        // The result of "corners()".
+        int[] hCorners = new int[16], vCorners = new int[16];
+        int   hCornerCount, vCornerCount;
+
+        // The result of "forward()".
+        int x, y;
+
+        // See "row()".
+        private char[] row = new char[128];
+
+        Scratch(int passCount) { this.passCount = passCount; }
+
+        Candidates
+        candidates(int depth) {
+
+            if (depth == this.candidates.length) this.candidates = Arrays.copyOf(this.candidates, 2 * depth);
+
+            Candidates result = this.candidates[depth];
+            if (result == null) result = (this.candidates[depth] = new Candidates(this.passCount));
+            return result;
         }
-        
-        if (y1 == y2) {
-            if (x2 > x1) {
-                
-                // Right line.
-                x1px -= cellWidth / 2;
-                y1px += cellHeight / 2;
-                x2px -= cellWidth * 2;
-                y2px += cellHeight / 2;
-            } else {
-                
-                // Left line.
-                x1px += cellWidth / 2;
-                y1px += cellHeight / 2;
-                x2px += cellWidth * 2;
-                y2px += cellHeight / 2;
+
+        /**
+         * @return A buffer for at least <var>length</var> characters; its content is only valid until the next
+         *         invocation
+         */
+        char[]
+        row(int length) {
+            if (length > this.row.length) this.row = new char[Math.max(length, 2 * this.row.length)];
+            return this.row;
+        }
+
+        /**
+         * Finds the table corners right of and below {@code (x, y)}, and stores them in {@link #hCorners}, {@link
+         * #hCornerCount}, {@link #vCorners} and {@link #vCornerCount}. The first corner is always {@code (x, y)}
+         * itself.
+         */
+        void
+        corners(CharMatrix cm, int x, int y) {
+
+            this.hCorners[0]  = x;
+            this.hCornerCount = 1;
+            for (int xx = x, d; (d = CharMatrixScanners.nextCorner(cm, xx, y, Orientation.EAST, '-')) != -1;) {
+                if (this.hCornerCount == this.hCorners.length) {
+                    this.hCorners = Arrays.copyOf(this.hCorners, 2 * this.hCornerCount);
+                }
+                this.hCorners[this.hCornerCount++] = (xx += d);
+            }
+
+            this.vCorners[0]  = y;
+            this.vCornerCount = 1;
+            for (int yy = y, d; (d = CharMatrixScanners.nextCorner(cm, x, yy, Orientation.SOUTH, '|')) != -1;) {
+                if (this.vCornerCount == this.vCorners.length) {
+                    this.vCorners = Arrays.copyOf(this.vCorners, 2 * this.vCornerCount);
+                }
+                this.vCorners[this.vCornerCount++] = (yy += d);
             }
         }
-        pw.printf(
-            "<line x1=\"%d\" y1=\"%d\" x2=\"%d\" y2=\"%d\" style=\"stroke:rgb(220,220,220);stroke-width:4\" />%n",
-            x1px,
-            y1px,
-            x2px,
-            y2px
-        );
+
+        /**
+         * Traces one segment of an arrow, starting at {@code (x, y)} and going into the given <var>direction</var>,
+         * and, iff found, stores its end in {@link #x} and {@link #y}.
+         *
+         * @see CharMatrixScanners#nextPolygonSegment(CharMatrix, int, int, Orientation, char, char)
+         */
+        boolean
+        forward(CharMatrix cm, int x, int y, Orientation direction) {
+
+            int d = (
+                direction == Orientation.EAST || direction == Orientation.WEST
+                ? CharMatrixScanners.nextPolygonSegment(cm, x, y, direction, '-', '|')
+                : CharMatrixScanners.nextPolygonSegment(cm, x, y, direction, '|', '-')
+            );
+            if (d == -1) return false;
+
+            this.x = x + d * CharMatrixScanners.dx(direction);
+            this.y = y + d * CharMatrixScanners.dy(direction);
+            return true;
+        }
     }
 
     /**
-     * Renders an arrow starting at {@code (x1, y1)} and ending with a tip at {@code (x2, y2)}.
+     * For each pass, the cells where one of its detectors could possibly fire, as (x, y) pairs in column-major order.
+     * The lists are built by one scan over the matrix before the first pass. Because the detectors only ever
+     * <em>blank</em> cells, the lists remain supersets of the relevant cells; cells that have been blanked in the
+     * meantime are skipped.
      */
-    private void
-    arrow(int x1, int y1, int x2, int y2) {
-        
-        int x1px = x2px(x1);
-        int y1px = y2px(y1);
-        int x2px = x2px(x2);
-        int y2px = y2px(y2);
-        
-        if (x1 == x2) {
-            if (y2 > y1) {
-                
-                // Downward arrow.
-                x1px += cellWidth;
-                y1px -= cellHeight / 2;
-                x2px += cellWidth;
-                y2px += cellHeight / 2;
-            } else {
-                
-                // Upward arrow
-                x1px += cellWidth;
-                y1px += 3 * cellHeight / 2;
-                x2px += cellWidth;
-                y2px += cellHeight / 2;
-            }
+    private static final
+    class Candidates {
+
+        final int[][] cells;
+        final int[]   counts;
+
+        Candidates(int passCount) {
+            this.cells  = new int[passCount][64];
+            this.counts = new int[passCount];
         }
-        
-        if (y1 == y2) {
-            if (x2 > x1) {
-                
-                // Right arrow.
-                x1px += cellWidth;
-                y1px += cellHeight / 2;
-                x2px -= cellWidth;
-                y2px += cellHeight / 2;
-            } else {
-                
-                // Left arrow.
-                x1px += cellWidth;
-                y1px += cellHeight / 2;
-                x2px += cellWidth * 2;
-                y2px += cellHeight / 2;
+
+        /**
+         * @return The number of non-blank cells
+         */
+        int
+        scan(MutableCharMatrix cm, DetectorTable detectors) {
+
+            Arrays.fill(this.counts, 0);
+
+            int result = 0;
+            for (int x = 0, width = cm.width(); x < width; x++) {
+                for (int y = cm.nextNonBlankInColumn(x, 0); y != -1; y = cm.nextNonBlankInColumn(x, y + 1)) {
+                    int[][] byPass = detectors.get(cm.charAt(x, y));
+                    for (int pass = 0; pass < byPass.length; pass++) {
+                        if (byPass[pass].length != 0) this.add(pass, x, y);
+                    }
+                    result++;
+                }
             }
+            return result;
         }
-        pw.printf(
-            "<line x1=\"%d\" y1=\"%d\" x2=\"%d\" y2=\"%d\" style=\"stroke:rgb(220,220,220);stroke-width:4\" marker-end='url(#head)' />%n", // SUPPRESS CHECKSTYLE LineLength
-            x1px,
-            y1px,
-            x2px,
-            y2px
-        );
-    }
 
-    private int
-    x2px(int x) { return this.cellWidth * (this.currentXOffset + x); }
-    
-    private int
-    y2px(int y) { return this.cellHeight * (this.currentYOffset + y); }
-
-    private static int[]
-    corners(CharSequence cs, int x, Pattern nextCell) {
-        List<Integer> corners = new ArrayList<>();
-        corners.add(x);
-        final Matcher m = nextCell.matcher(cs).region(x + 1, cs.length());
-        while (m.lookingAt()) {
-            corners.add(m.end() - 1);
-            m.region(m.end(), cs.length());
+        private void
+        add(int pass, int x, int y) {
+
+            int[] cells = this.cells[pass];
+            int   n     = this.counts[pass];
+            if (n == cells.length) cells = (this.cells[pass] = Arrays.copyOf(cells, 2 * n));
+
+            cells[n]          = x;
+            cells[n + 1]      = y;
+            this.counts[pass] = n + 2;
         }
-        int[] result = new int[corners.size()];
-        for (int i = 0; i < result.length; i++) result[i] = corners.get(i);
-        return result;
     }
 
     private void
     convert(MutableCharMatrix cm) {
         
-        for (ArtifactDetector[] ads : new ArtifactDetector[][] {
-            { DOWN_ARROW, UP_ARROW, LEFT_ARROW, RIGHT_ARROW },
-            { DOCUMENT_SYMBOL, TABLE },
-            { NORMAL_TEXT },
-        }) {
-            for (int x = 0; x < cm.width(); x++) {
+        // Notice: Nested conversions (table cells, document symbol contents) use their own candidate lists.
+        Candidates candidates = this.scratch.candidates(this.depth++);
+        try {
+            this.cellsScanned += candidates.scan(cm, this.detectors);
+
+            for (int pass = 0; pass < this.detectors.passCount; pass++) {
+                int[] cells = candidates.cells[pass];
+                int   n     = candidates.counts[pass];
                 CELLS:
-                for (int y = 0; y < cm.height(); y++) {
-                    for (ArtifactDetector ad : ads) {
-                        if (ad.detect(cm, x, y, this)) continue CELLS;
+                for (int i = 0; i < n; i += 2) {
+                    int x = cells[i], y = cells[i + 1];
+
+                    // Blanked cells map to no detectors at all.
+                    for (int index : this.detectors.get(cm.charAt(x, y))[pass]) {
+                        boolean detected = this.detectors.detector(index).detect(cm, x, y, this);
+                        if (this.probes != null) this.countProbe(index, detected);
+                        if (detected) continue CELLS;
                     }
                 }
             }
+        } finally {
+            this.depth--;
         }
         System.currentTimeMillis(); // TODO TMP
     }
+
+    /**
+     * @param index The index of the probed detector in the {@link DetectorTable}
+     */
+    private void
+    countProbe(int index, boolean detected) {
+
+        long[] probes = this.probes, hits = this.hits;
+        assert probes != null && hits != null;
+
+        probes[index]++;
+        if (detected) hits[index]++;
+    }
+
+    /**
+     * Adds the counts since the last invocation to the {@link #setStatistics(ConversionStatistics) statistics} (if
+     * any).
+     */
+    private void
+    flushStatistics() {
+
+        ConversionStatistics statistics = this.statistics;
+        long[]               probes     = this.probes, hits = this.hits;
+        if (statistics == null || probes == null || hits == null) return;
+
+        statistics.detectorsProbed(this.detectors.names, probes, hits, this.cellsScanned);
+        Arrays.fill(probes, 0);
+        Arrays.fill(hits, 0);
+        this.cellsScanned = 0;
+    }
 }
@@ -0,0 +1,350 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.txt2html;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+import de.unkrig.commons.file.filetransformation.FileTransformer;
+import de.unkrig.commons.nullanalysis.Nullable;
+
+/**
+ * Remembers, for each transformed file, the hashes of its input and its output, so that the next run can skip the
+ * files that have not changed since.
+ * <p>
+ *   The manifest also records the converter version and the converter settings; when these differ on the next run,
+ *   all entries are discarded, and all files are transformed again.
+ * </p>
+ * <p>
+ *   Typical use:
+ * </p>
+ * <pre>
+ * ConversionManifest manifest = ConversionManifest.load(manifestFile, settings);
+ * FileTransformer ft = manifest.incremental(regularFileTransformer);
+ * ...
+ * manifest.save();
+ * </pre>
+ */
+public final
+class ConversionManifest {
+
+    /**
+     * Must be incremented whenever the SVG that the converter produces changes.
+     */
+    private static final int REVISION = 2;
+
+    /**
+     * Changes with the {@link #REVISION}, with the class files of the converter, and with the set of detectors that the
+     * converter uses by default (which includes those that are registered as services), and their class files.
+     */
+    private static final String CONVERTER_VERSION = ConversionManifest.converterVersion();
+
+    private static final String HEADER_PREFIX = "# txt2html manifest ";
+
+    private final File   file;
+    private final String header;
+
+    // Maps canonical file paths to entries, so that the manifest does not depend on the working directory.
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicInteger skipCount      = new AtomicInteger();
+    private final AtomicInteger transformCount = new AtomicInteger();
+
+    private static final
+    class Entry {
+
+        final String inputHash, outputHash;
+
+        Entry(String inputHash, String outputHash) {
+            this.inputHash  = inputHash;
+            this.outputHash = outputHash;
+        }
+    }
+
+    private
+    ConversionManifest(File file, String header) {
+        this.file   = file;
+        this.header = header;
+    }
+
+    /**
+     * Reads the manifest from the <var>file</var>. If the file does not exist, or was written by a different
+     * converter version, or with different <var>settings</var>, then the result is empty.
+     *
+     * @param settings All converter settings that affect the output, in any format
+     */
+    public static ConversionManifest
+    load(File file, String settings) throws IOException {
+
+        ConversionManifest result = new ConversionManifest(file, HEADER_PREFIX + CONVERTER_VERSION + " " + settings);
+
+        BufferedReader br;
+        try {
+            br = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+        } catch (FileNotFoundException fnfe) {
+            return result;
+        }
+        try {
+            if (!result.header.equals(br.readLine())) return result;
+
+            // Each line is "<input-hash> <output-hash> <path>".
+            for (String line = br.readLine(); line != null; line = br.readLine()) {
+                int sp1 = line.indexOf(' '), sp2 = line.indexOf(' ', sp1 + 1);
+                if (sp1 == -1 || sp2 == -1) throw new IOException(file + ": Invalid manifest line \"" + line + "\"");
+                result.entries.put(
+                    line.substring(sp2 + 1),
+                    new Entry(line.substring(0, sp1), line.substring(sp1 + 1, sp2))
+                );
+            }
+        } finally {
+            br.close();
+        }
+
+        return result;
+    }
+
+    /**
+     * Writes the manifest back to its file; entries for files that no longer exist are dropped.
+     */
+    public void
+    save() throws IOException {
+
+        File tmp = new File(this.file.getPath() + ".tmp");
+        try (Writer w = new OutputStreamWriter(Files.newOutputStream(tmp.toPath()), StandardCharsets.UTF_8)) {
+            w.write(this.header);
+            w.write('\n');
+            for (Map.Entry<String, Entry> e : new TreeMap<>(this.entries).entrySet()) {
+                String path = e.getKey();
+                if (!new File(path).exists()) continue;
+                w.write(e.getValue().inputHash);
+                w.write(' ');
+                w.write(e.getValue().outputHash);
+                w.write(' ');
+                w.write(path);
+                w.write('\n');
+            }
+        }
+        Files.move(tmp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return A {@link FileTransformer} that skips input files which have not changed since the last run, and whose
+     *         output file is still intact, and otherwise delegates to the <var>delegate</var> and records the hashes
+     *         of the input and the output
+     */
+    public FileTransformer
+    incremental(final FileTransformer delegate) {
+
+        return new FileTransformer() {
+
+            @Override public void
+            transform(String path, File in, File out, Mode mode) throws IOException {
+
+                ConversionManifest manifest = ConversionManifest.this;
+
+                String key       = in.getCanonicalPath();
+                String inputHash = ConversionManifest.hash(in);
+                Entry  entry     = manifest.entries.get(key);
+
+                // An in-place transformation is up to date iff the file is still what we wrote last time.
+                boolean inPlace = in.equals(out);
+                if (entry != null && (
+                    inPlace
+                    ? inputHash.equals(entry.outputHash)
+                    : inputHash.equals(entry.inputHash) && entry.outputHash.equals(ConversionManifest.hashIfExists(out))
+                )) {
+                    manifest.skipCount.incrementAndGet();
+                    return;
+                }
+
+                delegate.transform(path, in, out, mode);
+                manifest.transformCount.incrementAndGet();
+                if (mode == Mode.CHECK) return;
+
+                // Notice: Iff the transformation did not change anything, then the output file may not exist.
+                String outputHash = inPlace ? ConversionManifest.hash(in) : ConversionManifest.hashIfExists(out);
+                if (outputHash == null) {
+                    manifest.entries.remove(key);
+                } else {
+                    manifest.entries.put(key, new Entry(inputHash, outputHash));
+                }
+            }
+        };
+    }
+
+    /**
+     * @return The number of files that were skipped because they were up to date
+     */
+    public int
+    getSkipCount() { return this.skipCount.get(); }
+
+    /**
+     * @return The number of files that were passed to the delegate transformer
+     */
+    public int
+    getTransformCount() { return this.transformCount.get(); }
+
+    @Nullable private static String
+    hashIfExists(File file) throws IOException { return file.exists() ? ConversionManifest.hash(file) : null; }
+
+    private static String
+    hash(File file) throws IOException {
+
+        MessageDigest md = ConversionManifest.sha256();
+        try (InputStream is = new FileInputStream(file)) {
+            ConversionManifest.update(md, is);
+        }
+        return ConversionManifest.hex(md.digest());
+    }
+
+    private static void
+    update(MessageDigest md, InputStream is) throws IOException {
+        byte[] buffer = new byte[8192];
+        for (int n = is.read(buffer); n != -1; n = is.read(buffer)) md.update(buffer, 0, n);
+    }
+
+    private static String
+    converterVersion() {
+
+        MessageDigest md = ConversionManifest.sha256();
+
+        try {
+            ConversionManifest.hashClassFiles(ConversionManifest.class, md);
+
+            for (ArtifactDetector ad : CharMatrix2Svg.defaultDetectors()) {
+                md.update((
+                    "\n" + ad.getClass().getName() + " " + CharMatrix2Svg.detectorName(ad) + " " + ad.getPass()
+                ).getBytes(StandardCharsets.UTF_8));
+                ConversionManifest.hashClassFile(ad.getClass(), md);
+            }
+        } catch (IOException | RuntimeException e) {
+
+            // Without the class files, the version cannot be determined; make sure that no manifest ever matches.
+            md.update(UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        return REVISION + "-" + ConversionManifest.hex(md.digest()).substring(0, 16);
+    }
+
+    /**
+     * Hashes all class files of the directory or JAR file that <var>clasS</var> was loaded from, in the order of their
+     * names.
+     */
+    private static void
+    hashClassFiles(Class<?> clasS, MessageDigest md) throws IOException {
+
+        CodeSource cs = clasS.getProtectionDomain().getCodeSource();
+        if (cs == null) throw new IOException("No code source for " + clasS);
+
+        File location;
+        try {
+            location = new File(cs.getLocation().toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new IOException(cs.getLocation().toString(), e);
+        }
+
+        if (location.isDirectory()) {
+            Path root = location.toPath();
+            try (Stream<Path> paths = Files.walk(root)) {
+                for (Path p : (Iterable<Path>) paths.filter(p -> p.toString().endsWith(".class")).sorted()::iterator) {
+                    md.update(root.relativize(p).toString().getBytes(StandardCharsets.UTF_8));
+                    md.update(Files.readAllBytes(p));
+                }
+            }
+            return;
+        }
+
+        try (JarFile jf = new JarFile(location)) {
+            Map<String, JarEntry> classFiles = new TreeMap<>();
+            for (JarEntry je : Collections.list(jf.entries())) {
+                if (je.getName().endsWith(".class")) classFiles.put(je.getName(), je);
+            }
+            for (JarEntry je : classFiles.values()) {
+                md.update(je.getName().getBytes(StandardCharsets.UTF_8));
+                try (InputStream is = jf.getInputStream(je)) {
+                    ConversionManifest.update(md, is);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hashes the class file of <var>clasS</var>, e.g. of a detector that is registered as a service.
+     */
+    private static void
+    hashClassFile(Class<?> clasS, MessageDigest md) throws IOException {
+
+        String name = clasS.getName();
+        try (InputStream is = clasS.getResourceAsStream(name.substring(name.lastIndexOf('.') + 1) + ".class")) {
+            if (is == null) throw new IOException("No class file for " + clasS);
+            ConversionManifest.update(md, is);
+        }
+    }
+
+    private static MessageDigest
+    sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+
+            // Every Java platform supports SHA-256.
+            throw new AssertionError(nsae);
+        }
+    }
+
+    private static String
+    hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit(b >> 4 & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
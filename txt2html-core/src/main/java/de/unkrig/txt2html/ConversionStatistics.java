@@ -0,0 +1,412 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.txt2html;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts what the conversions do: The documents and their bytes, the diagrams, the cells, the probes and hits of each
+ * {@link ArtifactDetector}, the conversion times (as a histogram), and the slowest diagrams.
+ * <p>
+ *   Is thread-safe, and cheap enough to be shared by many concurrent conversions: The counters are {@link LongAdder}s,
+ *   and the converters count the detector probes in private arrays, which they add here once per diagram.
+ * </p>
+ * <p>
+ *   Notice that with {@link de.unkrig.commons.file.filetransformation.FileTransformer.Mode#CHECK_AND_TRANSFORM
+ *   CHECK_AND_TRANSFORM}, a document that changes is processed twice. The document and its diagrams are counted only
+ *   when a pass completes, and thus only once. The conversions, however, are counted as they happen; a conversion
+ *   that the aborted CHECK pass did is not repeated if there is an {@link SvgCache}, and otherwise counts twice.
+ * </p>
+ *
+ * @see Txt2SvgFilterWriter#transform(java.io.InputStream, java.io.OutputStream, java.nio.charset.Charset,
+ *      java.util.regex.Pattern, boolean, boolean, SvgCache, String, ConversionStatistics)
+ * @see CharMatrix2Svg#setStatistics(ConversionStatistics)
+ */
+public final
+class ConversionStatistics implements ConversionStatisticsMBean {
+
+    /**
+     * The name under which {@link #registerMBean()} registers the statistics.
+     */
+    public static final String OBJECT_NAME = "de.unkrig.txt2html:type=ConversionStatistics";
+
+    /**
+     * The default number of slowest diagrams that are remembered.
+     */
+    public static final int DEFAULT_SLOWEST_DIAGRAMS = 10;
+
+    private final LongAdder documents       = new LongAdder();
+    private final LongAdder bytesIn         = new LongAdder();
+    private final LongAdder bytesOut        = new LongAdder();
+    private final LongAdder diagrams        = new LongAdder();
+    private final LongAdder conversions     = new LongAdder();
+    private final LongAdder cells           = new LongAdder();
+    private final LongAdder cellsScanned    = new LongAdder();
+    private final LongAdder conversionNanos = new LongAdder();
+
+    private final LongAccumulator maxConversionNanos = new LongAccumulator(Math::max, 0);
+
+    // Bucket #i counts the conversions that took less than 2^i microseconds (but not less than 2^(i-1)).
+    private final LongAdder[] histogram = new LongAdder[64];
+
+    // Keyed by detector name; see "getProbeCount()".
+    private final Map<String, DetectorCounts> detectorCounts = new ConcurrentHashMap<>();
+
+    private final int                        slowestDiagramsLimit;
+    private final PriorityQueue<SlowDiagram> slowestDiagrams; // Fastest first; guarded by itself
+    private volatile long                    slowestDiagramsThreshold = -1;
+
+    public
+    ConversionStatistics() { this(DEFAULT_SLOWEST_DIAGRAMS); }
+
+    /**
+     * @param slowestDiagrams How many of the slowest diagrams to remember
+     */
+    public
+    ConversionStatistics(int slowestDiagrams) {
+        for (int i = 0; i < this.histogram.length; i++) this.histogram[i] = new LongAdder();
+        this.slowestDiagramsLimit = slowestDiagrams;
+        this.slowestDiagrams      = new PriorityQueue<>(
+            slowestDiagrams + 1,
+            Comparator.comparingLong(sd -> sd.nanos)
+        );
+    }
+
+    /**
+     * Registers this object with the platform MBean server under the {@link #OBJECT_NAME}, replacing the previously
+     * registered statistics (if any).
+     */
+    public ObjectName
+    registerMBean() throws JMException {
+
+        MBeanServer mbs        = ManagementFactory.getPlatformMBeanServer();
+        ObjectName  objectName = new ObjectName(OBJECT_NAME);
+
+        if (mbs.isRegistered(objectName)) mbs.unregisterMBean(objectName);
+        mbs.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    // ========================= COUNTING =========================
+
+    /**
+     * @param diagrams The number of ASCII art regions in the document
+     */
+    void
+    documentTransformed(long bytesIn, long bytesOut, long diagrams) {
+        this.documents.increment();
+        this.bytesIn.add(bytesIn);
+        this.bytesOut.add(bytesOut);
+        this.diagrams.add(diagrams);
+    }
+
+    /**
+     * @param path   The document that contains the diagram
+     * @param offset The position of the ASCII art region in the document (in bytes or chars), or -1 iff unknown
+     */
+    void
+    diagramConverted(String path, long offset, int width, int height, long nanos) {
+
+        this.conversions.increment();
+        this.cells.add((long) width * height);
+        this.conversionNanos.add(nanos);
+        this.maxConversionNanos.accumulate(nanos);
+        this.histogram[64 - Long.numberOfLeadingZeros(TimeUnit.NANOSECONDS.toMicros(nanos))].increment();
+
+        if (nanos <= this.slowestDiagramsThreshold || this.slowestDiagramsLimit == 0) return;
+        synchronized (this.slowestDiagrams) {
+            this.slowestDiagrams.add(new SlowDiagram(path, offset, width, height, nanos));
+            if (this.slowestDiagrams.size() > this.slowestDiagramsLimit) {
+                this.slowestDiagrams.poll();
+                this.slowestDiagramsThreshold = this.slowestDiagrams.peek().nanos;
+            }
+        }
+    }
+
+    /**
+     * @param detectorNames The names of the detectors, see {@link #getProbeCount(String)}
+     * @param probes        How often each of the detectors was invoked
+     * @param hits          How often each of the detectors detected an artifact
+     * @param cellsScanned  The number of non-blank cells that the converter examined
+     */
+    void
+    detectorsProbed(String[] detectorNames, long[] probes, long[] hits, long cellsScanned) {
+
+        this.cellsScanned.add(cellsScanned);
+
+        for (int i = 0; i < detectorNames.length; i++) {
+            if (probes[i] == 0) continue;
+
+            String         name   = detectorNames[i];
+            DetectorCounts counts = this.detectorCounts.get(name);
+            if (counts == null) counts = this.detectorCounts.computeIfAbsent(name, DetectorCounts::new);
+
+            counts.probes.add(probes[i]);
+            counts.hits.add(hits[i]);
+        }
+    }
+
+    // ========================= QUERYING =========================
+
+    @Override public long
+    getDocumentCount() { return this.documents.sum(); }
+
+    @Override public long
+    getBytesIn() { return this.bytesIn.sum(); }
+
+    @Override public long
+    getBytesOut() { return this.bytesOut.sum(); }
+
+    @Override public long
+    getDiagramCount() { return this.diagrams.sum(); }
+
+    @Override public long
+    getConversionCount() { return this.conversions.sum(); }
+
+    @Override public long
+    getCellCount() { return this.cells.sum(); }
+
+    @Override public long
+    getCellsScanned() { return this.cellsScanned.sum(); }
+
+    @Override public long
+    getConversionMicros() { return TimeUnit.NANOSECONDS.toMicros(this.conversionNanos.sum()); }
+
+    @Override public double
+    getMeanConversionMicros() {
+        long n = this.conversions.sum();
+        return n == 0 ? 0 : this.conversionNanos.sum() / 1000.0 / n;
+    }
+
+    @Override public long
+    getConversionMicrosP50() { return this.percentile(0.50); }
+
+    @Override public long
+    getConversionMicrosP90() { return this.percentile(0.90); }
+
+    @Override public long
+    getConversionMicrosP99() { return this.percentile(0.99); }
+
+    @Override public long
+    getMaxConversionMicros() { return TimeUnit.NANOSECONDS.toMicros(this.maxConversionNanos.get()); }
+
+    /**
+     * @param detector The {@link Object#toString()} of a {@link CharMatrix2Svg#builtInDetectors() built-in detector},
+     *                 e.g. {@code "DOWN_ARROW"}; for any other detector its class name, followed by its {@link
+     *                 Object#toString()} in parentheses iff that is overridden
+     * @return         How often the detector with the given name was invoked
+     */
+    public long
+    getProbeCount(String detector) {
+        DetectorCounts counts = this.detectorCounts.get(detector);
+        return counts == null ? 0 : counts.probes.sum();
+    }
+
+    /**
+     * @param detector See {@link #getProbeCount(String)}
+     * @return         How often the detector with the given name detected an artifact
+     */
+    public long
+    getHitCount(String detector) {
+        DetectorCounts counts = this.detectorCounts.get(detector);
+        return counts == null ? 0 : counts.hits.sum();
+    }
+
+    @Override public String[]
+    getDetectorStatistics() {
+
+        List<DetectorCounts> l = new ArrayList<>(this.detectorCounts.values());
+        l.sort(Comparator.comparingLong((DetectorCounts dc) -> dc.probes.sum()).reversed());
+
+        String[] result = new String[l.size()];
+        for (int i = 0; i < result.length; i++) result[i] = l.get(i).toString();
+        return result;
+    }
+
+    @Override public String[]
+    getSlowestDiagrams() {
+
+        SlowDiagram[] sds;
+        synchronized (this.slowestDiagrams) {
+            sds = this.slowestDiagrams.toArray(new SlowDiagram[this.slowestDiagrams.size()]);
+        }
+        Arrays.sort(sds, Comparator.comparingLong((SlowDiagram sd) -> sd.nanos).reversed());
+
+        String[] result = new String[sds.length];
+        for (int i = 0; i < result.length; i++) result[i] = sds[i].toString();
+        return result;
+    }
+
+    @Override public void
+    reset() {
+        this.documents.reset();
+        this.bytesIn.reset();
+        this.bytesOut.reset();
+        this.diagrams.reset();
+        this.conversions.reset();
+        this.cells.reset();
+        this.cellsScanned.reset();
+        this.conversionNanos.reset();
+        this.maxConversionNanos.reset();
+        for (LongAdder bucket : this.histogram) bucket.reset();
+        this.detectorCounts.clear();
+        synchronized (this.slowestDiagrams) {
+            this.slowestDiagrams.clear();
+            this.slowestDiagramsThreshold = -1;
+        }
+    }
+
+    /**
+     * @return A multi-line summary of all counters, e.g. for the {@code --stats} command line option
+     */
+    @Override public String
+    toString() {
+
+        long diagrams    = this.getDiagramCount();
+        long conversions = this.getConversionCount();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(
+            "Documents:   %,d (%,d bytes in, %,d bytes out)%n",
+            this.getDocumentCount(),
+            this.getBytesIn(),
+            this.getBytesOut()
+        ));
+        sb.append(String.format(
+            "Diagrams:    %,d (%,d converted, %,d from the cache)%n",
+            diagrams,
+            conversions,
+            Math.max(0, diagrams - conversions)
+        ));
+        sb.append(String.format(
+            "Cells:       %,d converted, %,d non-blank cells scanned%n",
+            this.getCellCount(),
+            this.getCellsScanned()
+        ));
+        sb.append(String.format(
+            "Conversions: %,d us total, %,.1f us mean, p50 <= %,d us, p90 <= %,d us, p99 <= %,d us, max %,d us%n",
+            this.getConversionMicros(),
+            this.getMeanConversionMicros(),
+            this.getConversionMicrosP50(),
+            this.getConversionMicrosP90(),
+            this.getConversionMicrosP99(),
+            this.getMaxConversionMicros()
+        ));
+
+        sb.append(String.format("Detectors:%n"));
+        for (String s : this.getDetectorStatistics()) sb.append("  ").append(s).append(String.format("%n"));
+
+        sb.append(String.format("Slowest diagrams:%n"));
+        for (String s : this.getSlowestDiagrams()) sb.append("  ").append(s).append(String.format("%n"));
+
+        return sb.toString();
+    }
+
+    /**
+     * @return The upper bound of the histogram bucket that contains the <var>p</var>-quantile of the conversion
+     *         times, in microseconds
+     */
+    private long
+    percentile(double p) {
+
+        long[] counts = new long[this.histogram.length];
+        long   total  = 0;
+        for (int i = 0; i < counts.length; i++) total += (counts[i] = this.histogram[i].sum());
+        if (total == 0) return 0;
+
+        long rank = (long) Math.ceil(p * total), cumulated = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if ((cumulated += counts[i]) < rank) continue;
+            return i == 0 ? 0 : Math.min((1L << i) - 1, this.getMaxConversionMicros());
+        }
+        return this.getMaxConversionMicros();
+    }
+
+    private static final
+    class DetectorCounts {
+
+        final String    name;
+        final LongAdder probes = new LongAdder();
+        final LongAdder hits   = new LongAdder();
+
+        DetectorCounts(String name) { this.name = name; }
+
+        @Override public String
+        toString() {
+            long probes = this.probes.sum(), hits = this.hits.sum();
+            return String.format(
+                "%-20s %,14d probes %,12d hits (%.1f%%)",
+                this.name,
+                probes,
+                hits,
+                probes == 0 ? 0.0 : 100.0 * hits / probes
+            );
+        }
+    }
+
+    private static final
+    class SlowDiagram {
+
+        final String path;
+        final long   offset;
+        final int    width, height;
+        final long   nanos;
+
+        SlowDiagram(String path, long offset, int width, int height, long nanos) {
+            this.path   = path;
+            this.offset = offset;
+            this.width  = width;
+            this.height = height;
+            this.nanos  = nanos;
+        }
+
+        @Override public String
+        toString() {
+            return String.format(
+                "%,10d us  %s%s (%dx%d)",
+                TimeUnit.NANOSECONDS.toMicros(this.nanos),
+                this.path,
+                this.offset == -1 ? "" : " @ " + this.offset,
+                this.width,
+                this.height
+            );
+        }
+    }
+}
@@ -0,0 +1,113 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.txt2html;
+
+/**
+ * The JMX management interface of {@link ConversionStatistics}.
+ */
+public
+interface ConversionStatisticsMBean {
+
+    /**
+     * @return The number of HTML documents that were transformed completely
+     */
+    long getDocumentCount();
+
+    /**
+     * @return The number of bytes read from the transformed documents
+     */
+    long getBytesIn();
+
+    /**
+     * @return The number of bytes written for the transformed documents
+     */
+    long getBytesOut();
+
+    /**
+     * @return The number of ASCII art regions that were replaced, including those that were found in the cache
+     */
+    long getDiagramCount();
+
+    /**
+     * @return The number of ASCII art regions that were actually converted, i.e. not found in the cache
+     */
+    long getConversionCount();
+
+    /**
+     * @return The number of cells (width times height) of the converted diagrams
+     */
+    long getCellCount();
+
+    /**
+     * @return The number of non-blank cells that the converters examined, including those of nested tables
+     */
+    long getCellsScanned();
+
+    /**
+     * @return The total time spent converting diagrams, in microseconds
+     */
+    long getConversionMicros();
+
+    /**
+     * @return The mean time to convert one diagram, in microseconds
+     */
+    double getMeanConversionMicros();
+
+    /**
+     * @return An upper bound for the median conversion time, in microseconds (within a factor of two)
+     */
+    long getConversionMicrosP50();
+
+    /**
+     * @return An upper bound for the 90th percentile of the conversion times, in microseconds
+     */
+    long getConversionMicrosP90();
+
+    /**
+     * @return An upper bound for the 99th percentile of the conversion times, in microseconds
+     */
+    long getConversionMicrosP99();
+
+    /**
+     * @return The longest conversion time, in microseconds
+     */
+    long getMaxConversionMicros();
+
+    /**
+     * @return One line per artifact detector, with its probes and hits, the most frequently probed detector first
+     */
+    String[] getDetectorStatistics();
+
+    /**
+     * @return The slowest diagrams so far, with their conversion times, documents and offsets, the slowest first
+     */
+    String[] getSlowestDiagrams();
+
+    /**
+     * Sets all counters to zero.
+     */
+    void reset();
+}
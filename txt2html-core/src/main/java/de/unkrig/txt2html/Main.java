@@ -25,12 +25,14 @@
 
 package de.unkrig.txt2html;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import javax.management.JMException;
 
 import de.unkrig.commons.file.ExceptionHandler;
 import de.unkrig.commons.file.contentstransformation.ContentsTransformer;
@@ -39,14 +41,20 @@ import de.unkrig.commons.file.filetransformation.FileTransformations.ArchiveComb
 import de.unkrig.commons.file.filetransformation.FileTransformations.DirectoryCombiner;
 import de.unkrig.commons.file.filetransformation.FileTransformer;
 import de.unkrig.commons.file.filetransformation.FileTransformer.Mode;
-import de.unkrig.commons.io.IoUtil;
 import de.unkrig.commons.lang.protocol.PredicateUtil;
+import de.unkrig.commons.nullanalysis.Nullable;
 import de.unkrig.commons.text.pattern.Glob;
 
 public
 class Main {
     
     private Main() {}
+
+    private static final String
+    USAGE = (
+        "Usage: java de.unkrig.txt2html.Main [ --shared-styles ] [ --compact ] [ --manifest <file> ] [ --threads <n> ] "
+        + "[ --virtual-threads ] [ --stats ] <input-dir-file-or-archive> [ [ ... ] <output-dir-file-or-archive> ]"
+    );
     
     public static void
     main(String[] args) throws IOException {
@@ -55,18 +63,66 @@ class Main {
         boolean                       saveSpace           = true;
         Charset                       charset             = Charset.forName("UTF-8");
         ExceptionHandler<IOException> exceptionHandler    = ExceptionHandler.defaultHandler();
+        boolean                       sharedStyles        = false;
+        boolean                       compact             = false;
+        File                          manifestFile        = null;
+        int                           threadCount         = 1;
+        boolean                       virtualThreads      = false;
+        ConversionStatistics          statistics          = null;
+
+        // Process the command line options.
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i++) {
+            String arg = args[i];
+            if ("--".equals(arg)) {
+                i++;
+                break;
+            } else
+            if ("--shared-styles".equals(arg)) {
+                sharedStyles = true;
+            } else
+            if ("--compact".equals(arg)) {
+                compact = true;
+            } else
+            if ("--manifest".equals(arg)) {
+                manifestFile = new File(Main.optionArgument(args, ++i, arg));
+            } else
+            if ("--threads".equals(arg)) {
+                String s = Main.optionArgument(args, ++i, arg);
+                try {
+                    threadCount = Integer.parseInt(s);
+                } catch (NumberFormatException nfe) {
+                    threadCount = -1;
+                }
+                if (threadCount < 0) Main.usageError("Invalid thread count \"" + s + "\"");
+                if (threadCount == 0) threadCount = Runtime.getRuntime().availableProcessors();
+            } else
+            if ("--virtual-threads".equals(arg)) {
+                if (!ParallelFileTransformations.virtualThreadsAvailable()) {
+                    Main.usageError("Command line option \"" + arg + "\" requires Java 21 or later");
+                }
+                virtualThreads = true;
+            } else
+            if ("--stats".equals(arg)) {
+                statistics = new ConversionStatistics();
+            } else
+            {
+                Main.usageError("Invalid command line option \"" + arg + "\"");
+            }
+        }
+        args = Arrays.copyOfRange(args, i, args.length);
 
         // Create a ContentsTransformer that does the ASCII-art-to-SVG transformation.
-        ContentsTransformer ct = new ContentsTransformer() {
-            
-            @Override public void
-            transform(String path, InputStream is, OutputStream os) throws IOException {
-                IoUtil.copy(
-                    new InputStreamReader(is, charset),                           // reader
-                    Txt2SvgFilterWriter.make(new OutputStreamWriter(os, charset)) // writer
-                );
+        ContentsTransformer ct = Main.contentsTransformer(charset, sharedStyles, compact, statistics);
+
+        // Let JMX clients (e.g. JConsole) watch the statistics while the transformation is in progress.
+        if (statistics != null) {
+            try {
+                statistics.registerMBean();
+            } catch (JMException jme) {
+                System.err.println("Registering the statistics MBean failed: " + jme);
             }
-        };
+        }
 
         // Recurse through archives and compressed files.
         FileTransformer ft = FileTransformations.recursiveCompressedAndArchiveFileTransformer(
@@ -79,18 +135,93 @@ class Main {
             exceptionHandler        // exceptionHandler
         );
 
+        // Skip files that have not changed since the last run.
+        ConversionManifest manifest = null;
+        if (manifestFile != null) {
+            manifest = ConversionManifest.load(
+                manifestFile,
+                "charset=" + charset + ",sharedStyles=" + sharedStyles + ",compact=" + compact
+            );
+            ft = manifest.incremental(ft);
+        }
+
         // Recurse through directory trees.
-        ft = FileTransformations.directoryTreeTransformer(
-            null,                  // directoryMemberNameComparator
-            PredicateUtil.never(), // directoryMemberRemoval
-            Glob.ANY,              // directoryMemberRenaming
-            DirectoryCombiner.NOP, // directoryCombiner
-            ft,                    // regularFileTransformer
-            saveSpace,             // saveSpace
-            keepOriginals,         // keepOriginals
-            exceptionHandler       // exceptionHandler
-        );
+        if (threadCount > 1 || virtualThreads) {
+            ft = ParallelFileTransformations.directoryTreeTransformer(
+                ft,                                                      // regularFileTransformer
+                saveSpace,                                               // saveSpace
+                keepOriginals,                                           // keepOriginals
+                threadCount,                                             // threadCount
+                virtualThreads,                                          // virtualThreads
+                ParallelFileTransformations.DEFAULT_MAX_BYTES_IN_FLIGHT, // maxBytesInFlight
+                exceptionHandler                                         // exceptionHandler
+            );
+        } else {
+            ft = FileTransformations.directoryTreeTransformer(
+                null,                  // directoryMemberNameComparator
+                PredicateUtil.never(), // directoryMemberRemoval
+                Glob.ANY,              // directoryMemberRenaming
+                DirectoryCombiner.NOP, // directoryCombiner
+                ft,                    // regularFileTransformer
+                saveSpace,             // saveSpace
+                keepOriginals,         // keepOriginals
+                exceptionHandler       // exceptionHandler
+            );
+        }
 
         FileTransformations.transform(args, ft, fileTransformerMode, exceptionHandler);
+
+        if (manifest != null) manifest.save();
+
+        if (statistics != null) System.out.print(statistics);
+    }
+
+    /**
+     * @return The argument of the command line <var>option</var>, which is {@code args[i]}
+     */
+    private static String
+    optionArgument(String[] args, int i, String option) {
+        if (i >= args.length) Main.usageError("Command line option \"" + option + "\" requires an argument");
+        return args[i];
+    }
+
+    /**
+     * Prints the <var>message</var> and the usage, and terminates the JVM.
+     */
+    private static void
+    usageError(String message) {
+        System.err.println(message);
+        System.err.println(Main.USAGE);
+        System.exit(1);
+    }
+
+    private static ContentsTransformer
+    contentsTransformer(
+        Charset                        charset,
+        boolean                        sharedStyles,
+        boolean                        compact,
+        @Nullable ConversionStatistics statistics
+    ) {
+
+        return new ContentsTransformer() {
+            
+            // Javadoc trees repeat the same diagrams on many pages.
+            final SvgCache cache = new SvgCache(SvgCache.DEFAULT_MAX_BYTES);
+
+            @Override public void
+            transform(String path, InputStream is, OutputStream os) throws IOException {
+                Txt2SvgFilterWriter.transform(
+                    is,                                    // is
+                    os,                                    // os
+                    charset,                               // charset
+                    Txt2SvgFilterWriter.PATTERN_ASCII_ART, // asciiArtPattern
+                    sharedStyles,                          // sharedStyles
+                    compact,                               // compact
+                    this.cache,                            // cache
+                    path,                                  // path
+                    statistics                             // statistics
+                );
+            }
+        };
     }
 }
@@ -0,0 +1,289 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.txt2html;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.unkrig.commons.file.ExceptionHandler;
+import de.unkrig.commons.file.FileUtil;
+import de.unkrig.commons.file.filetransformation.FileTransformations;
+import de.unkrig.commons.file.filetransformation.FileTransformer;
+
+/**
+ * A multi-threaded alternative to {@link FileTransformations}{@code .directoryTreeTransformer()}.
+ */
+public final
+class ParallelFileTransformations {
+
+    private ParallelFileTransformations() {}
+
+    /**
+     * A reasonable default for the {@code maxBytesInFlight} argument of {@link #directoryTreeTransformer(
+     * FileTransformer, boolean, boolean, int, boolean, long, ExceptionHandler)}.
+     */
+    public static final long DEFAULT_MAX_BYTES_IN_FLIGHT = 64L << 20;
+
+    /**
+     * @return A {@link FileTransformer} that transforms all regular files under a directory with the
+     *         <var>regularFileTransformer</var>, on several threads, the largest files first; transforms a regular
+     *         file directly with the <var>regularFileTransformer</var>
+     * @param regularFileTransformer Must be thread-safe
+     * @param saveSpace              Whether to transform the files of a directory in place, one by one; otherwise a
+     *                               directory is transformed into a new directory, which then replaces the original
+     *                               (like {@link FileTransformations}{@code .directoryTreeTransformer()} does)
+     * @param keepOriginals          Whether to keep the original directory (as {@link
+     *                               FileTransformations#origFile(File)}) when it is replaced
+     * @param threadCount            The number of worker threads; ignored if <var>virtualThreads</var> is set
+     * @param virtualThreads         Whether to transform each file on its own virtual thread; requires Java 21 or
+     *                               later at runtime
+     * @param maxBytesInFlight       Limits the total size of the files being transformed at any time; a file that is
+     *                               bigger than this is transformed alone
+     * @param exceptionHandler       Called (from one thread at a time) for each file whose transformation fails;
+     *                               if it throws, then no more files are started, and the exception is rethrown
+     *                               after the running transformations have completed
+     */
+    public static FileTransformer
+    directoryTreeTransformer(
+        final FileTransformer               regularFileTransformer,
+        final boolean                       saveSpace,
+        final boolean                       keepOriginals,
+        final int                           threadCount,
+        final boolean                       virtualThreads,
+        final long                          maxBytesInFlight,
+        final ExceptionHandler<IOException> exceptionHandler
+    ) {
+
+        // Fail before any output is created.
+        if (virtualThreads && !ParallelFileTransformations.virtualThreadsAvailable()) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+        }
+
+        return new FileTransformer() {
+
+            @Override public void
+            transform(String path, File in, File out, Mode mode) throws IOException {
+
+                if (!in.isDirectory()) {
+                    regularFileTransformer.transform(path, in, out, mode);
+                    return;
+                }
+
+                if (saveSpace || !in.equals(out) || mode == Mode.CHECK) {
+                    this.transformMembers(path, in, out, mode);
+                    return;
+                }
+
+                // Transform the directory into a new directory, and then replace the original with it.
+                File newDir = FileTransformations.newFile(in);
+                if (newDir.exists()) FileUtil.deleteRecursively(newDir);
+                try {
+                    this.transformMembers(path, in, newDir, mode);
+                } catch (IOException | RuntimeException e) {
+                    try { FileUtil.deleteRecursively(newDir); } catch (IOException ioe) {}
+                    throw e;
+                }
+
+                if (keepOriginals) {
+                    File origDir = FileTransformations.origFile(in);
+                    if (origDir.exists()) FileUtil.deleteRecursively(origDir);
+                    FileUtil.rename(in, origDir);
+                } else {
+                    FileUtil.deleteRecursively(in);
+                }
+                FileUtil.rename(newDir, in);
+            }
+
+            private void
+            transformMembers(String path, File in, File out, Mode mode) throws IOException {
+
+                List<Member> members = new ArrayList<>();
+                ParallelFileTransformations.collect(path, in, out, mode, members, exceptionHandler);
+
+                // Schedule the largest files first, so that no big file is left over for the end.
+                members.sort((m1, m2) -> Long.compare(m2.size, m1.size));
+
+                ParallelFileTransformations.transform(
+                    members,                                                                 // members
+                    mode,                                                                    // mode
+                    regularFileTransformer,                                                  // regularFileTransformer
+                    ParallelFileTransformations.executorService(threadCount, virtualThreads), // executorService
+                    maxBytesInFlight,                                                        // maxBytesInFlight
+                    exceptionHandler                                                         // exceptionHandler
+                );
+            }
+        };
+    }
+
+    private static final
+    class Member {
+
+        final String path;
+        final File   in, out;
+        final long   size;
+
+        Member(String path, File in, File out) {
+            this.path = path;
+            this.in   = in;
+            this.out  = out;
+            this.size = in.length();
+        }
+    }
+
+    /**
+     * Adds all regular files under <var>dir</var> to the <var>result</var>, and, unless <var>mode</var> is {@link
+     * FileTransformer.Mode#CHECK CHECK}, creates the output directories.
+     */
+    private static void
+    collect(
+        String                        path,
+        File                          dir,
+        File                          outDir,
+        FileTransformer.Mode          mode,
+        List<Member>                  result,
+        ExceptionHandler<IOException> exceptionHandler
+    ) throws IOException {
+
+        if (mode != FileTransformer.Mode.CHECK && !outDir.isDirectory() && !outDir.mkdirs()) {
+            exceptionHandler.handle(path, new IOException("Cannot create directory \"" + outDir + "\""));
+            return;
+        }
+
+        String[] names = dir.list();
+        if (names == null) {
+            exceptionHandler.handle(path, new IOException("Cannot list directory \"" + dir + "\""));
+            return;
+        }
+
+        for (String name : names) {
+            String memberPath = path + File.separatorChar + name;
+            File   in         = new File(dir, name);
+            File   out        = new File(outDir, name);
+            if (in.isDirectory()) {
+                ParallelFileTransformations.collect(memberPath, in, out, mode, result, exceptionHandler);
+            } else {
+                result.add(new Member(memberPath, in, out));
+            }
+        }
+    }
+
+    private static void
+    transform(
+        List<Member>                  members,
+        FileTransformer.Mode          mode,
+        FileTransformer               regularFileTransformer,
+        ExecutorService               executorService,
+        long                          maxBytesInFlight,
+        ExceptionHandler<IOException> exceptionHandler
+    ) throws IOException {
+
+        // One permit per KiB.
+        final int       maxPermits = (int) Math.min(Math.max(1, maxBytesInFlight >> 10), Integer.MAX_VALUE);
+        final Semaphore inFlight   = new Semaphore(maxPermits);
+
+        // The first exception that the exception handler threw, or any other throwable.
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        try {
+            for (final Member m : members) {
+                if (failure.get() != null) break;
+
+                final int permits = (int) Math.min(Math.max(1, m.size >> 10), maxPermits);
+                inFlight.acquire(permits);
+
+                executorService.execute(() -> {
+                    try {
+                        try {
+                            regularFileTransformer.transform(m.path, m.in, m.out, mode);
+                        } catch (IOException ioe) {
+                            synchronized (exceptionHandler) { exceptionHandler.handle(m.path, ioe); }
+                        } catch (RuntimeException re) {
+                            if (re == FileTransformer.NOT_IDENTICAL) throw re;
+                            synchronized (exceptionHandler) { exceptionHandler.handle(m.path, re); }
+                        }
+                    } catch (Throwable t) { // SUPPRESS CHECKSTYLE IllegalCatch
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        inFlight.release(permits);
+                    }
+                });
+            }
+        } catch (InterruptedException ie) {
+            failure.compareAndSet(null, new InterruptedIOException());
+        } finally {
+            executorService.shutdown();
+            try {
+                while (!executorService.awaitTermination(1, TimeUnit.MINUTES));
+            } catch (InterruptedException ie) {
+                failure.compareAndSet(null, new InterruptedIOException());
+            }
+        }
+
+        Throwable t = failure.get();
+        if (t == null) return;
+        if (t instanceof IOException)     throw (IOException) t;
+        if (t instanceof RuntimeException) throw (RuntimeException) t;
+        if (t instanceof Error)            throw (Error) t;
+        throw new AssertionError(t);
+    }
+
+    /**
+     * @return Whether the running JVM supports virtual threads (Java 21 and later)
+     */
+    public static boolean
+    virtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException nsme) {
+            return false;
+        }
+    }
+
+    private static ExecutorService
+    executorService(int threadCount, boolean virtualThreads) {
+
+        if (!virtualThreads) return Executors.newFixedThreadPool(threadCount);
+
+        // Notice: This code compiles for Java 8, so the Java 21 method must be invoked reflectively.
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException nsme) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later", nsme);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
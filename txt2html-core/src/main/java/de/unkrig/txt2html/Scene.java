@@ -0,0 +1,305 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.txt2html;
+
+import java.util.Arrays;
+
+/**
+ * The artifacts that the {@link ArtifactDetector}s found in a diagram, in grid (character cell) coordinates, and in
+ * the order in which they were found. Decouples the detection from the rendering, e.g. by a {@link
+ * CharMatrix2Svg#render(Scene)}.
+ * <p>
+ *   All data is kept in a few primitive arrays: One {@code byte} per element for its {@link Kind}, an {@code int}
+ *   array with the coordinates of all elements, and a {@code char} array with the characters of all texts.
+ * </p>
+ */
+public final
+class Scene {
+
+    /**
+     * The kinds of the elements of a scene.
+     */
+    public
+    enum Kind {
+
+        /**
+         * A run of text; one point (where the text starts) plus the {@link #getText(int) text}.
+         */
+        TEXT,
+
+        /**
+         * A black polyline, e.g. the edges of a table cell; two or more points.
+         */
+        POLYLINE,
+
+        /**
+         * One segment of an arrow; two points.
+         */
+        LINE,
+
+        /**
+         * The last segment of an arrow, ending with the arrow head; two points.
+         */
+        ARROW,
+    }
+    private static final Kind[] KINDS = Kind.values();
+
+    private int width, height;
+
+    // One entry per element.
+    private byte[] kinds  = new byte[16];
+    private int[]  starts = new int[16]; // Index into "ints" where the element's data starts.
+    private int    size;
+
+    // TEXT: x, y, offset into "chars", length. All others: point count, x1, y1, x2, y2, ...
+    private int[] ints = new int[64];
+    private int   intCount;
+
+    private char[] chars = new char[256];
+    private int    charCount;
+
+    /**
+     * @param width  The width of the diagram, in cells
+     * @param height The height of the diagram, in cells
+     */
+    public
+    Scene(int width, int height) {
+        this.width  = width;
+        this.height = height;
+    }
+
+    /**
+     * Removes all elements, and re-sizes this scene, so that it can be re-used.
+     */
+    public void
+    reset(int width, int height) {
+        this.width     = width;
+        this.height    = height;
+        this.size      = 0;
+        this.intCount  = 0;
+        this.charCount = 0;
+    }
+
+    public int
+    getWidth() { return this.width; }
+
+    public int
+    getHeight() { return this.height; }
+
+    /**
+     * @return The number of elements of this scene
+     */
+    public int
+    size() { return this.size; }
+
+    public Kind
+    getKind(int index) { return KINDS[this.kinds[this.checkIndex(index)]]; }
+
+    /**
+     * @return The number of points of the element with the given <var>index</var>; 1 for {@link Kind#TEXT}
+     */
+    public int
+    getPointCount(int index) {
+        return this.kinds[this.checkIndex(index)] == Kind.TEXT.ordinal() ? 1 : this.ints[this.starts[index]];
+    }
+
+    /**
+     * @return The x coordinate of the <var>point</var>th point of the element with the given <var>index</var>
+     */
+    public int
+    getX(int index, int point) { return this.ints[this.pointOffset(index, point)]; }
+
+    /**
+     * @return The y coordinate of the <var>point</var>th point of the element with the given <var>index</var>
+     */
+    public int
+    getY(int index, int point) { return this.ints[this.pointOffset(index, point) + 1]; }
+
+    /**
+     * @return The text of the {@link Kind#TEXT} element with the given <var>index</var>
+     */
+    public String
+    getText(int index) {
+        if (this.kinds[this.checkIndex(index)] != Kind.TEXT.ordinal()) {
+            throw new IllegalArgumentException("Element #" + index + " is not a text");
+        }
+        int start = this.starts[index];
+        return new String(this.chars, this.ints[start + 2], this.ints[start + 3]);
+    }
+
+    /**
+     * Adds a {@link Kind#TEXT} element, starting at {@code (x, y)}.
+     */
+    public void
+    addText(int x, int y, CharSequence text) {
+        int length = text.length();
+        this.addText(x, y, length);
+        for (int i = 0; i < length; i++) this.chars[this.charCount++] = text.charAt(i);
+    }
+
+    /**
+     * Adds a {@link Kind#TEXT} element, starting at {@code (x, y)}, with the text {@code ca[offset ... offset+length-1]}.
+     */
+    public void
+    addText(int x, int y, char[] ca, int offset, int length) {
+        this.addText(x, y, length);
+        System.arraycopy(ca, offset, this.chars, this.charCount, length);
+        this.charCount += length;
+    }
+
+    private void
+    addText(int x, int y, int length) {
+        this.addElement(Kind.TEXT, 4);
+        this.ints[this.intCount++] = x;
+        this.ints[this.intCount++] = y;
+        this.ints[this.intCount++] = this.charCount;
+        this.ints[this.intCount++] = length;
+
+        if (this.charCount + length > this.chars.length) {
+            this.chars = Arrays.copyOf(this.chars, Math.max(2 * this.chars.length, this.charCount + length));
+        }
+    }
+
+    /**
+     * Adds a {@link Kind#POLYLINE} through {@code (xy[0], xy[1])}, {@code (xy[2], xy[3])}, ...
+     */
+    public void
+    addPolyline(int... xy) { this.addPolyline(0, 0, xy); }
+
+    /**
+     * Adds a {@link Kind#POLYLINE} through {@code (xy[0], xy[1])}, {@code (xy[2], xy[3])}, ..., translated by
+     * {@code (dx, dy)}.
+     */
+    void
+    addPolyline(int dx, int dy, int[] xy) {
+        if (xy.length < 4 || xy.length % 2 != 0) throw new IllegalArgumentException(Arrays.toString(xy));
+
+        this.addElement(Kind.POLYLINE, 1 + xy.length);
+        this.ints[this.intCount++] = xy.length / 2;
+        for (int i = 0; i < xy.length;) {
+            this.ints[this.intCount++] = xy[i++] + dx;
+            this.ints[this.intCount++] = xy[i++] + dy;
+        }
+    }
+
+    /**
+     * Adds a {@link Kind#LINE} from {@code (x1, y1)} to {@code (x2, y2)}.
+     */
+    public void
+    addLine(int x1, int y1, int x2, int y2) { this.addSegment(Kind.LINE, x1, y1, x2, y2); }
+
+    /**
+     * Adds an {@link Kind#ARROW} from {@code (x1, y1)} to its tip at {@code (x2, y2)}.
+     */
+    public void
+    addArrow(int x1, int y1, int x2, int y2) { this.addSegment(Kind.ARROW, x1, y1, x2, y2); }
+
+    private void
+    addSegment(Kind kind, int x1, int y1, int x2, int y2) {
+        this.addElement(kind, 5);
+        this.ints[this.intCount++] = 2;
+        this.ints[this.intCount++] = x1;
+        this.ints[this.intCount++] = y1;
+        this.ints[this.intCount++] = x2;
+        this.ints[this.intCount++] = y2;
+    }
+
+    /**
+     * Adds all elements of <var>that</var> scene to this scene, translated by {@code (dx, dy)}.
+     */
+    public void
+    addAll(Scene that, int dx, int dy) {
+        for (int i = 0; i < that.size; i++) {
+            int start = that.starts[i];
+            if (that.kinds[i] == Kind.TEXT.ordinal()) {
+                this.addText(
+                    that.ints[start] + dx,
+                    that.ints[start + 1] + dy,
+                    that.chars,
+                    that.ints[start + 2],
+                    that.ints[start + 3]
+                );
+            } else {
+                int n = that.ints[start];
+                this.addElement(KINDS[that.kinds[i]], 1 + 2 * n);
+                this.ints[this.intCount++] = n;
+                for (int j = 0; j < n; j++) {
+                    this.ints[this.intCount++] = that.ints[start + 1 + 2 * j] + dx;
+                    this.ints[this.intCount++] = that.ints[start + 2 + 2 * j] + dy;
+                }
+            }
+        }
+    }
+
+    // ---------------- Fast access for the renderers in this package. ----------------
+
+    int
+    kindOrdinal(int index) { return this.kinds[index]; }
+
+    /**
+     * @return The index into {@link #ints()} where the data of the element with the given <var>index</var> starts:
+     *         For {@link Kind#TEXT}: x, y, offset into {@link #chars()}, length. For all others: point count, x1, y1,
+     *         x2, y2, ...
+     */
+    int
+    start(int index) { return this.starts[index]; }
+
+    int[]
+    ints() { return this.ints; }
+
+    char[]
+    chars() { return this.chars; }
+
+    private void
+    addElement(Kind kind, int intCount) {
+        if (this.size == this.kinds.length) {
+            this.kinds  = Arrays.copyOf(this.kinds,  2 * this.size);
+            this.starts = Arrays.copyOf(this.starts, 2 * this.size);
+        }
+        if (this.intCount + intCount > this.ints.length) {
+            this.ints = Arrays.copyOf(this.ints, Math.max(2 * this.ints.length, this.intCount + intCount));
+        }
+        this.kinds[this.size]  = (byte) kind.ordinal();
+        this.starts[this.size] = this.intCount;
+        this.size++;
+    }
+
+    private int
+    checkIndex(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("index=" + index + ", size=" + this.size);
+        }
+        return index;
+    }
+
+    private int
+    pointOffset(int index, int point) {
+        if (point < 0 || point >= this.getPointCount(index)) {
+            throw new IndexOutOfBoundsException("point=" + point + ", pointCount=" + this.getPointCount(index));
+        }
+        return this.kinds[index] == Kind.TEXT.ordinal() ? this.starts[index] : this.starts[index] + 1 + 2 * point;
+    }
+}
@@ -0,0 +1,180 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.txt2html;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+import de.unkrig.commons.nullanalysis.Nullable;
+
+/**
+ * A thread-safe, least-recently-used cache of converted diagrams, bounded by the (approximate) number of bytes of
+ * memory that its keys and values occupy.
+ * <p>
+ *   The keys are the diagram sources, so a lookup costs one (cached) {@link String#hashCode()} plus one {@link
+ *   String#equals(Object)}, and hash collisions cannot yield wrong SVG. Conversion happens outside the cache's lock;
+ *   two threads that miss the same key at the same time both convert it.
+ * </p>
+ */
+public final
+class SvgCache {
+
+    /**
+     * A reasonable default for the {@code maxBytes} argument of {@link #SvgCache(long)}.
+     */
+    public static final long DEFAULT_MAX_BYTES = 32L << 20;
+
+    // Roughly the memory that two strings and a map entry occupy, besides the chars.
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final long                          maxBytes;
+    private final LinkedHashMap<String, String> map = new LinkedHashMap<>(16, .75f, true);
+
+    // All guarded by "this".
+    private long bytes, hitCount, missCount, evictionCount;
+
+    /**
+     * @param maxBytes The cache evicts the least recently used entries whenever its keys and values occupy more
+     *                 memory than this; entries that are bigger than this are never cached
+     */
+    public
+    SvgCache(long maxBytes) { this.maxBytes = maxBytes; }
+
+    /**
+     * @return The value cached for the <var>key</var>, or, iff there is none, the result of applying the
+     *         <var>converter</var> to the <var>key</var>, which is then cached
+     */
+    public String
+    get(String key, UnaryOperator<String> converter) {
+
+        String result = this.get(key);
+        if (result != null) return result;
+
+        result = converter.apply(key);
+        this.put(key, result);
+        return result;
+    }
+
+    /**
+     * @return The value cached for the <var>key</var>, or {@code null}
+     */
+    @Nullable public synchronized String
+    get(String key) {
+        String result = this.map.get(key);
+        if (result == null) {
+            this.missCount++;
+        } else {
+            this.hitCount++;
+        }
+        return result;
+    }
+
+    /**
+     * Caches the <var>value</var> for the <var>key</var>, and evicts as many least recently used entries as necessary.
+     */
+    public synchronized void
+    put(String key, String value) {
+
+        long size = SvgCache.sizeOf(key, value);
+        if (size > this.maxBytes) return;
+
+        String previous = this.map.put(key, value);
+        if (previous != null) this.bytes -= SvgCache.sizeOf(key, previous);
+        this.bytes += size;
+
+        for (Iterator<Map.Entry<String, String>> it = this.map.entrySet().iterator(); this.bytes > this.maxBytes;) {
+            Map.Entry<String, String> e = it.next();
+            this.bytes -= SvgCache.sizeOf(e.getKey(), e.getValue());
+            it.remove();
+            this.evictionCount++;
+        }
+    }
+
+    /**
+     * Removes all entries, but leaves the statistics as they are.
+     */
+    public synchronized void
+    clear() {
+        this.map.clear();
+        this.bytes = 0;
+    }
+
+    /**
+     * @return The number of entries currently cached
+     */
+    public synchronized int
+    size() { return this.map.size(); }
+
+    /**
+     * @return The approximate number of bytes that the currently cached keys and values occupy
+     */
+    public synchronized long
+    getBytes() { return this.bytes; }
+
+    public long
+    getMaxBytes() { return this.maxBytes; }
+
+    /**
+     * @return The number of lookups that found a value
+     */
+    public synchronized long
+    getHitCount() { return this.hitCount; }
+
+    /**
+     * @return The number of lookups that found no value
+     */
+    public synchronized long
+    getMissCount() { return this.missCount; }
+
+    /**
+     * @return The number of entries that were removed to make room for others
+     */
+    public synchronized long
+    getEvictionCount() { return this.evictionCount; }
+
+    @Override public synchronized String
+    toString() {
+        return (
+            this.map.size()
+            + " entries, "
+            + this.bytes
+            + " of "
+            + this.maxBytes
+            + " bytes, "
+            + this.hitCount
+            + " hits, "
+            + this.missCount
+            + " misses, "
+            + this.evictionCount
+            + " evictions"
+        );
+    }
+
+    private static long
+    sizeOf(String key, String value) { return 2L * (key.length() + value.length()) + ENTRY_OVERHEAD; }
+}
@@ -0,0 +1,302 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.txt2html;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+
+import de.unkrig.commons.nullanalysis.Nullable;
+
+/**
+ * A fast, buffering writer for SVG markup; a replacement for {@link java.io.PrintWriter#printf(String, Object...)}
+ * that neither parses format strings nor boxes integers. Constant markup is best passed as pre-split {@code char[]}
+ * fragments (see {@link #fragment(String)}).
+ * <p>
+ *   Writes either to a {@link Writer}, or, UTF-8-encoded, to an {@link OutputStream}. Nothing reaches the underlying
+ *   writer or stream before {@link #flush()}. {@link IOException}s are wrapped in {@link UncheckedIOException}s.
+ * </p>
+ */
+final
+class SvgEmitter {
+
+    /**
+     * The equivalent of {@code printf("%n")}.
+     */
+    static final char[] NEWLINE = SvgEmitter.fragment(System.lineSeparator());
+
+    private static final char[] LT   = SvgEmitter.fragment("&lt;");
+    private static final char[] GT   = SvgEmitter.fragment("&gt;");
+    private static final char[] QUOT = SvgEmitter.fragment("&quot;");
+    private static final char[] AMP  = SvgEmitter.fragment("&amp;");
+
+    @Nullable private final Writer       writer;
+    @Nullable private final OutputStream os;
+
+    private final char[] buffer = new char[8192];
+    private int          length;
+
+    // Only for output streams.
+    @Nullable private final byte[] bytes;
+    private char                   pendingHighSurrogate;
+
+    // Escaped text characters that this encoder cannot encode become numeric character references.
+    @Nullable private CharsetEncoder encoder;
+
+    SvgEmitter(Writer writer) {
+        this.writer = writer;
+        this.os     = null;
+        this.bytes  = null;
+    }
+
+    /**
+     * Writes UTF-8-encoded bytes to the <var>os</var>.
+     */
+    SvgEmitter(OutputStream os) {
+        this.writer = null;
+        this.os     = os;
+        this.bytes  = new byte[3 * this.buffer.length + 4];
+    }
+
+    /**
+     * @return The chars of <var>s</var>, to be passed to {@link #append(char[])}
+     */
+    static char[]
+    fragment(String s) { return s.toCharArray(); }
+
+    /**
+     * Declares that the markup will eventually be encoded with the <var>charset</var>, so that the characters of
+     * {@link #appendEscaped(CharSequence) escaped text} which the <var>charset</var> cannot encode must be appended
+     * as numeric character references. {@code null}, or a Unicode charset, means that no such references are needed.
+     */
+    void
+    setCharset(@Nullable Charset charset) {
+        this.encoder = charset == null || charset.name().startsWith("UTF-") ? null : charset.newEncoder();
+    }
+
+    SvgEmitter
+    append(char[] fragment) {
+        int n = fragment.length;
+        if (this.length + n > this.buffer.length) {
+            this.flushBuffer();
+            if (n > this.buffer.length) return this.appendSlowly(fragment, 0, n);
+        }
+        System.arraycopy(fragment, 0, this.buffer, this.length, n);
+        this.length += n;
+        return this;
+    }
+
+    SvgEmitter
+    append(char c) {
+        if (this.length == this.buffer.length) this.flushBuffer();
+        this.buffer[this.length++] = c;
+        return this;
+    }
+
+    /**
+     * Appends the decimal representation of <var>value</var>, like {@code printf("%d", value)} does with an ASCII
+     * locale.
+     */
+    SvgEmitter
+    append(int value) {
+
+        // Eleven chars suffice for "-2147483648".
+        if (this.length + 11 > this.buffer.length) this.flushBuffer();
+
+        char[] b = this.buffer;
+        if (value < 0) {
+            if (value == Integer.MIN_VALUE) return this.append(SvgEmitter.fragment(Integer.toString(value)));
+            b[this.length++] = '-';
+            value            = -value;
+        }
+
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) digits++;
+
+        int end = this.length + digits;
+        for (int i = end - 1; i >= this.length; i--) {
+            b[i]  = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        this.length = end;
+        return this;
+    }
+
+    /**
+     * Appends <var>cs</var>, with the SGML special characters {@code < > " &} replaced with entity references.
+     */
+    SvgEmitter
+    appendEscaped(CharSequence cs) {
+
+        CharsetEncoder e = this.encoder;
+        if (e == null) {
+            for (int i = 0, n = cs.length(); i < n; i++) this.appendEscaped(cs.charAt(i));
+            return this;
+        }
+
+        for (int i = 0, n = cs.length(); i < n; i++) {
+            char c = cs.charAt(i);
+            if (c < 0x80) {
+                this.appendEscaped(c);
+            } else
+            if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(cs.charAt(i + 1))) {
+                if (e.canEncode(cs.subSequence(i, i + 2))) {
+                    this.append(c).append(cs.charAt(i + 1));
+                } else {
+                    this.append('&').append('#').append(Character.toCodePoint(c, cs.charAt(i + 1))).append(';');
+                }
+                i++;
+            } else
+            if (Character.isSurrogate(c) || e.canEncode(c)) {
+                this.append(c);
+            } else
+            {
+                this.append('&').append('#').append((int) c).append(';');
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Appends {@code ca[offset ... offset+length-1]}, with the SGML special characters {@code < > " &} replaced with
+     * entity references.
+     */
+    SvgEmitter
+    appendEscaped(char[] ca, int offset, int length) {
+        if (this.encoder != null) return this.appendEscaped(CharBuffer.wrap(ca, offset, length));
+        for (int i = offset, end = offset + length; i < end; i++) this.appendEscaped(ca[i]);
+        return this;
+    }
+
+    private void
+    appendEscaped(char c) {
+        switch (c) {
+        case '<': this.append(LT);   break;
+        case '>': this.append(GT);   break;
+        case '"': this.append(QUOT); break;
+        case '&': this.append(AMP);  break;
+        default:  this.append(c);    break;
+        }
+    }
+
+    SvgEmitter
+    newline() { return this.append(NEWLINE); }
+
+    /**
+     * Writes all buffered output to the underlying writer or stream, but does <em>not</em> flush the latter.
+     */
+    void
+    flush() {
+        this.flushBuffer();
+
+        // A lone high surrogate at the very end is malformed; encode it like "String.getBytes()" does.
+        if (this.os != null && this.pendingHighSurrogate != 0) {
+            this.pendingHighSurrogate = 0;
+            this.write(new byte[] { '?' }, 1);
+        }
+    }
+
+    private SvgEmitter
+    appendSlowly(char[] ca, int off, int len) {
+        for (int i = off; i < off + len; i++) this.append(ca[i]);
+        return this;
+    }
+
+    private void
+    flushBuffer() {
+
+        if (this.length == 0) return;
+
+        Writer writer = this.writer;
+        if (writer != null) {
+            try {
+                writer.write(this.buffer, 0, this.length);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+            this.length = 0;
+            return;
+        }
+
+        byte[] b = this.bytes;
+        assert b != null;
+
+        int n = 0;
+        for (int i = 0; i < this.length; i++) {
+            int c = this.buffer[i];
+
+            if (this.pendingHighSurrogate != 0) {
+                char hs = this.pendingHighSurrogate;
+                this.pendingHighSurrogate = 0;
+                if (Character.isLowSurrogate((char) c)) {
+                    int cp = Character.toCodePoint(hs, (char) c);
+                    b[n++] = (byte) (0xf0 | cp >> 18);
+                    b[n++] = (byte) (0x80 | (cp >> 12 & 0x3f));
+                    b[n++] = (byte) (0x80 | (cp >> 6 & 0x3f));
+                    b[n++] = (byte) (0x80 | (cp & 0x3f));
+                    continue;
+                }
+                b[n++] = '?';
+            }
+
+            if (c < 0x80) {
+                b[n++] = (byte) c;
+            } else
+            if (c < 0x800) {
+                b[n++] = (byte) (0xc0 | c >> 6);
+                b[n++] = (byte) (0x80 | (c & 0x3f));
+            } else
+            if (Character.isHighSurrogate((char) c)) {
+                this.pendingHighSurrogate = (char) c;
+            } else
+            if (Character.isLowSurrogate((char) c)) {
+                b[n++] = '?';
+            } else
+            {
+                b[n++] = (byte) (0xe0 | c >> 12);
+                b[n++] = (byte) (0x80 | (c >> 6 & 0x3f));
+                b[n++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        this.length = 0;
+        this.write(b, n);
+    }
+
+    private void
+    write(byte[] b, int n) {
+        OutputStream os = this.os;
+        assert os != null;
+        try {
+            os.write(b, 0, n);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+}
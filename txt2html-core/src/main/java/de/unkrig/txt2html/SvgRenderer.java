@@ -0,0 +1,497 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.txt2html;
+
+import java.util.Arrays;
+
+/**
+ * Serializes a {@link Scene} as one {@code <svg>} element; either one SVG element per scene element, or, in {@link
+ * #SvgRenderer(SvgEmitter, boolean, boolean) compact} mode, with merged paths and without any whitespace.
+ */
+final
+class SvgRenderer {
+
+    // Pre-split fragments of the SVG markup; see "SvgEmitter".
+    private static final char[] SVG_START          = SvgEmitter.fragment("<svg class=\"asciiart\" width=\"");
+    private static final char[] SVG_HEIGHT         = SvgEmitter.fragment("\" height=\"");
+    private static final char[] SVG_STYLE          = SvgEmitter.fragment("\" style=\"font-family:Consolas;font-size:11px\">"); // SUPPRESS CHECKSTYLE LineLength
+    private static final char[] SVG_DEFS           = SvgEmitter.fragment((
+        ""
+        + "  <defs>%n"
+        + "    <marker id=\"head\" markerWidth=\"4\" markerHeight=\"4\"%n"
+        + "      style=\"fill:rgb(220,220,220)\"%n"
+        + "      orient=\"auto\" refY=\"2\">%n"
+        + "      <path d=\"M0,0 L4,2 0,4\" />%n"
+        + "    </marker>%n"
+        + "  </defs>%n"
+    ).replace("%n", System.lineSeparator()));
+    private static final char[] SVG_END            = SvgEmitter.fragment("</svg>");
+    private static final char[] TEXT_START         = SvgEmitter.fragment("<text x=\"");
+    private static final char[] TEXT_Y             = SvgEmitter.fragment("\" y=\"");
+    private static final char[] TEXT_CONTENT       = SvgEmitter.fragment("\">");
+    private static final char[] TEXT_END           = SvgEmitter.fragment("</text>");
+    private static final char[] POLYLINE_START     = SvgEmitter.fragment("<polyline points=\"");
+    private static final char[] POLYLINE_END       = SvgEmitter.fragment("\" style=\"fill:none;stroke:black;stroke-width:1\" />"); // SUPPRESS CHECKSTYLE LineLength
+    private static final char[] LINE_START         = SvgEmitter.fragment("<line x1=\"");
+    private static final char[] LINE_Y1            = SvgEmitter.fragment("\" y1=\"");
+    private static final char[] LINE_X2            = SvgEmitter.fragment("\" x2=\"");
+    private static final char[] LINE_Y2            = SvgEmitter.fragment("\" y2=\"");
+    private static final char[] LINE_END           = SvgEmitter.fragment("\" style=\"stroke:rgb(220,220,220);stroke-width:4\" />"); // SUPPRESS CHECKSTYLE LineLength
+    private static final char[] ARROW_END          = SvgEmitter.fragment("\" style=\"stroke:rgb(220,220,220);stroke-width:4\" marker-end='url(#head)' />"); // SUPPRESS CHECKSTYLE LineLength
+    private static final char[] SHARED_SVG_END     = SvgEmitter.fragment("\">");
+    private static final char[] SHARED_POLYLINE    = SvgEmitter.fragment("<polyline class=\"box\" points=\"");
+    private static final char[] SHARED_LINE        = SvgEmitter.fragment("<line class=\"line\" x1=\"");
+    private static final char[] SHARED_ARROW       = SvgEmitter.fragment("<line class=\"arrow\" x1=\"");
+    private static final char[] SHARED_ELEMENT_END = SvgEmitter.fragment("\" />");
+
+    // The same for compact mode.
+    private static final char[] C_SVG_STYLE        = SvgEmitter.fragment("\" style=\"font:11px Consolas\">");
+    private static final char[] C_SVG_DEFS         = SvgEmitter.fragment("<defs><marker id=\"head\" markerWidth=\"4\" markerHeight=\"4\" style=\"fill:#dcdcdc\" orient=\"auto\" refY=\"2\"><path d=\"M0,0L4,2 0,4\"/></marker></defs>"); // SUPPRESS CHECKSTYLE LineLength
+    private static final char[] C_PATH_START       = SvgEmitter.fragment("<path d=\"");
+    private static final char[] C_ELEMENT_END      = SvgEmitter.fragment("\"/>");
+    private static final char[] C_LINES_END        = SvgEmitter.fragment("\" style=\"fill:none;stroke:#dcdcdc;stroke-width:4\"/>"); // SUPPRESS CHECKSTYLE LineLength
+    private static final char[] C_ARROWS_START     = SvgEmitter.fragment("<g style=\"stroke:#dcdcdc;stroke-width:4;marker-end:url(#head)\">"); // SUPPRESS CHECKSTYLE LineLength
+    private static final char[] C_ARROWS_END       = SvgEmitter.fragment("</g>");
+    private static final char[] C_POLYLINES_END    = SvgEmitter.fragment("\" style=\"fill:none;stroke:#000\"/>");
+    private static final char[] C_SHARED_LINES     = SvgEmitter.fragment("<path class=\"line\" d=\"");
+    private static final char[] C_SHARED_ARROWS    = SvgEmitter.fragment("<g class=\"arrow\">");
+    private static final char[] C_SHARED_POLYLINES = SvgEmitter.fragment("<path class=\"box\" d=\"");
+    private static final char[] C_TSPAN_START      = SvgEmitter.fragment("<tspan x=\"");
+    private static final char[] C_TSPAN_END        = SvgEmitter.fragment("</tspan>");
+
+    private final SvgEmitter out;
+    private final boolean    sharedStyles;
+    private final boolean    compact;
+    private final int        cellWidth  = 6;
+    private final int        cellHeight = 15;
+
+    // The result of "linePx()" and "arrowPx()".
+    private int x1px, y1px, x2px, y2px;
+
+    // The current point of the path that "moveTo()" and "lineTo()" are building.
+    private int     pathX, pathY;
+    private boolean pathEmpty;
+
+    // The margin around the diagram, in cells.
+    private static final int X_MARGIN = 5, Y_MARGIN = 1;
+
+    /**
+     * @param sharedStyles Whether to style the elements through the CSS classes of the {@link
+     *                     CharMatrix2Svg#SHARED_STYLES}
+     * @param compact      Whether to merge the segments of all lines, and of all polylines, into one {@code <path>}
+     *                     each, to put the texts of each row into one {@code <text>} element, and to omit all
+     *                     whitespace between the elements
+     */
+    SvgRenderer(SvgEmitter out, boolean sharedStyles, boolean compact) {
+        this.out          = out;
+        this.sharedStyles = sharedStyles;
+        this.compact      = compact;
+    }
+
+    /**
+     * Writes one {@code <svg>} element that depicts the <var>scene</var>, but does not flush the {@link SvgEmitter}.
+     */
+    void
+    render(Scene scene) {
+
+        if (this.compact) {
+            this.renderCompact(scene);
+            return;
+        }
+
+        this.out.append(SVG_START).append(this.x2px(scene.getWidth()) + 35);
+        this.out.append(SVG_HEIGHT).append(this.y2px(scene.getHeight()) + 15);
+        if (this.sharedStyles) {
+            this.out.append(SHARED_SVG_END).newline();
+        } else {
+            this.out.append(SVG_STYLE).newline();
+            this.out.append(SVG_DEFS);
+        }
+
+        int[]  ints  = scene.ints();
+        char[] chars = scene.chars();
+        for (int i = 0, size = scene.size(); i < size; i++) {
+            int start = scene.start(i);
+            switch (scene.kindOrdinal(i)) {
+
+            case 0: // TEXT
+                this.text(ints[start], ints[start + 1], chars, ints[start + 2], ints[start + 3]);
+                break;
+
+            case 1: // POLYLINE
+                this.polyline(ints, start + 1, ints[start]);
+                break;
+
+            case 2: // LINE
+                this.line(ints[start + 1], ints[start + 2], ints[start + 3], ints[start + 4]);
+                break;
+
+            case 3: // ARROW
+                this.arrow(ints[start + 1], ints[start + 2], ints[start + 3], ints[start + 4]);
+                break;
+
+            default:
+                throw new AssertionError(scene.kindOrdinal(i));
+            }
+        }
+
+        this.out.append(SVG_END).newline();
+    }
+
+    private void
+    renderCompact(Scene scene) {
+
+        this.out.append(SVG_START).append(this.x2px(scene.getWidth()) + 35);
+        this.out.append(SVG_HEIGHT).append(this.y2px(scene.getHeight()) + 15);
+        if (this.sharedStyles) {
+            this.out.append(SHARED_SVG_END);
+        } else {
+            this.out.append(C_SVG_STYLE);
+            this.out.append(C_SVG_DEFS);
+        }
+
+        // Paint the lines and arrows first, then the boxes, then the texts, like the detection passes found them.
+        int[] ints = scene.ints();
+        int   size = scene.size();
+
+        this.pathEmpty = true;
+        for (int i = 0; i < size; i++) {
+            if (scene.kindOrdinal(i) != Scene.Kind.LINE.ordinal()) continue;
+            int start = scene.start(i);
+            this.linePx(ints[start + 1], ints[start + 2], ints[start + 3], ints[start + 4]);
+            if (this.pathEmpty) this.out.append(this.sharedStyles ? C_SHARED_LINES : C_PATH_START);
+            this.moveTo(this.x1px, this.y1px);
+            this.lineTo(this.x2px, this.y2px);
+        }
+        if (!this.pathEmpty) this.out.append(this.sharedStyles ? C_ELEMENT_END : C_LINES_END);
+
+        // Each arrow needs a path of its own, because "marker-end" only applies to the very last vertex of a path.
+        boolean anyArrows = false;
+        for (int i = 0; i < size; i++) {
+            if (scene.kindOrdinal(i) != Scene.Kind.ARROW.ordinal()) continue;
+            int start = scene.start(i);
+            this.arrowPx(ints[start + 1], ints[start + 2], ints[start + 3], ints[start + 4]);
+            if (!anyArrows) this.out.append(this.sharedStyles ? C_SHARED_ARROWS : C_ARROWS_START);
+            anyArrows = true;
+            this.out.append(C_PATH_START);
+            this.pathEmpty = true;
+            this.moveTo(this.x1px, this.y1px);
+            this.lineTo(this.x2px, this.y2px);
+            this.out.append(C_ELEMENT_END);
+        }
+        if (anyArrows) this.out.append(C_ARROWS_END);
+
+        this.pathEmpty = true;
+        for (int i = 0; i < size; i++) {
+            if (scene.kindOrdinal(i) != Scene.Kind.POLYLINE.ordinal()) continue;
+            int start = scene.start(i);
+            if (this.pathEmpty) this.out.append(this.sharedStyles ? C_SHARED_POLYLINES : C_PATH_START);
+            for (int j = 0, n = ints[start]; j < n; j++) {
+                int xpx = this.x2px(ints[start + 1 + 2 * j]) + this.cellWidth / 2;
+                int ypx = this.y2px(ints[start + 2 + 2 * j]) + this.cellHeight / 2;
+                if (j == 0) {
+                    this.moveTo(xpx, ypx);
+                } else {
+                    this.lineTo(xpx, ypx);
+                }
+            }
+        }
+        if (!this.pathEmpty) this.out.append(this.sharedStyles ? C_ELEMENT_END : C_POLYLINES_END);
+
+        this.textsCompact(scene);
+
+        this.out.append(SVG_END).newline();
+    }
+
+    private static final int KEY_LIMIT = 1 << 21;
+
+    /**
+     * Renders the texts row by row; the second and following texts of a row become {@code <tspan>}s that need only
+     * an x coordinate.
+     */
+    private void
+    textsCompact(Scene scene) {
+
+        int[]  ints  = scene.ints();
+        char[] chars = scene.chars();
+
+        // Sort the texts by (y, x); pack both coordinates and the element index into one "long" to avoid boxing.
+        // Giant scenes where that doesn't fit are not grouped, i.e. each text gets a "<text>" element of its own.
+        long[]  keys     = new long[scene.size()];
+        int     n        = 0;
+        boolean tooLarge = false;
+        for (int i = 0, size = scene.size(); i < size; i++) {
+            if (scene.kindOrdinal(i) != Scene.Kind.TEXT.ordinal()) continue;
+            int start = scene.start(i);
+            int x     = ints[start];
+            int y     = ints[start + 1];
+            if (x >= KEY_LIMIT || y >= KEY_LIMIT || i >= KEY_LIMIT) tooLarge = true;
+            keys[n++] = ((long) y << 42) | ((long) x << 21) | i;
+        }
+        if (n == 0) return;
+        if (tooLarge) {
+            for (int i = 0, size = scene.size(); i < size; i++) {
+                if (scene.kindOrdinal(i) != Scene.Kind.TEXT.ordinal()) continue;
+                this.textStart(ints, chars, scene.start(i));
+                this.out.append(TEXT_END);
+            }
+            return;
+        }
+        Arrays.sort(keys, 0, n);
+
+        int previousY = -1;
+        for (int k = 0; k < n; k++) {
+            int start = scene.start((int) (keys[k] & (KEY_LIMIT - 1)));
+            int x     = ints[start];
+            int y     = ints[start + 1];
+            if (y != previousY) {
+                if (previousY != -1) this.out.append(TEXT_END);
+                this.textStart(ints, chars, start);
+                previousY = y;
+            } else {
+                this.out.append(C_TSPAN_START).append(this.x2px(x) + this.cellWidth / 2);
+                this.out.append(TEXT_CONTENT).appendEscaped(chars, ints[start + 2], ints[start + 3]);
+                this.out.append(C_TSPAN_END);
+            }
+        }
+        this.out.append(TEXT_END);
+    }
+
+    /**
+     * Appends a {@code <text>} start tag and the text of the TEXT element whose data starts at {@code ints[start]}.
+     */
+    private void
+    textStart(int[] ints, char[] chars, int start) {
+        this.out.append(TEXT_START).append(this.x2px(ints[start]) + this.cellWidth / 2);
+        this.out.append(TEXT_Y).append(this.y2px(ints[start + 1]) + (3 * this.cellHeight) / 4);
+        this.out.append(TEXT_CONTENT).appendEscaped(chars, ints[start + 2], ints[start + 3]);
+    }
+
+    /**
+     * Starts a new subpath at {@code (xpx, ypx)}, unless the current subpath already ends there.
+     */
+    private void
+    moveTo(int xpx, int ypx) {
+        if (this.pathEmpty) {
+            this.out.append('M');
+            this.pair(xpx, ypx);
+            this.pathEmpty = false;
+        } else
+        if (xpx != this.pathX || ypx != this.pathY) {
+            this.out.append('m');
+            this.pair(xpx - this.pathX, ypx - this.pathY);
+        }
+        this.pathX = xpx;
+        this.pathY = ypx;
+    }
+
+    private void
+    lineTo(int xpx, int ypx) {
+        int dx = xpx - this.pathX, dy = ypx - this.pathY;
+        if (dy == 0) {
+            this.out.append('h').append(dx);
+        } else
+        if (dx == 0) {
+            this.out.append('v').append(dy);
+        } else
+        {
+            this.out.append('l');
+            this.pair(dx, dy);
+        }
+        this.pathX = xpx;
+        this.pathY = ypx;
+    }
+
+    /**
+     * Appends a coordinate pair; the separator is not needed before a minus sign.
+     */
+    private void
+    pair(int x, int y) {
+        this.out.append(x);
+        if (y >= 0) this.out.append(',');
+        this.out.append(y);
+    }
+
+    private void
+    text(int x, int y, char[] ca, int offset, int length) {
+        this.out.append(TEXT_START).append(this.x2px(x) + this.cellWidth / 2);
+        this.out.append(TEXT_Y).append(this.y2px(y) + (3 * this.cellHeight) / 4);
+        this.out.append(TEXT_CONTENT).appendEscaped(ca, offset, length).append(TEXT_END).newline();
+    }
+
+    private void
+    polyline(int[] xy, int offset, int pointCount) {
+        this.out.append(this.sharedStyles ? SHARED_POLYLINE : POLYLINE_START);
+        for (int i = 0; i < pointCount; i++) {
+            if (i > 0) this.out.append(' ');
+            int x = xy[offset + 2 * i];
+            int y = xy[offset + 2 * i + 1];
+            this.out.append(this.x2px(x) + this.cellWidth / 2).append(',').append(this.y2px(y) + this.cellHeight / 2);
+        }
+        this.out.append(this.sharedStyles ? SHARED_ELEMENT_END : POLYLINE_END).newline();
+    }
+
+    private void
+    line(int x1, int y1, int x2, int y2) {
+        this.linePx(x1, y1, x2, y2);
+        if (this.sharedStyles) {
+            this.line(SHARED_LINE, this.x1px, this.y1px, this.x2px, this.y2px, SHARED_ELEMENT_END);
+        } else {
+            this.line(LINE_START, this.x1px, this.y1px, this.x2px, this.y2px, LINE_END);
+        }
+    }
+
+    /**
+     * Computes the pixel coordinates of a line segment, and stores them in {@link #x1px}, {@link #y1px}, {@link
+     * #x2px} and {@link #y2px}.
+     */
+    private void
+    linePx(int x1, int y1, int x2, int y2) {
+        
+        int x1px = this.x2px(x1);
+        int y1px = this.y2px(y1);
+        int x2px = this.x2px(x2);
+        int y2px = this.y2px(y2);
+        
+        if (x1 == x2) {
+            if (y2 > y1) {
+                
+                // Downward line.
+                x1px += this.cellWidth;
+                y1px -= this.cellHeight / 2;
+                x2px += this.cellWidth;
+                y2px -= this.cellHeight / 2;
+            } else {
+                
+                // Upward line
+                x1px += this.cellWidth;
+                y1px += this.cellHeight / 2;
+                x2px += this.cellWidth;
+                y2px -= this.cellHeight / 2;
+            }
+        }
+        
+        if (y1 == y2) {
+            if (x2 > x1) {
+                
+                // Right line.
+                x1px -= this.cellWidth / 2;
+                y1px += this.cellHeight / 2;
+                x2px -= this.cellWidth * 2;
+                y2px += this.cellHeight / 2;
+            } else {
+                
+                // Left line.
+                x1px += this.cellWidth / 2;
+                y1px += this.cellHeight / 2;
+                x2px += this.cellWidth * 2;
+                y2px += this.cellHeight / 2;
+            }
+        }
+        this.x1px = x1px;
+        this.y1px = y1px;
+        this.x2px = x2px;
+        this.y2px = y2px;
+    }
+
+    private void
+    arrow(int x1, int y1, int x2, int y2) {
+        this.arrowPx(x1, y1, x2, y2);
+        if (this.sharedStyles) {
+            this.line(SHARED_ARROW, this.x1px, this.y1px, this.x2px, this.y2px, SHARED_ELEMENT_END);
+        } else {
+            this.line(LINE_START, this.x1px, this.y1px, this.x2px, this.y2px, ARROW_END);
+        }
+    }
+
+    /**
+     * Computes the pixel coordinates of an arrow segment, and stores them in {@link #x1px}, {@link #y1px}, {@link
+     * #x2px} and {@link #y2px}.
+     */
+    private void
+    arrowPx(int x1, int y1, int x2, int y2) {
+        
+        int x1px = this.x2px(x1);
+        int y1px = this.y2px(y1);
+        int x2px = this.x2px(x2);
+        int y2px = this.y2px(y2);
+        
+        if (x1 == x2) {
+            if (y2 > y1) {
+                
+                // Downward arrow.
+                x1px += this.cellWidth;
+                y1px -= this.cellHeight / 2;
+                x2px += this.cellWidth;
+                y2px += this.cellHeight / 2;
+            } else {
+                
+                // Upward arrow
+                x1px += this.cellWidth;
+                y1px += 3 * this.cellHeight / 2;
+                x2px += this.cellWidth;
+                y2px += this.cellHeight / 2;
+            }
+        }
+        
+        if (y1 == y2) {
+            if (x2 > x1) {
+                
+                // Right arrow.
+                x1px += this.cellWidth;
+                y1px += this.cellHeight / 2;
+                x2px -= this.cellWidth;
+                y2px += this.cellHeight / 2;
+            } else {
+                
+                // Left arrow.
+                x1px += this.cellWidth;
+                y1px += this.cellHeight / 2;
+                x2px += this.cellWidth * 2;
+                y2px += this.cellHeight / 2;
+            }
+        }
+        this.x1px = x1px;
+        this.y1px = y1px;
+        this.x2px = x2px;
+        this.y2px = y2px;
+    }
+
+    private void
+    line(char[] start, int x1px, int y1px, int x2px, int y2px, char[] end) {
+        this.out.append(start).append(x1px);
+        this.out.append(LINE_Y1).append(y1px);
+        this.out.append(LINE_X2).append(x2px);
+        this.out.append(LINE_Y2).append(y2px);
+        this.out.append(end).newline();
+    }
+
+    private int
+    x2px(int x) { return this.cellWidth * (X_MARGIN + x); }
+
+    private int
+    y2px(int y) { return this.cellHeight * (Y_MARGIN + y); }
+}
@@ -25,18 +25,31 @@
 
 package de.unkrig.txt2html;
 
-import java.io.StringReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.regex.Pattern;
 
+import de.unkrig.commons.io.InputStreams;
+import de.unkrig.commons.io.IoUtil;
+import de.unkrig.commons.io.OutputStreams;
+import de.unkrig.commons.nullanalysis.Nullable;
 import de.unkrig.commons.text.pattern.PatternUtil;
 import de.unkrig.txt2html.text.CharMatrix;
 
 public
 class Txt2SvgFilterWriter {
     
-    private static final Pattern
+    /**
+     * The default for the {@code asciiArtPattern} argument of {@link #make(Writer, Pattern, boolean, boolean,
+     * SvgCache)}.
+     */
+    public static final Pattern
     PATTERN_ASCII_ART = Pattern.compile("<pre class=\"asciiart\"><code>\\.?([^<]*)</code></pre>");
 
     /**
@@ -44,23 +57,322 @@ class Txt2SvgFilterWriter {
      *         <pre>} to {@code <svg>}.
      */
     public static Writer
-    make(Writer delegate) {
+    make(Writer delegate) { return Txt2SvgFilterWriter.make(delegate, false); }
+
+    /**
+     * @param sharedStyles Whether to emit the {@link CharMatrix2Svg#SHARED_STYLES} once, right before the first ASCII
+     *                     art region, and to let all SVGs refer to them; see {@link
+     *                     CharMatrix2Svg#setSharedStyles(boolean)}
+     * @return             Passes all text to <var>delegate</var>, except that "ASCII art" regions are transformed
+     *                     from {@code <pre>} to {@code <svg>}
+     */
+    public static Writer
+    make(Writer delegate, boolean sharedStyles) { return Txt2SvgFilterWriter.make(delegate, sharedStyles, false); }
+
+    /**
+     * @param sharedStyles Whether to emit the {@link CharMatrix2Svg#SHARED_STYLES} once, right before the first ASCII
+     *                     art region, and to let all SVGs refer to them; see {@link
+     *                     CharMatrix2Svg#setSharedStyles(boolean)}
+     * @param compact      Whether to produce smaller SVG markup; see {@link CharMatrix2Svg#setCompact(boolean)}
+     * @return             Passes all text to <var>delegate</var>, except that "ASCII art" regions are transformed
+     *                     from {@code <pre>} to {@code <svg>}
+     */
+    public static Writer
+    make(Writer delegate, boolean sharedStyles, boolean compact) {
+        return Txt2SvgFilterWriter.make(delegate, PATTERN_ASCII_ART, sharedStyles, compact);
+    }
+
+    /**
+     * @param asciiArtPattern Matches an "ASCII art" region; its group #1 is the HTML-encoded ASCII art
+     * @param sharedStyles    Whether to emit the {@link CharMatrix2Svg#SHARED_STYLES} once, right before the first
+     *                        ASCII art region, and to let all SVGs refer to them; see {@link
+     *                        CharMatrix2Svg#setSharedStyles(boolean)}
+     * @return                Passes all text to <var>delegate</var>, except that "ASCII art" regions are
+     *                        transformed from {@code <pre>} to {@code <svg>}
+     */
+    public static Writer
+    make(Writer delegate, Pattern asciiArtPattern, boolean sharedStyles) {
+        return Txt2SvgFilterWriter.make(delegate, asciiArtPattern, sharedStyles, false);
+    }
+
+    /**
+     * @param asciiArtPattern Matches an "ASCII art" region; its group #1 is the HTML-encoded ASCII art
+     * @param sharedStyles    Whether to emit the {@link CharMatrix2Svg#SHARED_STYLES} once, right before the first
+     *                        ASCII art region, and to let all SVGs refer to them; see {@link
+     *                        CharMatrix2Svg#setSharedStyles(boolean)}
+     * @param compact         Whether to produce smaller SVG markup; see {@link CharMatrix2Svg#setCompact(boolean)}
+     * @return                Passes all text to <var>delegate</var>, except that "ASCII art" regions are
+     *                        transformed from {@code <pre>} to {@code <svg>}
+     */
+    public static Writer
+    make(Writer delegate, Pattern asciiArtPattern, boolean sharedStyles, boolean compact) {
+        return Txt2SvgFilterWriter.make(delegate, asciiArtPattern, sharedStyles, compact, null);
+    }
+
+    /**
+     * @param asciiArtPattern Matches an "ASCII art" region; its group #1 is the HTML-encoded ASCII art
+     * @param sharedStyles    Whether to emit the {@link CharMatrix2Svg#SHARED_STYLES} once, right before the first
+     *                        ASCII art region, and to let all SVGs refer to them; see {@link
+     *                        CharMatrix2Svg#setSharedStyles(boolean)}
+     * @param compact         Whether to produce smaller SVG markup; see {@link CharMatrix2Svg#setCompact(boolean)}
+     * @param cache           Where to look up ASCII art regions that were converted before, and to store newly
+     *                        converted ones; may be shared by many filter writers, even with different settings and
+     *                        across threads
+     * @return                Passes all text to <var>delegate</var>, except that "ASCII art" regions are
+     *                        transformed from {@code <pre>} to {@code <svg>}
+     */
+    public static Writer
+    make(
+        Writer             delegate,
+        Pattern            asciiArtPattern,
+        boolean            sharedStyles,
+        boolean            compact,
+        @Nullable SvgCache cache
+    ) {
+
+        return Txt2SvgFilterWriter.make(
+            delegate,                                                                  // delegate
+            asciiArtPattern,                                                           // asciiArtPattern
+            Txt2SvgFilterWriter.replacer(null, sharedStyles, compact, cache, "", null) // replacer
+        );
+    }
+
+    private static Writer
+    make(Writer delegate, Pattern asciiArtPattern, AsciiArtFilterWriter.Replacer replacer) {
+
+        // The default pattern is matched by a dedicated scanner, which is much faster than the regex engine.
+        if (Txt2SvgFilterWriter.isDefault(asciiArtPattern)) return new AsciiArtFilterWriter(delegate, replacer);
 
-        // Find all occurrences of ASCII art, and convert it into SVG on-the-fly.
+        // Find all occurrences of ASCII art, and convert it into SVG on-the-fly; the regex engine does not tell the
+        // offsets.
         return PatternUtil.replaceAllFilterWriter(
-            PATTERN_ASCII_ART, // pattern
-            mr -> {            // matchReplacer
-                String text = mr.group(1);
-                text = text.replace("&lt;",   "<");
-                text = text.replace("&gt;",   ">");
-                text = text.replace("&quot;", "\"");
-                text = text.replace("&amp;",  "&");
-                
-                StringWriter sw = new StringWriter();
-                new CharMatrix2Svg(sw).convert(CharMatrix.read(new StringReader(text)));
-                return sw.toString();
-            },
-            delegate           // delegate
+            asciiArtPattern,                         // pattern
+            mr -> replacer.replace(mr.group(1), -1), // matchReplacer
+            delegate                                 // delegate
         );
     }
+
+    /**
+     * Copies one HTML document from <var>is</var> to <var>os</var>, and transforms its "ASCII art" regions from {@code
+     * <pre>} to {@code <svg>}, like {@link #make(Writer, Pattern, boolean, boolean, SvgCache)} does.
+     * <p>
+     *   For the default {@link #PATTERN_ASCII_ART} and an ASCII-compatible <var>charset</var> (e.g. UTF-8 or
+     *   ISO-8859-1), the document is processed as bytes, and only the ASCII art regions are decoded; all other bytes
+     *   are copied as they are (even if they are malformed in the <var>charset</var>).
+     * </p>
+     */
+    public static void
+    transform(
+        InputStream        is,
+        OutputStream       os,
+        Charset            charset,
+        Pattern            asciiArtPattern,
+        boolean            sharedStyles,
+        boolean            compact,
+        @Nullable SvgCache cache
+    ) throws IOException {
+        Txt2SvgFilterWriter.transform(is, os, charset, asciiArtPattern, sharedStyles, compact, cache, "", null);
+    }
+
+    /**
+     * Like {@link #transform(InputStream, OutputStream, Charset, Pattern, boolean, boolean, SvgCache)}, but also
+     * counts the document, its bytes, its ASCII art regions and their conversions.
+     *
+     * @param path       Identifies the document, e.g. in the {@link ConversionStatistics#getSlowestDiagrams()
+     *                   slowest diagrams}
+     * @param statistics Where to count; {@code null} disables counting
+     */
+    public static void
+    transform(
+        InputStream                    is,
+        OutputStream                   os,
+        Charset                        charset,
+        Pattern                        asciiArtPattern,
+        boolean                        sharedStyles,
+        boolean                        compact,
+        @Nullable SvgCache             cache,
+        String                         path,
+        @Nullable ConversionStatistics statistics
+    ) throws IOException {
+
+        SvgReplacer r = new SvgReplacer(charset, sharedStyles, compact, cache, path, statistics);
+
+        if (statistics == null) {
+            Txt2SvgFilterWriter.transform2(is, os, charset, asciiArtPattern, r);
+            return;
+        }
+
+        ByteCounter bytesIn  = new ByteCounter();
+        ByteCounter bytesOut = new ByteCounter();
+        Txt2SvgFilterWriter.transform2(
+            InputStreams.wye(is, bytesIn),   // is
+            OutputStreams.tee(os, bytesOut), // os
+            charset,                         // charset
+            asciiArtPattern,                 // asciiArtPattern
+            r                                // replacer
+        );
+
+        // Count the document and its diagrams only now; with CHECK_AND_TRANSFORM, the CHECK pass over a document that
+        // changes is aborted, and then the TRANSFORM pass processes the document again.
+        statistics.documentTransformed(bytesIn.count, bytesOut.count, r.diagrams);
+    }
+
+    private static void
+    transform2(
+        InputStream                   is,
+        OutputStream                  os,
+        Charset                       charset,
+        Pattern                       asciiArtPattern,
+        AsciiArtFilterWriter.Replacer r
+    ) throws IOException {
+
+        if (Txt2SvgFilterWriter.isDefault(asciiArtPattern) && AsciiArtFilterOutputStream.isAsciiCompatible(charset)) {
+            OutputStream filter = new AsciiArtFilterOutputStream(os, charset, r);
+            IoUtil.copy(is, filter);
+            filter.flush();
+            return;
+        }
+
+        Writer w = Txt2SvgFilterWriter.make(new OutputStreamWriter(os, charset), asciiArtPattern, r);
+        IoUtil.copy(new InputStreamReader(is, charset), w);
+        w.flush();
+    }
+
+    private static boolean
+    isDefault(Pattern asciiArtPattern) {
+        return (
+            asciiArtPattern.pattern().equals(PATTERN_ASCII_ART.pattern())
+            && asciiArtPattern.flags() == PATTERN_ASCII_ART.flags()
+        );
+    }
+
+    /**
+     * @param charset The charset with which the SVG will be encoded, or {@code null}; see {@link
+     *                CharMatrix2Svg#setCharset(Charset)}
+     * @return        Maps the HTML-encoded ASCII art to SVG; emits the shared styles (if any) before the first SVG
+     */
+    private static AsciiArtFilterWriter.Replacer
+    replacer(
+        @Nullable Charset              charset,
+        boolean                        sharedStyles,
+        boolean                        compact,
+        @Nullable SvgCache             cache,
+        String                         path,
+        @Nullable ConversionStatistics statistics
+    ) { return new SvgReplacer(charset, sharedStyles, compact, cache, path, statistics); }
+
+    /**
+     * Discards all bytes, and counts them.
+     */
+    private static final
+    class ByteCounter extends OutputStream {
+
+        long count;
+
+        @Override public void
+        write(int b) { this.count++; }
+
+        @Override public void
+        write(byte[] b, int off, int len) { this.count += len; }
+    }
+
+    /**
+     * Replaces the ASCII art regions of one document, and thus is used by only one thread at a time. Converts all
+     * regions with the same {@link CharMatrix2Svg}, so that its buffers are re-used.
+     */
+    private static final
+    class SvgReplacer implements AsciiArtFilterWriter.Replacer {
+
+        @Nullable private final Charset              charset;
+        private final boolean                        sharedStyles;
+        private final boolean                        compact;
+        @Nullable private final SvgCache             cache;
+        private final String                         path;
+        @Nullable private final ConversionStatistics statistics;
+
+        // The settings are part of the cache key.
+        private final String keyPrefix;
+
+        // Whether the shared styles still need to be written.
+        private boolean sharedStylesPending;
+
+        // Created on the first cache miss, because many documents have no ASCII art at all.
+        @Nullable private StringWriter   sw;
+        @Nullable private CharMatrix2Svg cm2svg;
+
+        // The number of ASCII art regions replaced so far.
+        long diagrams;
+
+        SvgReplacer(
+            @Nullable Charset              charset,
+            boolean                        sharedStyles,
+            boolean                        compact,
+            @Nullable SvgCache             cache,
+            String                         path,
+            @Nullable ConversionStatistics statistics
+        ) {
+            this.charset             = charset;
+            this.sharedStyles        = sharedStyles;
+            this.compact             = compact;
+            this.cache               = cache;
+            this.path                = path;
+            this.statistics          = statistics;
+            this.keyPrefix           = (
+                (sharedStyles ? "s" : "-")
+                + (compact ? "c" : "-")
+                + (charset == null ? "" : charset.name())
+                + ":"
+            );
+            this.sharedStylesPending = sharedStyles;
+        }
+
+        @Override public String
+        replace(String text, long offset) {
+
+            this.diagrams++;
+
+            SvgCache cache = this.cache;
+            String   svg   = (
+                cache == null
+                ? this.convert(text, offset)
+                : cache.get(this.keyPrefix + text, key -> this.convert(text, offset))
+            );
+
+            if (!this.sharedStylesPending) return svg;
+            this.sharedStylesPending = false;
+            return CharMatrix2Svg.SHARED_STYLES + svg;
+        }
+
+        /**
+         * @param text   The HTML-encoded ASCII art
+         * @param offset The position of the ASCII art region in the document, or -1 iff unknown
+         */
+        private String
+        convert(String text, long offset) {
+
+            ConversionStatistics statistics = this.statistics;
+            long                 start      = statistics == null ? 0 : System.nanoTime();
+
+            StringWriter   sw     = this.sw;
+            CharMatrix2Svg cm2svg = this.cm2svg;
+            if (sw == null || cm2svg == null) {
+                this.sw     = (sw = new StringWriter());
+                this.cm2svg = (cm2svg = new CharMatrix2Svg(sw));
+                cm2svg.setSharedStyles(this.sharedStyles);
+                cm2svg.setCompact(this.compact);
+                cm2svg.setCharset(this.charset);
+                cm2svg.setStatistics(statistics);
+            } else {
+                sw.getBuffer().setLength(0);
+            }
+
+            CharMatrix cm = CharMatrix.readHtml(text);
+            cm2svg.convert(cm);
+
+            if (statistics != null) {
+                statistics.diagramConverted(this.path, offset, cm.width(), cm.height(), System.nanoTime() - start);
+            }
+            return sw.toString();
+        }
+    }
 }
@@ -0,0 +1,481 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.txt2html.text;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import de.unkrig.commons.nullanalysis.Nullable;
+
+/**
+ * A {@link MutableCharMatrix} that stores its cells in one row-major array, plus an "occupancy bitmap" of its
+ * non-blank cells.
+ * <p>
+ *   As long as all cells are LATIN-1 characters (which is the normal case for ASCII art), the cells are stored in a
+ *   {@code byte[]}, i.e. with one byte per cell. The first time that a non-LATIN-1 character is stored, the array
+ *   is "inflated" to a {@code char[]}. (This is the same strategy that the JRE uses for "compact strings".)
+ * </p>
+ * <p>
+ *   Optionally, the matrix maintains a second, column-major copy of its cells (see {@link #setDualLayout(boolean)}),
+ *   so that vertical scans run over contiguous memory, too.
+ * </p>
+ */
+public final
+class ArrayCharMatrix extends MutableCharMatrix {
+
+    private final int width, height;
+
+    // The row-major cells; exactly one of these two is non-null.
+    @Nullable private byte[] bytes;
+    @Nullable private char[] chars;
+
+    // The column-major copy of the cells; both are null iff the dual layout is disabled; otherwise, the one that
+    // corresponds with the non-null row-major array is non-null.
+    @Nullable private byte[] columnBytes;
+    @Nullable private char[] columnChars;
+
+    // Bit "x * height + y" is set iff cell (x, y) is not a space.
+    private final BitSet occupied;
+
+    /**
+     * Creates a matrix of the given size, where all cells are initially spaces.
+     */
+    public
+    ArrayCharMatrix(int width, int height) {
+
+        if (width < 0)  throw new IllegalArgumentException("width=" + width);
+        if (height < 0) throw new IllegalArgumentException("height=" + height);
+
+        this.width  = width;
+        this.height = height;
+
+        byte[] ba = new byte[width * height];
+        Arrays.fill(ba, (byte) ' ');
+        this.bytes    = ba;
+        this.occupied = new BitSet();
+    }
+
+    /**
+     * Creates a copy of the given <var>original</var>.
+     */
+    public
+    ArrayCharMatrix(CharMatrix original) {
+
+        int width  = original.width();
+        int height = original.height();
+
+        this.width    = width;
+        this.height   = height;
+        this.occupied = new BitSet(width * height);
+
+        // Copy row by row; as long as all characters are LATIN-1, store them as bytes.
+        char[]           row = new char[width];
+        byte[]           ba  = new byte[width * height];
+        @Nullable char[] ca  = null;
+        for (int y = 0; y < height; y++) {
+            original.getRow(0, y, width, row, 0);
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                char c = row[x];
+                if (c != ' ') this.occupied.set(x * height + y);
+                if (ca == null) {
+                    if (c <= 0xff) {
+                        ba[offset + x] = (byte) c;
+                        continue;
+                    }
+
+                    // Non-LATIN-1 character; fall back to a CHAR array.
+                    ca = ArrayCharMatrix.inflate(ba, offset + x);
+                }
+                ca[offset + x] = c;
+            }
+        }
+        if (ca == null) {
+            this.bytes = ba;
+        } else {
+            this.chars = ca;
+        }
+    }
+
+    /**
+     * Enables or disables the "dual layout".
+     * <p>
+     *   With the dual layout, the matrix keeps a column-major copy of its cells, in addition to the row-major array.
+     *   All modifications update both; {@link #charAt(int, int)} and all vertical accessors ({@link #getColumn(int,
+     *   int, int, char[], int)}, {@link #columnConsistsOf(int, int, int, char)}, {@link #verticalSection(int)} and
+     *   {@link #reverseVerticalSection(int)}) read from the column-major copy, while all horizontal accessors read
+     *   from the row-major array.
+     * </p>
+     * <p>
+     *   This doubles the memory footprint, but makes column-by-column sweeps and vertical scans much more
+     *   cache-friendly.
+     * </p>
+     */
+    public void
+    setDualLayout(boolean value) {
+
+        if (!value) {
+            this.columnBytes = null;
+            this.columnChars = null;
+            return;
+        }
+
+        if (this.isDualLayout()) return;
+
+        int width = this.width, height = this.height;
+
+        byte[] ba = this.bytes;
+        if (ba != null) {
+            byte[] cba = new byte[ba.length];
+            for (int x = 0; x < width; x++) {
+                for (int y = 0, offset = x; y < height; y++, offset += width) cba[x * height + y] = ba[offset];
+            }
+            this.columnBytes = cba;
+        } else {
+            char[] ca = this.chars;
+            assert ca != null;
+            char[] cca = new char[ca.length];
+            for (int x = 0; x < width; x++) {
+                for (int y = 0, offset = x; y < height; y++, offset += width) cca[x * height + y] = ca[offset];
+            }
+            this.columnChars = cca;
+        }
+    }
+
+    /**
+     * @see #setDualLayout(boolean)
+     */
+    public boolean
+    isDualLayout() { return this.columnBytes != null || this.columnChars != null; }
+
+    @Override public int
+    width() { return this.width; }
+
+    @Override public int
+    height() { return this.height; }
+
+    /**
+     * @return Whether this matrix currently uses the compact, one-byte-per-cell representation
+     */
+    public boolean
+    isLatin1() { return this.bytes != null; }
+
+    @Override public int
+    nextNonBlankInColumn(int x, int y) {
+        if (x < 0 || x >= this.width) throw new IndexOutOfBoundsException("x=" + x + ", width=" + this.width);
+        if (y < 0 || y > this.height) throw new IndexOutOfBoundsException("y=" + y + ", height=" + this.height);
+
+        int columnOffset = x * this.height;
+        int result       = this.occupied.nextSetBit(columnOffset + y);
+        return result == -1 || result >= columnOffset + this.height ? -1 : result - columnOffset;
+    }
+
+    @Override public char
+    charAt(int x, int y) {
+        this.checkIndexes(x, y);
+
+        // Prefer the column-major copy, because the typical sweep over the matrix is column by column.
+        byte[] cba = this.columnBytes;
+        if (cba != null) return (char) (cba[x * this.height + y] & 0xff);
+        char[] cca = this.columnChars;
+        if (cca != null) return cca[x * this.height + y];
+
+        byte[] ba = this.bytes;
+        if (ba != null) return (char) (ba[y * this.width + x] & 0xff);
+
+        char[] ca = this.chars;
+        assert ca != null;
+        return ca[y * this.width + x];
+    }
+
+    @Override public void
+    charAt(int x, int y, char c) {
+        this.checkIndexes(x, y);
+
+        this.occupied.set(x * this.height + y, c != ' ');
+
+        byte[] ba = this.bytes;
+        if (ba != null) {
+            if (c <= 0xff) {
+                ba[y * this.width + x] = (byte) c;
+                byte[] cba = this.columnBytes;
+                if (cba != null) cba[x * this.height + y] = (byte) c;
+                return;
+            }
+            this.inflate();
+        }
+
+        char[] ca = this.chars;
+        assert ca != null;
+        ca[y * this.width + x] = c;
+        char[] cca = this.columnChars;
+        if (cca != null) cca[x * this.height + y] = c;
+    }
+
+    @Override public void
+    fill(int x, int y, int width, int height, char c) {
+
+        if (width <= 0 || height <= 0) return;
+        this.checkIndexes(x, y);
+        this.checkIndexes(x + width - 1, y + height - 1);
+
+        if (c > 0xff && this.bytes != null) this.inflate();
+
+        int columnEnd = (x + width) * this.height + y;
+        for (int offset = x * this.height + y; offset < columnEnd; offset += this.height) {
+            this.occupied.set(offset, offset + height, c != ' ');
+        }
+
+        byte[] ba = this.bytes;
+        char[] ca = this.chars;
+        for (int offset = y * this.width + x, end = offset + height * this.width; offset < end; offset += this.width) {
+            if (ba != null) {
+                Arrays.fill(ba, offset, offset + width, (byte) c);
+            } else {
+                assert ca != null;
+                Arrays.fill(ca, offset, offset + width, c);
+            }
+        }
+
+        byte[] cba = this.columnBytes;
+        char[] cca = this.columnChars;
+        if (cba == null && cca == null) return;
+        for (int offset = x * this.height + y; offset < columnEnd; offset += this.height) {
+            if (cba != null) {
+                Arrays.fill(cba, offset, offset + height, (byte) c);
+            } else {
+                assert cca != null;
+                Arrays.fill(cca, offset, offset + height, c);
+            }
+        }
+    }
+
+    @Override public void
+    getRow(int x, int y, int length, char[] dst, int dstOffset) {
+
+        if (length <= 0) return;
+        this.checkIndexes(x, y);
+        this.checkIndexes(x + length - 1, y);
+
+        int    offset = y * this.width + x;
+        byte[] ba     = this.bytes;
+        if (ba != null) {
+            for (int i = 0; i < length; i++) dst[dstOffset + i] = (char) (ba[offset + i] & 0xff);
+        } else {
+            assert this.chars != null;
+            System.arraycopy(this.chars, offset, dst, dstOffset, length);
+        }
+    }
+
+    @Override public void
+    getColumn(int x, int y, int length, char[] dst, int dstOffset) {
+
+        if (length <= 0) return;
+        this.checkIndexes(x, y);
+        this.checkIndexes(x, y + length - 1);
+
+        byte[] cba = this.columnBytes;
+        if (cba != null) {
+            int offset = x * this.height + y;
+            for (int i = 0; i < length; i++) dst[dstOffset + i] = (char) (cba[offset + i] & 0xff);
+            return;
+        }
+        char[] cca = this.columnChars;
+        if (cca != null) {
+            System.arraycopy(cca, x * this.height + y, dst, dstOffset, length);
+            return;
+        }
+
+        int    width  = this.width;
+        int    offset = y * width + x;
+        byte[] ba     = this.bytes;
+        if (ba != null) {
+            for (int i = 0; i < length; i++, offset += width) dst[dstOffset + i] = (char) (ba[offset] & 0xff);
+        } else {
+            char[] ca = this.chars;
+            assert ca != null;
+            for (int i = 0; i < length; i++, offset += width) dst[dstOffset + i] = ca[offset];
+        }
+    }
+
+    @Override public boolean
+    rowConsistsOf(int x, int y, int length, char c) {
+
+        if (length <= 0) return true;
+        this.checkIndexes(x, y);
+        this.checkIndexes(x + length - 1, y);
+
+        return ArrayCharMatrix.consistsOf(this.bytes, this.chars, y * this.width + x, 1, length, c);
+    }
+
+    @Override public boolean
+    columnConsistsOf(int x, int y, int length, char c) {
+
+        if (length <= 0) return true;
+        this.checkIndexes(x, y);
+        this.checkIndexes(x, y + length - 1);
+
+        if (this.isDualLayout()) {
+            return ArrayCharMatrix.consistsOf(this.columnBytes, this.columnChars, x * this.height + y, 1, length, c);
+        }
+
+        return ArrayCharMatrix.consistsOf(this.bytes, this.chars, y * this.width + x, this.width, length, c);
+    }
+
+    /**
+     * @return Whether the <var>length</var> elements of <var>ba</var> resp. <var>ca</var>, starting at <var>offset
+     *         </var> and with the given <var>stride</var>, all equal <var>c</var>
+     */
+    private static boolean
+    consistsOf(@Nullable byte[] ba, @Nullable char[] ca, int offset, int stride, int length, char c) {
+
+        if (ba != null) {
+            if (c > 0xff) return false;
+            for (int i = 0; i < length; i++, offset += stride) {
+                if (ba[offset] != (byte) c) return false;
+            }
+        } else {
+            assert ca != null;
+            for (int i = 0; i < length; i++, offset += stride) {
+                if (ca[offset] != c) return false;
+            }
+        }
+        return true;
+    }
+
+    @Override public CharSequence
+    horizontalSection(int y) {
+
+        if (y < 0 || y >= this.height) throw new IndexOutOfBoundsException("y=" + y + ", height=" + this.height);
+
+        return new Section(false, y * this.width, 1, this.width);
+    }
+
+    @Override public CharSequence
+    verticalSection(int x) {
+
+        if (x < 0 || x >= this.width) throw new IndexOutOfBoundsException("x=" + x + ", width=" + this.width);
+
+        if (this.isDualLayout()) return new Section(true, x * this.height, 1, this.height);
+
+        return new Section(false, x, this.width, this.height);
+    }
+
+    @Override public CharSequence
+    reverseHorizontalSection(int y) {
+
+        if (y < 0 || y >= this.height) throw new IndexOutOfBoundsException("y=" + y + ", height=" + this.height);
+
+        return new Section(false, (y + 1) * this.width - 1, -1, this.width);
+    }
+
+    @Override public CharSequence
+    reverseVerticalSection(int x) {
+
+        if (x < 0 || x >= this.width) throw new IndexOutOfBoundsException("x=" + x + ", width=" + this.width);
+
+        if (this.isDualLayout()) return new Section(true, (x + 1) * this.height - 1, -1, this.height);
+
+        return new Section(false, (this.height - 1) * this.width + x, -this.width, this.height);
+    }
+
+    /**
+     * A row or a column of the matrix (in forward or in reverse order), which accesses the row-major array or the
+     * column-major copy directly.
+     */
+    private final
+    class Section implements CharSequence {
+
+        private final boolean columnMajor;
+        private final int     offset, stride, length;
+
+        Section(boolean columnMajor, int offset, int stride, int length) {
+            this.columnMajor = columnMajor;
+            this.offset      = offset;
+            this.stride      = stride;
+            this.length      = length;
+        }
+
+        @Override public int
+        length() { return this.length; }
+
+        @Override public char
+        charAt(int index) {
+            if (index < 0 || index >= this.length) {
+                throw new IndexOutOfBoundsException("index=" + index + ", length=" + this.length);
+            }
+
+            int    offset = this.offset + index * this.stride;
+            byte[] ba     = this.columnMajor ? ArrayCharMatrix.this.columnBytes : ArrayCharMatrix.this.bytes;
+            if (ba != null) return (char) (ba[offset] & 0xff);
+
+            char[] ca = this.columnMajor ? ArrayCharMatrix.this.columnChars : ArrayCharMatrix.this.chars;
+            assert ca != null;
+            return ca[offset];
+        }
+
+        @Override public CharSequence
+        subSequence(int start, int end) { return CharSequences.subSequence(this, start, end); }
+
+        @Override public String
+        toString() { return CharSequences.toString(this); }
+    }
+
+    private void
+    checkIndexes(int x, int y) {
+        if (x < 0 || x >= this.width) throw new IndexOutOfBoundsException("x=" + x + ", width=" + this.width);
+        if (y < 0 || y >= this.height) throw new IndexOutOfBoundsException("y=" + y + ", height=" + this.height);
+    }
+
+    /**
+     * Switches from the BYTE array to the CHAR array representation (for the row-major array and for the
+     * column-major copy).
+     */
+    private void
+    inflate() {
+        byte[] ba = this.bytes;
+        assert ba != null;
+        this.chars = ArrayCharMatrix.inflate(ba, ba.length);
+        this.bytes = null;
+
+        byte[] cba = this.columnBytes;
+        if (cba != null) {
+            this.columnChars = ArrayCharMatrix.inflate(cba, cba.length);
+            this.columnBytes = null;
+        }
+    }
+
+    /**
+     * @return A new CHAR array with the same length as <var>ba</var>, with the first <var>n</var> elements copied
+     *         from <var>ba</var>
+     */
+    private static char[]
+    inflate(byte[] ba, int n) {
+        char[] result = new char[ba.length];
+        for (int i = 0; i < n; i++) result[i] = (char) (ba[i] & 0xff);
+        return result;
+    }
+}
@@ -29,9 +29,16 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.StringWriter;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -129,17 +136,25 @@ class CharMatrix {
             }
         }
         
+        /**
+         * Matches the <var>pattern</var> against the cells in front of this turtle, and, iff it matches, moves this
+         * turtle to the last matched cell. Notice that the cells are read "in place", i.e. through a (possibly
+         * reversed) {@link CharMatrix#horizontalSection(int) horizontal section} or {@link
+         * CharMatrix#verticalSection(int) vertical section} of the matrix.
+         *
+         * @return {@code null} iff the <var>pattern</var> does not match; otherwise the match result, with indexes
+         *         relative to the section
+         */
         @Nullable public MatchResult
         forward(Pattern pattern) {
             switch (this.orientation) {
                 case NORTH: 
                 {
-                    Matcher m = pattern.matcher((
-                        CharSequences.reverseOf(CharMatrix.this.verticalSection(this.x).subSequence(0, this.y))
-                        .toString()
-                    ));
+                    CharSequence rvs   = CharMatrix.this.reverseVerticalSection(this.x);
+                    int          start = rvs.length() - this.y;
+                    Matcher      m     = pattern.matcher(rvs).region(start, rvs.length());
                     if (!m.lookingAt()) return null;
-                    this.y -= m.end();
+                    this.y -= m.end() - start;
                     return m;
                 }
             case EAST:
@@ -160,12 +175,11 @@ class CharMatrix {
                 }
             case WEST:
                 {
-                    Matcher m = pattern.matcher((
-                        CharSequences.reverseOf(CharMatrix.this.horizontalSection(this.y).subSequence(0, this.x))
-                        .toString()
-                    ));
+                    CharSequence rhs   = CharMatrix.this.reverseHorizontalSection(this.y);
+                    int          start = rhs.length() - this.x;
+                    Matcher      m     = pattern.matcher(rhs).region(start, rhs.length());
                     if (!m.lookingAt()) return null;
-                    this.x -= m.end();
+                    this.x -= m.end() - start;
                     return m;
                 }
             default:    throw new AssertionError(this);
@@ -188,33 +202,159 @@ class CharMatrix {
      */
     public abstract char charAt(int x, int y);
 
+    /**
+     * @return The number of cells in row <var>y</var> up to and including the last non-space cell, i.e. the width of
+     *         the row with trailing spaces removed
+     */
+    public int
+    contentWidth(int y) {
+        int x = this.width();
+        while (x > 0 && this.charAt(x - 1, y) == ' ') x--;
+        return x;
+    }
+
+    /**
+     * Copies the <var>length</var> cells right from and including {@code (}<var>x</var>{@code ,} <var>y</var>{@code
+     * )} into <var>dst</var>.
+     *
+     * @throws IndexOutOfBoundsException Any of the cells is outside of this matrix
+     */
+    public void
+    getRow(int x, int y, int length, char[] dst, int dstOffset) {
+        for (int i = 0; i < length; i++) dst[dstOffset + i] = this.charAt(x + i, y);
+    }
+
+    /**
+     * Copies the <var>length</var> cells below and including {@code (}<var>x</var>{@code ,} <var>y</var>{@code )}
+     * into <var>dst</var>.
+     *
+     * @throws IndexOutOfBoundsException Any of the cells is outside of this matrix
+     */
+    public void
+    getColumn(int x, int y, int length, char[] dst, int dstOffset) {
+        for (int i = 0; i < length; i++) dst[dstOffset + i] = this.charAt(x, y + i);
+    }
+
+    /**
+     * @return Whether the <var>length</var> cells right from and including {@code (}<var>x</var>{@code ,} <var>y</var>{@code
+     *         )} all equal <var>c</var>
+     */
+    public boolean
+    rowConsistsOf(int x, int y, int length, char c) {
+        for (int i = 0; i < length; i++) {
+            if (this.charAt(x + i, y) != c) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether the <var>length</var> cells below and including {@code (}<var>x</var>{@code ,} <var>y</var>{@code
+     *         )} all equal <var>c</var>
+     */
+    public boolean
+    columnConsistsOf(int x, int y, int length, char c) {
+        for (int i = 0; i < length; i++) {
+            if (this.charAt(x, y + i) != c) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return A view of the given region of this matrix; nesting such views does not nest indirections, i.e. a
+     *         sub-matrix of a sub-matrix accesses the original matrix directly
+     */
     public CharMatrix
     subMatrix(int x, int y, int width, int height) {
         
         if (x == 0 && y == 0 && width == this.width() && height == this.height()) return this;
         
-        if (x + width  > this.width())  throw new IndexOutOfBoundsException();
-        if (y + height > this.height()) throw new IndexOutOfBoundsException();
-        if (width < 0)                  throw new IndexOutOfBoundsException();
-        if (height < 0)                 throw new IndexOutOfBoundsException();
-        
-        int xOffset = x, yOffset = y;
-        
-        return new CharMatrix() {
+        CharMatrix.checkRegion(this, x, y, width, height);
 
-            @Override public int
-            width() { return width; }
+        return new SubMatrix(this, x, y, width, height);
+    }
 
-            @Override public int
-            height() { return height; }
+    /**
+     * @throws IndexOutOfBoundsException The given region is not (completely) within <var>cm</var>
+     */
+    static void
+    checkRegion(CharMatrix cm, int x, int y, int width, int height) {
+        if (x < 0 || x + width  > cm.width())  throw new IndexOutOfBoundsException("x=" + x + ", width="  + width  + ", outer width="  + cm.width()); // SUPPRESS CHECKSTYLE LineLength:1
+        if (y < 0 || y + height > cm.height()) throw new IndexOutOfBoundsException("y=" + y + ", height=" + height + ", outer height=" + cm.height());
+        if (width < 0)                         throw new IndexOutOfBoundsException("width=" + width);
+        if (height < 0)                        throw new IndexOutOfBoundsException("height=" + height);
+    }
 
-            @Override
-            public char charAt(int x, int y) {
-                if (x < 0 || x >= width)  throw new IndexOutOfBoundsException();
-                if (y < 0 || y >= height) throw new IndexOutOfBoundsException();
-                return CharMatrix.this.charAt(xOffset + x, yOffset + y);
-            }
-        };
+    /**
+     * A view of a rectangular region of another {@link CharMatrix}.
+     */
+    private static final
+    class SubMatrix extends CharMatrix {
+
+        private final CharMatrix root; // Never a SubMatrix.
+        private final int        xOffset, yOffset, width, height;
+
+        SubMatrix(CharMatrix root, int xOffset, int yOffset, int width, int height) {
+            this.root    = root;
+            this.xOffset = xOffset;
+            this.yOffset = yOffset;
+            this.width   = width;
+            this.height  = height;
+        }
+
+        @Override public int
+        width() { return this.width; }
+
+        @Override public int
+        height() { return this.height; }
+
+        @Override public CharMatrix
+        subMatrix(int x, int y, int width, int height) {
+
+            if (x == 0 && y == 0 && width == this.width && height == this.height) return this;
+
+            CharMatrix.checkRegion(this, x, y, width, height);
+
+            return new SubMatrix(this.root, this.xOffset + x, this.yOffset + y, width, height);
+        }
+
+        @Override public char
+        charAt(int x, int y) {
+            if (x < 0 || x >= this.width)  throw new IndexOutOfBoundsException();
+            if (y < 0 || y >= this.height) throw new IndexOutOfBoundsException();
+            return this.root.charAt(this.xOffset + x, this.yOffset + y);
+        }
+
+        @Override public void
+        getRow(int x, int y, int length, char[] dst, int dstOffset) {
+            if (length <= 0) return;
+            if (x < 0 || x + length > this.width) throw new IndexOutOfBoundsException();
+            if (y < 0 || y >= this.height)        throw new IndexOutOfBoundsException();
+            this.root.getRow(this.xOffset + x, this.yOffset + y, length, dst, dstOffset);
+        }
+
+        @Override public void
+        getColumn(int x, int y, int length, char[] dst, int dstOffset) {
+            if (length <= 0) return;
+            if (x < 0 || x >= this.width)          throw new IndexOutOfBoundsException();
+            if (y < 0 || y + length > this.height) throw new IndexOutOfBoundsException();
+            this.root.getColumn(this.xOffset + x, this.yOffset + y, length, dst, dstOffset);
+        }
+
+        @Override public boolean
+        rowConsistsOf(int x, int y, int length, char c) {
+            if (length <= 0) return true;
+            if (x < 0 || x + length > this.width) throw new IndexOutOfBoundsException();
+            if (y < 0 || y >= this.height)        throw new IndexOutOfBoundsException();
+            return this.root.rowConsistsOf(this.xOffset + x, this.yOffset + y, length, c);
+        }
+
+        @Override public boolean
+        columnConsistsOf(int x, int y, int length, char c) {
+            if (length <= 0) return true;
+            if (x < 0 || x >= this.width)          throw new IndexOutOfBoundsException();
+            if (y < 0 || y + length > this.height) throw new IndexOutOfBoundsException();
+            return this.root.columnConsistsOf(this.xOffset + x, this.yOffset + y, length, c);
+        }
     }
     
     public CharSequence
@@ -258,44 +398,35 @@ class CharMatrix {
     }
     
     /**
-     * @return A deep copy of this {@link CharMatrix}
+     * @return A view of row <var>y</var>, in right-to-left order; i.e. index 0 is the rightmost cell
+     */
+    public CharSequence
+    reverseHorizontalSection(int y) { return CharSequences.reverseOf(this.horizontalSection(y)); }
+
+    /**
+     * @return A view of column <var>x</var>, in bottom-to-top order; i.e. index 0 is the bottommost cell
+     */
+    public CharSequence
+    reverseVerticalSection(int x) { return CharSequences.reverseOf(this.verticalSection(x)); }
+
+    /**
+     * @return A deep copy of this {@link CharMatrix}; a {@link RaggedCharMatrix} if this matrix is mostly blank,
+     *         otherwise an {@link ArrayCharMatrix}
      */
     public MutableCharMatrix
     copy() {
-        
-        char[][] caa = new char[this.height()][this.width()];
-        for (int x = 0; x < this.width(); x++) {
-            for (int y = 0; y < this.height(); y++) {
-                caa[y][x] = this.charAt(x, y);
-            }
+
+        int  height            = this.height();
+        long totalContentWidth = 0;
+        for (int y = 0; y < height; y++) totalContentWidth += this.contentWidth(y);
+
+        // Use the ragged representation iff it needs less than half the memory of the array representation (which
+        // is (at least) one byte per cell).
+        if (2 * RaggedCharMatrix.memoryFootprint(height, totalContentWidth) < (long) this.width() * height) {
+            return new RaggedCharMatrix(this);
         }
-        
-        return new MutableCharMatrix() {
-            
-            @Override public int
-            width() { return CharMatrix.this.width(); }
-            
-            @Override public int
-            height() { return CharMatrix.this.height(); }
-            
-            @Override public char
-            charAt(int x, int y) {
-                if (x < 0)              throw new IndexOutOfBoundsException("x=" + x);
-                if (x >= this.width())  throw new IndexOutOfBoundsException("x=" + x + ", width=" + this.width());
-                if (y < 0)              throw new IndexOutOfBoundsException("y=" + y);
-                if (y >= this.height()) throw new IndexOutOfBoundsException("y=" + y + ", height=" + this.height());
-                return caa[y][x];
-            }
-            
-            @Override public void
-            charAt(int x, int y, char c) {
-                if (x < 0)              throw new IndexOutOfBoundsException("x=" + x);
-                if (x >= this.width())  throw new IndexOutOfBoundsException("x=" + x + ", width=" + this.width());
-                if (y < 0)              throw new IndexOutOfBoundsException("y=" + y);
-                if (y >= this.height()) throw new IndexOutOfBoundsException("y=" + y + ", height=" + this.height());
-                caa[y][x] = c;
-            }
-        };
+
+        return new ArrayCharMatrix(this);
     }
 
     public static CharMatrix
@@ -305,12 +436,52 @@ class CharMatrix {
         
         String charsetName = conn.getContentEncoding();
         if (charsetName == null) charsetName = "UTF-8";
-        
+
+        if ("file".equals(resource.getProtocol())) {
+            try {
+                return CharMatrix.read(Paths.get(resource.toURI()), Charset.forName(charsetName));
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                ; // Fall back to reading through the URL connection.
+            }
+        }
+
         try (Reader r = new InputStreamReader(conn.getInputStream(), charsetName)) {
             return CharMatrix.read(r);
         }
     }
+
+    /**
+     * Memory-maps the file and indexes the line starts, but does not decode the lines up-front. This is much faster
+     * than {@link #read(Reader)} for large files.
+     * <p>
+     *   Only ISO-8859-1, US-ASCII and UTF-8 are supported this way; for all other charsets (and for files larger
+     *   than 2 GB), this method falls back to {@link #read(Reader)}.
+     * </p>
+     */
+    public static CharMatrix
+    read(Path path, Charset charset) throws IOException {
+
+        try (FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            long size = fc.size();
+            if (size <= Integer.MAX_VALUE && MappedCharMatrix.isSupported(charset.name())) {
+                return new MappedCharMatrix(fc.map(MapMode.READ_ONLY, 0, size), charset.name());
+            }
+        }
+
+        try (Reader r = Files.newBufferedReader(path, charset)) {
+            return CharMatrix.read(r);
+        }
+    }
     
+    /**
+     * Decodes the text of an HTML {@code <pre>} element in one pass: The character references {@code &lt; &gt; &quot;
+     * &amp; &apos;} and the numeric character references (e.g. {@code &#124;} or {@code &#x7c;}) are replaced with
+     * the characters they denote, and the text is split into lines like {@link #read(Reader)} does.
+     */
+    public static CharMatrix
+    readHtml(CharSequence html) { return new HtmlCharMatrix(html); }
+
     public static CharMatrix
     read(Reader r) throws IOException {
         
@@ -343,6 +514,14 @@ class CharMatrix {
                 final String line = lines.get(y);
                 return x < line.length() ? line.charAt(x) : ' ';
             }
+
+            @Override public int
+            contentWidth(int y) {
+                final String line = lines.get(y);
+                int          x    = line.length();
+                while (x > 0 && line.charAt(x - 1) == ' ') x--;
+                return x;
+            }
         };
     }
 
@@ -351,10 +530,13 @@ class CharMatrix {
      */
     @Override public String
     toString() {
-        StringWriter sw = new StringWriter();
+        int           width = this.width();
+        char[]        row   = new char[width];
+        StringBuilder sb    = new StringBuilder((width + 1) * this.height());
         for (int y = 0; y < this.height(); y++) {
-            sw.append(this.horizontalSection(y)).append('\n');
+            this.getRow(0, y, width, row, 0);
+            sb.append(row).append('\n');
         }
-        return sw.toString();
+        return sb.toString();
     }
 }
@@ -0,0 +1,111 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.txt2html.text;
+
+import de.unkrig.txt2html.text.CharMatrix.Orientation;
+
+/**
+ * Hand-written equivalents of the regular expressions that trace tables and arrows through a {@link CharMatrix}.
+ * They read the cells through {@link CharMatrix#charAt(int, int)}, without a {@link CharSequence} view and without a
+ * regex engine, and they allocate nothing.
+ * <p>
+ *   Each scanner starts at the cell <em>after</em> {@code (x, y)} in the given direction, exactly like {@link
+ *   CharMatrix.Turtle#forward(java.util.regex.Pattern)}, and returns the distance from {@code (x, y)} to the last
+ *   matched cell, or -1 iff the scan does not match.
+ * </p>
+ */
+public final
+class CharMatrixScanners {
+
+    private CharMatrixScanners() {}
+
+    /**
+     * Equivalent with {@code Turtle.forward(Pattern.compile("E+\\+"))}, where "E" is the <var>edge</var> character;
+     * finds the next table corner.
+     */
+    public static int
+    nextCorner(CharMatrix cm, int x, int y, Orientation direction, char edge) {
+
+        int dx = CharMatrixScanners.dx(direction), dy = CharMatrixScanners.dy(direction);
+        int w  = cm.width(), h = cm.height();
+
+        for (int distance = 1;; distance++) {
+            x += dx;
+            y += dy;
+            if (x < 0 || x >= w || y < 0 || y >= h) return -1;
+
+            char c = cm.charAt(x, y);
+            if (c != edge) return distance > 1 && c == '+' ? distance : -1;
+        }
+    }
+
+    /**
+     * Equivalent with {@code Turtle.forward(Pattern.compile("[^B]*L\\+?"))}, where "L" is the <var>line</var>
+     * character and "B" is the <var>barrier</var> character; finds the next corner (or the root) of an arrow.
+     * <p>
+     *   Notice that the regex is greedy: The match ends at the <em>last</em> <var>line</var> character before the
+     *   first <var>barrier</var> (or the edge of the matrix), plus an immediately following '+', if any.
+     * </p>
+     */
+    public static int
+    nextPolygonSegment(CharMatrix cm, int x, int y, Orientation direction, char line, char barrier) {
+
+        int dx = CharMatrixScanners.dx(direction), dy = CharMatrixScanners.dy(direction);
+        int w  = cm.width(), h = cm.height();
+
+        int     lastLine = -1;
+        boolean plus     = false;
+        for (int distance = 1;; distance++) {
+            x += dx;
+            y += dy;
+            if (x < 0 || x >= w || y < 0 || y >= h) break;
+
+            char c = cm.charAt(x, y);
+            if (c == barrier) break;
+            if (c == line) {
+                lastLine = distance;
+                plus     = false;
+            } else
+            if (c == '+' && lastLine == distance - 1) {
+                plus = true;
+            }
+        }
+
+        return lastLine == -1 ? -1 : plus ? lastLine + 1 : lastLine;
+    }
+
+    /**
+     * @return The x component of one step in the given <var>direction</var>
+     */
+    public static int
+    dx(Orientation direction) { return direction == Orientation.EAST ? 1 : direction == Orientation.WEST ? -1 : 0; }
+
+    /**
+     * @return The y component of one step in the given <var>direction</var>
+     */
+    public static int
+    dy(Orientation direction) { return direction == Orientation.SOUTH ? 1 : direction == Orientation.NORTH ? -1 : 0; }
+}
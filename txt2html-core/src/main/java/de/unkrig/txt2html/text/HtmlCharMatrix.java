@@ -0,0 +1,220 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.txt2html.text;
+
+import java.util.Arrays;
+
+/**
+ * The text of an HTML {@code <pre>} element, with the character references decoded, as a {@link CharMatrix}.
+ * <p>
+ *   The text is decoded and split into lines in one pass, in place in one flat {@code char[]}; {@link #getRow(int,
+ *   int, int, char[], int)} is a plain array copy.
+ * </p>
+ */
+final
+class HtmlCharMatrix extends CharMatrix {
+
+    private final char[] chars;
+    private final int[]  lineStarts;    // Line #y is "chars[lineStarts[y] ... lineStarts[y] + lineLengths[y] - 1]".
+    private final int[]  lineLengths;
+    private final int[]  contentWidths; // The line lengths without trailing spaces.
+    private final int    width, height;
+
+    /**
+     * Decodes the named character references {@code &lt; &gt; &quot; &amp; &apos;}, and the decimal and hexadecimal
+     * numeric character references (e.g. {@code &#124;} and {@code &#x7c;}); all other ampersands are taken
+     * literally. Lines are terminated by LF, CR or CR LF (like {@link java.io.BufferedReader#readLine()}), also when
+     * these are encoded as numeric character references.
+     */
+    HtmlCharMatrix(CharSequence html) {
+
+        // Copy the text in bulk, and then decode it in place; decoding never makes the text longer.
+        String s     = html.toString();
+        int    n     = s.length();
+        char[] chars = new char[n];
+        s.getChars(0, n, chars, 0);
+
+        int[] lineStarts    = new int[16];
+        int[] lineLengths   = new int[16];
+        int[] contentWidths = new int[16];
+        int   height        = 0;
+        int   width         = 0;
+
+        int     length    = 0; // The number of decoded chars.
+        int     lineStart = 0;
+        boolean afterCr   = false;
+        for (int i = 0;;) {
+
+            // Pass a run of ordinary chars; it needs to be moved only after a character reference was decoded.
+            int runStart = i;
+            for (char c; i < n && (c = chars[i]) != '&' && c != '\n' && c != '\r'; i++);
+            if (i > runStart) {
+                if (length != runStart) System.arraycopy(chars, runStart, chars, length, i - runStart);
+                length  += i - runStart;
+                afterCr =  false;
+            }
+
+            int c;
+            if (i < n) {
+                c = chars[i++];
+                if (c == '&') {
+
+                    // The longest supported reference is "&#x10ffff;" or "&#1114111;".
+                    for (int j = i, limit = Math.min(n, i + 9); j < limit; j++) {
+                        if (chars[j] == ';') {
+                            int cp = HtmlCharMatrix.decodeReference(chars, i, j);
+                            if (cp != -1) {
+                                c = cp;
+                                i = j + 1;
+                            }
+                            break;
+                        }
+                    }
+                }
+
+                if (c == '\n' && afterCr) {
+                    afterCr = false;
+                    continue;
+                }
+                afterCr = c == '\r';
+
+                if (c != '\n' && c != '\r') {
+                    if (c > 0xffff) {
+                        chars[length++] = Character.highSurrogate(c);
+                        chars[length++] = Character.lowSurrogate(c);
+                    } else {
+                        chars[length++] = (char) c;
+                    }
+                    continue;
+                }
+            } else {
+
+                // The last line need not be terminated.
+                if (length == lineStart) break;
+                c = -1;
+            }
+
+            // End of line.
+            if (height == lineStarts.length) {
+                lineStarts    = Arrays.copyOf(lineStarts,    2 * height);
+                lineLengths   = Arrays.copyOf(lineLengths,   2 * height);
+                contentWidths = Arrays.copyOf(contentWidths, 2 * height);
+            }
+            int contentEnd = length;
+            while (contentEnd > lineStart && chars[contentEnd - 1] == ' ') contentEnd--;
+            lineStarts[height]    = lineStart;
+            lineLengths[height]   = length - lineStart;
+            contentWidths[height] = contentEnd - lineStart;
+            height++;
+            if (length - lineStart > width) width = length - lineStart;
+            lineStart = length;
+
+            if (c == -1) break;
+        }
+
+        this.chars         = chars;
+        this.lineStarts    = lineStarts;
+        this.lineLengths   = lineLengths;
+        this.contentWidths = contentWidths;
+        this.width         = width;
+        this.height        = height;
+    }
+
+    @Override public int
+    width() { return this.width; }
+
+    @Override public int
+    height() { return this.height; }
+
+    @Override public char
+    charAt(int x, int y) {
+        if (x < 0)            throw new IndexOutOfBoundsException("x=" + x);
+        if (x >= this.width)  throw new IndexOutOfBoundsException("x=" + x + ", width=" + this.width);
+        if (y < 0)            throw new IndexOutOfBoundsException("y=" + y);
+        if (y >= this.height) throw new IndexOutOfBoundsException("y=" + y + ", height=" + this.height);
+        return x < this.lineLengths[y] ? this.chars[this.lineStarts[y] + x] : ' ';
+    }
+
+    @Override public int
+    contentWidth(int y) { return this.contentWidths[y]; }
+
+    @Override public void
+    getRow(int x, int y, int length, char[] dst, int dstOffset) {
+        if (x < 0 || length < 0 || x + length > this.width) {
+            throw new IndexOutOfBoundsException("x=" + x + ", length=" + length + ", width=" + this.width);
+        }
+        if (y < 0 || y >= this.height) throw new IndexOutOfBoundsException("y=" + y + ", height=" + this.height);
+
+        int n = Math.max(0, Math.min(length, this.lineLengths[y] - x));
+        System.arraycopy(this.chars, this.lineStarts[y] + x, dst, dstOffset, n);
+        Arrays.fill(dst, dstOffset + n, dstOffset + length, ' ');
+    }
+
+    /**
+     * @return The code point that the reference {@code ca[from ... to-1]} (without the ampersand and the semicolon)
+     *         denotes, or -1 iff it is not a supported reference
+     */
+    private static int
+    decodeReference(char[] ca, int from, int to) {
+
+        if (from == to) return -1;
+
+        if (ca[from] != '#') {
+            if (HtmlCharMatrix.equals(ca, from, to, "lt"))   return '<';
+            if (HtmlCharMatrix.equals(ca, from, to, "gt"))   return '>';
+            if (HtmlCharMatrix.equals(ca, from, to, "quot")) return '"';
+            if (HtmlCharMatrix.equals(ca, from, to, "amp"))  return '&';
+            if (HtmlCharMatrix.equals(ca, from, to, "apos")) return '\'';
+            return -1;
+        }
+
+        int radix = 10;
+        from++;
+        if (from < to && (ca[from] == 'x' || ca[from] == 'X')) {
+            radix = 16;
+            from++;
+        }
+        if (from == to) return -1;
+
+        int result = 0;
+        for (int j = from; j < to; j++) {
+            int digit = Character.digit(ca[j], radix);
+            if (digit == -1) return -1;
+            result = result * radix + digit;
+            if (result > Character.MAX_CODE_POINT) return -1;
+        }
+        return result;
+    }
+
+    private static boolean
+    equals(char[] ca, int from, int to, String s) {
+        if (to - from != s.length()) return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (ca[from + i] != s.charAt(i)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,255 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.txt2html.text;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A {@link CharMatrix} that reads its cells directly from a (typically memory-mapped) {@link ByteBuffer}.
+ * <p>
+ *   The only per-line state is an index of line starts and ends; lines are not decoded up-front. For the
+ *   single-byte charsets (ISO-8859-1 and US-ASCII), and for UTF-8 lines that consist only of ASCII characters, cells
+ *   are decoded directly from the buffer. Other UTF-8 lines are decoded when they are accessed, and kept in a small
+ *   cache, so that the vertical scans of the detectors, which alternate between neighboring lines, do not decode the
+ *   same lines over and over again.
+ * </p>
+ * <p>
+ *   Lines are separated exactly like {@link java.io.BufferedReader#readLine()} does it, i.e. by CR, LF or CR LF.
+ * </p>
+ * <p>
+ *   Instances are not thread-safe.
+ * </p>
+ */
+final
+class MappedCharMatrix extends CharMatrix {
+
+    private static final int ISO_8859_1 = 0, US_ASCII = 1, UTF_8 = 2;
+
+    private final ByteBuffer buffer;
+    private final int        encoding;
+
+    // The line index.
+    private final int    height;
+    private final int[]  lineStarts, lineEnds;
+    private final BitSet nonAsciiLines;
+    private final int    width;
+
+    // For decoding non-ASCII UTF-8 lines: A direct-mapped cache of decoded lines, indexed by "y % LINE_CACHE_SIZE", so
+    // that neighboring lines never displace each other.
+    private static final int     LINE_CACHE_SIZE    = 64;
+    private final CharsetDecoder decoder;
+    private final CharBuffer[]   decodedLines       = new CharBuffer[LINE_CACHE_SIZE];
+    private final int[]          decodedLineIndexes = new int[LINE_CACHE_SIZE];
+
+    /**
+     * @return Whether {@link #MappedCharMatrix(ByteBuffer, String)} supports the given charset
+     */
+    static boolean
+    isSupported(String charsetName) { return MappedCharMatrix.encoding(charsetName) != -1; }
+
+    /**
+     * @param charsetName One for which {@link #isSupported(String)} returns {@code true}
+     */
+    MappedCharMatrix(ByteBuffer buffer, String charsetName) {
+
+        this.buffer   = buffer;
+        this.encoding = MappedCharMatrix.encoding(charsetName);
+        this.decoder  = (
+            StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE)
+        );
+        Arrays.fill(this.decodedLineIndexes, -1);
+
+        // Build the line index.
+        int    limit      = buffer.limit();
+        int[]  lineStarts = new int[16];
+        int[]  lineEnds   = new int[lineStarts.length];
+        BitSet nonAscii   = new BitSet();
+        int    height     = 0;
+        int    width      = 0;
+        for (int offset = 0; offset < limit;) {
+
+            int     start        = offset;
+            boolean sawNonAscii  = false;
+            int     end;
+            for (;; offset++) {
+                if (offset == limit) {
+                    end = offset;
+                    break;
+                }
+                byte b = buffer.get(offset);
+                if (b == '\n') {
+                    end = offset++;
+                    break;
+                }
+                if (b == '\r') {
+                    end = offset++;
+                    if (offset < limit && buffer.get(offset) == '\n') offset++;
+                    break;
+                }
+                if (b < 0) sawNonAscii = true;
+            }
+
+            if (height == lineStarts.length) {
+                lineStarts = Arrays.copyOf(lineStarts, 2 * height);
+                lineEnds   = Arrays.copyOf(lineEnds, 2 * height);
+            }
+            lineStarts[height] = start;
+            lineEnds[height]   = end;
+
+            int lineWidth;
+            if (sawNonAscii && this.encoding == MappedCharMatrix.UTF_8) {
+                nonAscii.set(height);
+                lineWidth = this.decode(height, start, end).remaining();
+            } else {
+                lineWidth = end - start;
+            }
+            if (lineWidth > width) width = lineWidth;
+
+            height++;
+        }
+
+        // Trim the line index.
+        this.height        = height;
+        this.lineStarts    = Arrays.copyOf(lineStarts, height);
+        this.lineEnds      = Arrays.copyOf(lineEnds, height);
+        this.nonAsciiLines = nonAscii;
+        this.width         = width;
+    }
+
+    @Override public int
+    width() { return this.width; }
+
+    @Override public int
+    height() { return this.height; }
+
+    @Override public int
+    contentWidth(int y) {
+        if (y < 0)            throw new IndexOutOfBoundsException("y=" + y);
+        if (y >= this.height) throw new IndexOutOfBoundsException("y=" + y + ", height=" + this.height);
+
+        if (this.nonAsciiLines.get(y)) return super.contentWidth(y);
+
+        int start = this.lineStarts[y], end = this.lineEnds[y];
+        while (end > start && this.buffer.get(end - 1) == ' ') end--;
+        return end - start;
+    }
+
+    @Override public char
+    charAt(int x, int y) {
+        if (x < 0)            throw new IndexOutOfBoundsException("x=" + x);
+        if (x >= this.width)  throw new IndexOutOfBoundsException("x=" + x + ", width=" + this.width);
+        if (y < 0)            throw new IndexOutOfBoundsException("y=" + y);
+        if (y >= this.height) throw new IndexOutOfBoundsException("y=" + y + ", height=" + this.height);
+
+        if (this.nonAsciiLines.get(y)) {
+            CharBuffer line = this.decodedLine(y);
+            return x < line.remaining() ? line.get(x) : ' ';
+        }
+
+        int offset = this.lineStarts[y] + x;
+        return offset < this.lineEnds[y] ? this.decode(this.buffer.get(offset)) : ' ';
+    }
+
+    @Override public void
+    getRow(int x, int y, int length, char[] dst, int dstOffset) {
+        if (length <= 0) return;
+        if (x < 0 || x + length > this.width) throw new IndexOutOfBoundsException("x=" + x + ", length=" + length);
+        if (y < 0 || y >= this.height)        throw new IndexOutOfBoundsException("y=" + y);
+
+        int n; // The number of "real" (not padding) characters that are copied.
+        if (this.nonAsciiLines.get(y)) {
+            CharBuffer line = this.decodedLine(y);
+            n = Math.max(0, Math.min(length, line.remaining() - x));
+            for (int i = 0; i < n; i++) dst[dstOffset + i] = line.get(x + i);
+        } else {
+            int offset = this.lineStarts[y] + x;
+            n = Math.max(0, Math.min(length, this.lineEnds[y] - offset));
+            for (int i = 0; i < n; i++) dst[dstOffset + i] = this.decode(this.buffer.get(offset + i));
+        }
+        Arrays.fill(dst, dstOffset + n, dstOffset + length, ' ');
+    }
+
+    private char
+    decode(byte b) {
+        if (b >= 0 || this.encoding == MappedCharMatrix.ISO_8859_1) return (char) (b & 0xff);
+        return '\uFFFD';
+    }
+
+    private CharBuffer
+    decodedLine(int y) {
+        int slot = y % LINE_CACHE_SIZE;
+        if (this.decodedLineIndexes[slot] == y) return this.decodedLines[slot];
+        return this.decode(y, this.lineStarts[y], this.lineEnds[y]);
+    }
+
+    /**
+     * Decodes the given range of the buffer, which is line <var>y</var>, into the {@link #decodedLines cache}.
+     */
+    private CharBuffer
+    decode(int y, int start, int end) {
+
+        int slot = y % LINE_CACHE_SIZE;
+
+        // (Casting to "Buffer" is necessary for compatibility with JRE 8.)
+        ByteBuffer in = this.buffer.duplicate();
+        ((Buffer) in).limit(end);
+        ((Buffer) in).position(start);
+
+        // A UTF-8 encoded line never decodes to more chars than it has bytes.
+        CharBuffer out = this.decodedLines[slot];
+        if (out == null || out.capacity() < end - start) {
+            out = (this.decodedLines[slot] = CharBuffer.allocate(Math.max(80, end - start)));
+        }
+
+        ((Buffer) out).clear();
+        this.decoder.reset();
+        this.decoder.decode(in, out, true);
+        this.decoder.flush(out);
+        ((Buffer) out).flip();
+
+        this.decodedLineIndexes[slot] = y;
+        return out;
+    }
+
+    private static int
+    encoding(String charsetName) {
+        switch (charsetName) {
+        case "ISO-8859-1": return MappedCharMatrix.ISO_8859_1;
+        case "US-ASCII":   return MappedCharMatrix.US_ASCII;
+        case "UTF-8":      return MappedCharMatrix.UTF_8;
+        default:           return -1;
+        }
+    }
+}
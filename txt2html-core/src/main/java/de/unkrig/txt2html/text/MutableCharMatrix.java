@@ -31,45 +31,131 @@ class MutableCharMatrix extends CharMatrix {
     public abstract void
     charAt(int x, int y, char c);
 
-    public MutableCharMatrix
+    /**
+     * Finds the next non-blank cell in column <var>x</var>, starting at row <var>y</var>. The detection passes use
+     * this to skip blank (or blanked-out) cells quickly.
+     *
+     * @param y                          Between 0 and {@link #height()} (inclusively)
+     * @return                           The row of the first cell at or below {@code (}<var>x</var>{@code ,} <var>y
+     *                                   </var>{@code )} that is not a space, or -1
+     * @throws IndexOutOfBoundsException <var>x</var> or <var>y</var> is out of range
+     */
+    public int
+    nextNonBlankInColumn(int x, int y) {
+        if (x < 0 || x >= this.width())  throw new IndexOutOfBoundsException("x=" + x + ", width=" + this.width());
+        if (y < 0 || y > this.height()) throw new IndexOutOfBoundsException("y=" + y + ", height=" + this.height());
+
+        for (int height = this.height(); y < height; y++) {
+            if (this.charAt(x, y) != ' ') return y;
+        }
+        return -1;
+    }
+
+    @Override public MutableCharMatrix
     subMatrix(int x, int y, int width, int height) {
         
         if (x == 0 && y == 0 && width == this.width() && height == this.height()) return this;
-        
-        if (x + width  > this.width())  throw new IndexOutOfBoundsException("x=" + x + ", width="  + width  + ", outer width="  + this.width()); // SUPPRESS CHECKSTYLE LineLength:1
-        if (y + height > this.height()) throw new IndexOutOfBoundsException("y=" + y + ", height=" + height + ", outer height=" + this.height());
-        if (width < 0)                  throw new IndexOutOfBoundsException("width=" + width);
-        if (height < 0)                 throw new IndexOutOfBoundsException("height=" + height);
-        
-        int xOffset = x, yOffset = y;
-        
-        return new MutableCharMatrix() {
 
-            @Override public int
-            width() { return width; }
+        CharMatrix.checkRegion(this, x, y, width, height);
 
-            @Override public int
-            height() { return height; }
+        return new SubMatrix(this, x, y, width, height);
+    }
 
-            @Override public char
-            charAt(int x, int y) {
-                if (x < 0)       throw new IndexOutOfBoundsException();
-                if (x >= width)  throw new IndexOutOfBoundsException();
-                if (y < 0)       throw new IndexOutOfBoundsException();
-                if (y >= height) throw new IndexOutOfBoundsException();
-                return MutableCharMatrix.this.charAt(xOffset + x, yOffset + y);
-            }
+    /**
+     * A modifiable view of a rectangular region of another {@link MutableCharMatrix}.
+     */
+    private static final
+    class SubMatrix extends MutableCharMatrix {
 
-            @Override public void
-            charAt(int x, int y, char c) {
-                if (x < 0)       throw new IndexOutOfBoundsException();
-                if (x >= width)  throw new IndexOutOfBoundsException();
-                if (y < 0)       throw new IndexOutOfBoundsException();
-                if (y >= height) throw new IndexOutOfBoundsException();
-                MutableCharMatrix.this.charAt(xOffset + x, yOffset + y, c);
-            }
-        };
+        private final MutableCharMatrix root; // Never a SubMatrix.
+        private final int               xOffset, yOffset, width, height;
+
+        SubMatrix(MutableCharMatrix root, int xOffset, int yOffset, int width, int height) {
+            this.root    = root;
+            this.xOffset = xOffset;
+            this.yOffset = yOffset;
+            this.width   = width;
+            this.height  = height;
+        }
+
+        @Override public int
+        width() { return this.width; }
+
+        @Override public int
+        height() { return this.height; }
+
+        @Override public MutableCharMatrix
+        subMatrix(int x, int y, int width, int height) {
+
+            if (x == 0 && y == 0 && width == this.width && height == this.height) return this;
+
+            CharMatrix.checkRegion(this, x, y, width, height);
 
+            return new SubMatrix(this.root, this.xOffset + x, this.yOffset + y, width, height);
+        }
+
+        @Override public char
+        charAt(int x, int y) {
+            if (x < 0 || x >= this.width)  throw new IndexOutOfBoundsException();
+            if (y < 0 || y >= this.height) throw new IndexOutOfBoundsException();
+            return this.root.charAt(this.xOffset + x, this.yOffset + y);
+        }
+
+        @Override public void
+        charAt(int x, int y, char c) {
+            if (x < 0 || x >= this.width)  throw new IndexOutOfBoundsException();
+            if (y < 0 || y >= this.height) throw new IndexOutOfBoundsException();
+            this.root.charAt(this.xOffset + x, this.yOffset + y, c);
+        }
+
+        @Override public int
+        nextNonBlankInColumn(int x, int y) {
+            if (x < 0 || x >= this.width)  throw new IndexOutOfBoundsException();
+            if (y < 0 || y > this.height)  throw new IndexOutOfBoundsException();
+            if (y == this.height) return -1;
+            int result = this.root.nextNonBlankInColumn(this.xOffset + x, this.yOffset + y);
+            return result == -1 || result >= this.yOffset + this.height ? -1 : result - this.yOffset;
+        }
+
+        @Override public void
+        fill(int x, int y, int width, int height, char c) {
+            if (width <= 0 || height <= 0) return;
+            if (x < 0 || x + width > this.width)   throw new IndexOutOfBoundsException();
+            if (y < 0 || y + height > this.height) throw new IndexOutOfBoundsException();
+            this.root.fill(this.xOffset + x, this.yOffset + y, width, height, c);
+        }
+
+        @Override public void
+        getRow(int x, int y, int length, char[] dst, int dstOffset) {
+            if (length <= 0) return;
+            if (x < 0 || x + length > this.width) throw new IndexOutOfBoundsException();
+            if (y < 0 || y >= this.height)        throw new IndexOutOfBoundsException();
+            this.root.getRow(this.xOffset + x, this.yOffset + y, length, dst, dstOffset);
+        }
+
+        @Override public void
+        getColumn(int x, int y, int length, char[] dst, int dstOffset) {
+            if (length <= 0) return;
+            if (x < 0 || x >= this.width)          throw new IndexOutOfBoundsException();
+            if (y < 0 || y + length > this.height) throw new IndexOutOfBoundsException();
+            this.root.getColumn(this.xOffset + x, this.yOffset + y, length, dst, dstOffset);
+        }
+
+        @Override public boolean
+        rowConsistsOf(int x, int y, int length, char c) {
+            if (length <= 0) return true;
+            if (x < 0 || x + length > this.width) throw new IndexOutOfBoundsException();
+            if (y < 0 || y >= this.height)        throw new IndexOutOfBoundsException();
+            return this.root.rowConsistsOf(this.xOffset + x, this.yOffset + y, length, c);
+        }
+
+        @Override public boolean
+        columnConsistsOf(int x, int y, int length, char c) {
+            if (length <= 0) return true;
+            if (x < 0 || x >= this.width)          throw new IndexOutOfBoundsException();
+            if (y < 0 || y + length > this.height) throw new IndexOutOfBoundsException();
+            return this.root.columnConsistsOf(this.xOffset + x, this.yOffset + y, length, c);
+        }
     }
 
     public void
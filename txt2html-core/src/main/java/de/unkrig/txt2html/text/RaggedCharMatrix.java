@@ -0,0 +1,199 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package de.unkrig.txt2html.text;
+
+import java.util.Arrays;
+
+/**
+ * A {@link MutableCharMatrix} that stores only the "real" content of each row, i.e. the characters up to and
+ * including the last non-space character. All cells right of that are "virtual" spaces.
+ * <p>
+ *   This is much more memory-efficient than {@link ArrayCharMatrix} for "wide, but mostly blank" matrices, e.g. when
+ *   one long line forces the width of an otherwise narrow matrix.
+ * </p>
+ * <p>
+ *   Filling the end of a row with spaces (which is what the artifact detectors do) shrinks the row.
+ * </p>
+ */
+public final
+class RaggedCharMatrix extends MutableCharMatrix {
+
+    private static final char[] EMPTY = new char[0];
+
+    private final int      width, height;
+    private final char[][] rows;    // Cells at "x >= lengths[y]" are spaces.
+    private final int[]    lengths; // Where "lengths[y] == 0 || rows[y][lengths[y] - 1] != ' '".
+
+    /**
+     * Creates a copy of the given <var>original</var>.
+     */
+    public
+    RaggedCharMatrix(CharMatrix original) {
+
+        int width  = original.width();
+        int height = original.height();
+
+        this.width   = width;
+        this.height  = height;
+        this.rows    = new char[height][];
+        this.lengths = new int[height];
+
+        for (int y = 0; y < height; y++) {
+            int length = original.contentWidth(y);
+            if (length == 0) {
+                this.rows[y] = RaggedCharMatrix.EMPTY;
+            } else {
+                char[] row = new char[length];
+                original.getRow(0, y, length, row, 0);
+                this.rows[y]    = row;
+                this.lengths[y] = length;
+            }
+        }
+    }
+
+    /**
+     * @return The approximate number of bytes that a {@link RaggedCharMatrix} copy of a matrix with the given
+     *         dimensions and total content would occupy on the heap
+     */
+    static long
+    memoryFootprint(int height, long totalContentWidth) { return 2 * totalContentWidth + 16L * height; }
+
+    @Override public int
+    width() { return this.width; }
+
+    @Override public int
+    height() { return this.height; }
+
+    @Override public int
+    contentWidth(int y) {
+        this.checkIndexes(0, y);
+        return this.lengths[y];
+    }
+
+    @Override public int
+    nextNonBlankInColumn(int x, int y) {
+        if (x < 0 || x >= this.width) throw new IndexOutOfBoundsException("x=" + x + ", width=" + this.width);
+        if (y < 0 || y > this.height) throw new IndexOutOfBoundsException("y=" + y + ", height=" + this.height);
+
+        for (; y < this.height; y++) {
+            if (x < this.lengths[y] && this.rows[y][x] != ' ') return y;
+        }
+        return -1;
+    }
+
+    @Override public char
+    charAt(int x, int y) {
+        this.checkIndexes(x, y);
+
+        return x < this.lengths[y] ? this.rows[y][x] : ' ';
+    }
+
+    @Override public void
+    charAt(int x, int y, char c) {
+        this.checkIndexes(x, y);
+
+        int length = this.lengths[y];
+        if (x < length) {
+            this.rows[y][x] = c;
+            if (c == ' ' && x == length - 1) this.trim(y, x);
+        } else
+        if (c != ' ') {
+            this.ensureLength(y, x + 1);
+            this.rows[y][x] = c;
+        }
+    }
+
+    @Override public void
+    fill(int x, int y, int width, int height, char c) {
+
+        if (width <= 0 || height <= 0) return;
+        this.checkIndexes(x, y);
+        this.checkIndexes(x + width - 1, y + height - 1);
+
+        for (int yy = y; yy < y + height; yy++) {
+            int length = this.lengths[yy];
+            if (c == ' ') {
+                if (x + width >= length) {
+
+                    // Fill reaches the end of the row's content; shrink instead of writing spaces.
+                    if (x < length) this.trim(yy, x);
+                } else
+                if (x < length) {
+                    Arrays.fill(this.rows[yy], x, x + width, c);
+                }
+            } else {
+                this.ensureLength(yy, x + width);
+                Arrays.fill(this.rows[yy], x, x + width, c);
+            }
+        }
+    }
+
+    @Override public void
+    getRow(int x, int y, int length, char[] dst, int dstOffset) {
+
+        if (length <= 0) return;
+        this.checkIndexes(x, y);
+        this.checkIndexes(x + length - 1, y);
+
+        int n = Math.max(0, Math.min(length, this.lengths[y] - x));
+        System.arraycopy(this.rows[y], x, dst, dstOffset, n);
+        Arrays.fill(dst, dstOffset + n, dstOffset + length, ' ');
+    }
+
+    /**
+     * Sets the length of row <var>y</var> to <var>length</var>, and then removes any trailing spaces.
+     */
+    private void
+    trim(int y, int length) {
+        char[] row = this.rows[y];
+        while (length > 0 && row[length - 1] == ' ') length--;
+        this.lengths[y] = length;
+    }
+
+    /**
+     * Extends row <var>y</var> with spaces, if necessary, so that it is at least <var>length</var> long.
+     */
+    private void
+    ensureLength(int y, int length) {
+
+        int oldLength = this.lengths[y];
+        if (length <= oldLength) return;
+
+        char[] row = this.rows[y];
+        if (length > row.length) {
+            row = Arrays.copyOf(row, Math.min(this.width, Math.max(length, 2 * row.length)));
+            this.rows[y] = row;
+        }
+        Arrays.fill(row, oldLength, length, ' ');
+        this.lengths[y] = length;
+    }
+
+    private void
+    checkIndexes(int x, int y) {
+        if (x < 0 || x >= this.width) throw new IndexOutOfBoundsException("x=" + x + ", width=" + this.width);
+        if (y < 0 || y >= this.height) throw new IndexOutOfBoundsException("y=" + y + ", height=" + this.height);
+    }
+}
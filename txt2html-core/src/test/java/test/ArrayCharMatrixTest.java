@@ -0,0 +1,113 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.unkrig.txt2html.text.ArrayCharMatrix;
+import de.unkrig.txt2html.text.CharMatrix;
+import de.unkrig.txt2html.text.MutableCharMatrix;
+
+public
+class ArrayCharMatrixTest {
+
+    @Test public void
+    testCopy() throws IOException {
+        CharMatrix        cm  = CharMatrix.read(new StringReader("abc\nd\n\nefgh\n"));
+        MutableCharMatrix mcm = cm.copy();
+
+        Assert.assertTrue(mcm instanceof ArrayCharMatrix);
+        Assert.assertTrue(((ArrayCharMatrix) mcm).isLatin1());
+        Assert.assertEquals(4, mcm.width());
+        Assert.assertEquals(4, mcm.height());
+        Assert.assertEquals("abc \nd   \n    \nefgh\n", mcm.toString());
+    }
+
+    @Test public void
+    testInflate() throws IOException {
+        ArrayCharMatrix acm = new ArrayCharMatrix(CharMatrix.read(new StringReader("ab\ncd\n")));
+
+        acm.charAt(1, 0, 'ä');
+        Assert.assertTrue(acm.isLatin1());
+
+        acm.charAt(0, 1, '€');
+        Assert.assertFalse(acm.isLatin1());
+        Assert.assertEquals("aä\n€d\n", acm.toString());
+
+        Assert.assertFalse(new ArrayCharMatrix(CharMatrix.read(new StringReader("x\n€\n"))).isLatin1());
+    }
+
+    @Test public void
+    testBulkAccessors() throws IOException {
+        MutableCharMatrix mcm = CharMatrix.read(new StringReader("+--+\n|  |\n+--+\n")).copy();
+
+        char[] ca = new char[3];
+        mcm.getColumn(3, 0, 3, ca, 0);
+        Assert.assertEquals("+|+", new String(ca));
+        mcm.getRow(1, 2, 3, ca, 0);
+        Assert.assertEquals("--+", new String(ca));
+
+        Assert.assertTrue(mcm.rowConsistsOf(1, 0, 2, '-'));
+        Assert.assertFalse(mcm.rowConsistsOf(0, 0, 2, '-'));
+        Assert.assertTrue(mcm.columnConsistsOf(0, 1, 1, '|'));
+
+        Assert.assertEquals(0, mcm.nextNonBlankInColumn(1, 0));
+        Assert.assertEquals(2, mcm.nextNonBlankInColumn(1, 1));
+
+        mcm.fill(1, 0, 2, 3, ' ');
+        Assert.assertEquals("+  +\n|  |\n+  +\n", mcm.toString());
+        Assert.assertEquals(-1, mcm.nextNonBlankInColumn(1, 0));
+        Assert.assertEquals(1, mcm.subMatrix(3, 1, 1, 2).nextNonBlankInColumn(0, 1));
+        Assert.assertEquals(-1, mcm.subMatrix(3, 0, 1, 2).nextNonBlankInColumn(0, 2));
+        Assert.assertEquals("+  +\n|  |\n", mcm.subMatrix(0, 0, 4, 2).toString());
+
+        MutableCharMatrix inner = mcm.subMatrix(1, 1, 3, 2).subMatrix(1, 0, 2, 2);
+        inner.charAt(0, 0, 'x');
+        Assert.assertEquals("x|\n +\n", inner.toString());
+        Assert.assertEquals("+  +\n| x|\n+  +\n", mcm.toString());
+    }
+
+    @Test public void
+    testDualLayout() throws IOException {
+        ArrayCharMatrix acm = new ArrayCharMatrix(CharMatrix.read(new StringReader("+--+\n|ab|\n+--+\n")));
+        acm.setDualLayout(true);
+
+        acm.fill(1, 1, 2, 1, ' ');
+        acm.charAt(0, 1, '€');
+        Assert.assertTrue(acm.isDualLayout());
+        Assert.assertFalse(acm.isLatin1());
+
+        Assert.assertEquals("+--+\n€  |\n+--+\n", acm.toString());
+        Assert.assertEquals("+€+", acm.verticalSection(0).toString());
+        Assert.assertEquals("+|+", acm.reverseVerticalSection(3).toString());
+        Assert.assertEquals(' ', acm.charAt(2, 1));
+        Assert.assertTrue(acm.columnConsistsOf(1, 1, 1, ' '));
+    }
+}
@@ -0,0 +1,221 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.unkrig.txt2html.ArtifactDetector;
+import de.unkrig.txt2html.CharMatrix2Svg;
+import de.unkrig.txt2html.Scene;
+import de.unkrig.txt2html.text.CharMatrix;
+import de.unkrig.txt2html.text.MutableCharMatrix;
+
+public
+class ArtifactDetectorTest {
+
+    private static final String DIAGRAM = (
+        ""
+        + "+----+   *\n"
+        + "| ab | --+---> *\n"
+        + "+----+   |\n"
+        + "  *      v  text\n"
+    );
+
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Renders each '*' as a dot. Registered as a service only for the isolated class loaders of {@link
+     * #testServiceLoader()}, so that the other tests are not affected.
+     */
+    public static
+    class StarDetector implements ArtifactDetector {
+
+        int invocations;
+
+        @Override public int
+        getPass() { return ArtifactDetector.PASS_ARROWS + 1; }
+
+        @Override public boolean
+        isTrigger(char c) { return c == '*'; }
+
+        @Override public boolean
+        detect(MutableCharMatrix mcm, int x, int y, CharMatrix2Svg cm2svg) {
+            this.invocations++;
+            cm2svg.polyline(x, y, x, y);
+            mcm.charAt(x, y, ' ');
+            return true;
+        }
+    }
+
+    @Test public void
+    testDispatch() throws IOException {
+
+        StarDetector sd = new StarDetector();
+        StringWriter sw = new StringWriter();
+        new CharMatrix2Svg(sw, Collections.singletonList(sd)).convert(CharMatrix.read(new StringReader(DIAGRAM)));
+
+        // The detector is only invoked for its trigger character.
+        Assert.assertEquals(3, sd.invocations);
+
+        String svg = sw.toString();
+        Assert.assertFalse(svg, svg.contains("*"));
+        Assert.assertTrue(svg, svg.contains(">ab</text>"));
+        Assert.assertTrue(svg, svg.contains(">text</text>"));
+        Assert.assertTrue(svg, svg.contains("marker-end"));
+    }
+
+    /**
+     * Verifies that {@link CharMatrix2Svg#CharMatrix2Svg(java.io.Writer)} finds the detectors that are registered as
+     * services. Because the converter looks up the services only once, each case loads the converter afresh, through
+     * an isolated class loader.
+     */
+    @Test public void
+    testServiceLoader() throws Exception {
+
+        // Register the star detector as a service, in a directory that is not on the class path.
+        File services = new File(this.temporaryFolder.getRoot(), "META-INF/services");
+        Assert.assertTrue(services.mkdirs());
+        Files.write(
+            new File(services, ArtifactDetector.class.getName()).toPath(),
+            StarDetector.class.getName().getBytes(StandardCharsets.UTF_8)
+        );
+        URL serviceUrl = this.temporaryFolder.getRoot().toURI().toURL();
+
+        List<URL> classPath = new ArrayList<>();
+        for (String s : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            classPath.add(new File(s).toURI().toURL());
+        }
+
+        // The service is on the class path of the converter.
+        List<URL> urls = new ArrayList<>(classPath);
+        urls.add(serviceUrl);
+        Assert.assertFalse(ArtifactDetectorTest.isolatedConversion(urls, null).contains("*"));
+
+        // The service is only visible through the context class loader, like a detector on the class path of a
+        // Maven project or an Ant task.
+        Assert.assertFalse(ArtifactDetectorTest.isolatedConversion(classPath, serviceUrl).contains("*"));
+
+        // The service is not visible at all.
+        Assert.assertTrue(ArtifactDetectorTest.isolatedConversion(classPath, null).contains(">*</text>"));
+    }
+
+    /**
+     * Converts the {@link #DIAGRAM} with the default detectors, in a class loader of its own.
+     *
+     * @param urls                   The class path of the isolated class loader
+     * @param contextClassLoaderPath Iff not {@code null}, the class path of the context class loader, which is a child
+     *                               of the isolated class loader
+     * @return                       The SVG markup
+     */
+    private static String
+    isolatedConversion(List<URL> urls, URL contextClassLoaderPath) throws Exception {
+
+        Thread      thread = Thread.currentThread();
+        ClassLoader saved  = thread.getContextClassLoader();
+        try (
+            URLClassLoader cl  = new URLClassLoader(
+                urls.toArray(new URL[urls.size()]),
+                ClassLoader.getSystemClassLoader().getParent()
+            );
+            URLClassLoader ccl = new URLClassLoader(
+                contextClassLoaderPath == null ? new URL[0] : new URL[] { contextClassLoaderPath },
+                cl
+            )
+        ) {
+            thread.setContextClassLoader(contextClassLoaderPath == null ? cl : ccl);
+            return (String) (
+                cl.loadClass(ArtifactDetectorTest.class.getName())
+                .getMethod("convertWithDefaultDetectors")
+                .invoke(null)
+            );
+        } finally {
+            thread.setContextClassLoader(saved);
+        }
+    }
+
+    /**
+     * Is invoked by {@link #isolatedConversion(List, URL)} through reflection, in an isolated class loader.
+     */
+    public static String
+    convertWithDefaultDetectors() throws IOException { return TestDiagrams.convert(DIAGRAM); }
+
+    @Test public void
+    testWithoutStarDetector() throws IOException {
+
+        // Without the star detector, the built-in text detector picks up the stars.
+        StringWriter sw = new StringWriter();
+        new CharMatrix2Svg(sw, Collections.<ArtifactDetector>emptyList()).convert(
+            CharMatrix.read(new StringReader(DIAGRAM))
+        );
+
+        Assert.assertTrue(sw.toString().contains(">*</text>"));
+    }
+
+    @Test public void
+    testWithDetectors() throws IOException {
+
+        CharMatrix cm = CharMatrix.read(new StringReader(DIAGRAM));
+
+        // Only the table detector (and neither the other built-in detectors nor the registered services).
+        ArtifactDetector table = ArtifactDetectorTest.builtInDetector("TABLE");
+        Scene            scene = CharMatrix2Svg.withDetectors(new StringWriter(), Collections.singletonList(table))
+            .toScene(cm);
+
+        // The outline of the table and the edges of its cell; the text "ab" is not picked up, because the content of
+        // the cell is converted with the same (single) detector.
+        Assert.assertEquals(2, scene.size());
+        Assert.assertEquals(Scene.Kind.POLYLINE, scene.getKind(0));
+        Assert.assertEquals(Scene.Kind.POLYLINE, scene.getKind(1));
+
+        // Only the text detector.
+        ArtifactDetector text = ArtifactDetectorTest.builtInDetector("NORMAL_TEXT");
+        scene = CharMatrix2Svg.withDetectors(new StringWriter(), Collections.singletonList(text)).toScene(cm);
+        for (int i = 0; i < scene.size(); i++) Assert.assertEquals(Scene.Kind.TEXT, scene.getKind(i));
+    }
+
+    private static ArtifactDetector
+    builtInDetector(String name) {
+        for (ArtifactDetector ad : CharMatrix2Svg.builtInDetectors()) {
+            if (ad.toString().equals(name)) return ad;
+        }
+        throw new AssertionError(name);
+    }
+}
@@ -0,0 +1,129 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test;
+
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import de.unkrig.txt2html.CharMatrix2Svg;
+import de.unkrig.txt2html.ConversionStatistics;
+import de.unkrig.txt2html.text.ArrayCharMatrix;
+import de.unkrig.txt2html.text.CharMatrix;
+
+public
+class CharMatrix2SvgAllocationTest {
+
+    private static final int WIDTH = 200, HEIGHT = 200;
+
+    /**
+     * Verifies that probes that fail do not allocate memory: Converts two diagrams of the same size, one where no
+     * detector gets beyond checking the trigger character, and one full of '+' and '^' cells, where each of the table,
+     * document symbol and arrow detectors probes in vain. The difference of the allocated memory must be less than
+     * one byte per failed probe; one allocation per probe would make at least 16 bytes.
+     * <p>
+     *   Both diagrams are converted by the same {@link CharMatrix2Svg}, because it re-uses its scratch buffers (e.g. the
+     *   candidate cell lists) across conversions; the warm-up grows them to their final size.
+     * </p>
+     */
+    @Test public void
+    testFailedProbesDoNotAllocate() {
+
+        // Only HotSpot-like JVMs can measure the memory allocated by a thread.
+        try {
+            Class.forName("com.sun.management.ThreadMXBean");
+        } catch (ClassNotFoundException cnfe) {
+            Assume.assumeNoException(cnfe);
+        }
+        Assume.assumeTrue(
+            ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).isThreadAllocatedMemoryEnabled()
+        );
+
+        // Nothing to probe: Only '|' cells.
+        ArrayCharMatrix quiet = new ArrayCharMatrix(WIDTH, HEIGHT);
+        quiet.fill(0, 0, WIDTH, HEIGHT, '|');
+
+        // Each '+' is probed for a table and a document symbol, and each '^' for an arrow, but the neighboring '^'
+        // and '-' cells make all these probes fail.
+        ArrayCharMatrix busy = new ArrayCharMatrix(WIDTH, HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) busy.charAt(x, y, y % 2 == 1 ? '-' : x % 2 == 0 ? '+' : '^');
+        }
+
+        // Count the failed probes (with a separate converter, because counting is not free).
+        ConversionStatistics statistics = new ConversionStatistics();
+        CharMatrix2Svg       counter    = new CharMatrix2Svg(new StringWriter());
+        counter.setStatistics(statistics);
+        counter.convert(busy);
+        long probes = 0;
+        for (String detector : new String[] { "UP_ARROW", "DOCUMENT_SYMBOL", "TABLE" }) {
+            Assert.assertEquals(detector, 0, statistics.getHitCount(detector));
+            probes += statistics.getProbeCount(detector);
+        }
+        Assert.assertTrue(String.valueOf(probes), probes >= 10000);
+
+        StringWriter   sw  = new StringWriter(1000);
+        CharMatrix2Svg c2s = new CharMatrix2Svg(sw);
+
+        // Warm up, so that class loading, the JIT and the scratch buffers don't distort the measurement.
+        for (int i = 0; i < 5; i++) {
+            CharMatrix2SvgAllocationTest.allocatedBytes(quiet, c2s, sw);
+            CharMatrix2SvgAllocationTest.allocatedBytes(busy, c2s, sw);
+        }
+
+        // The minimum of several measurements, so that a late JIT compilation does not distort the result.
+        long quietBytes = Long.MAX_VALUE, busyBytes = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            quietBytes = Math.min(quietBytes, CharMatrix2SvgAllocationTest.allocatedBytes(quiet, c2s, sw));
+            busyBytes  = Math.min(busyBytes, CharMatrix2SvgAllocationTest.allocatedBytes(busy, c2s, sw));
+        }
+
+        Assert.assertTrue(
+            "quiet=" + quietBytes + ", busy=" + busyBytes + ", probes=" + probes,
+            busyBytes - quietBytes < probes
+        );
+    }
+
+    private static long
+    allocatedBytes(CharMatrix cm, CharMatrix2Svg c2s, StringWriter sw) {
+        com.sun.management.ThreadMXBean tmxb = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        sw.getBuffer().setLength(0);
+
+        long threadId = Thread.currentThread().getId();
+        long before   = tmxb.getThreadAllocatedBytes(threadId);
+        c2s.convert(cm);
+        long after    = tmxb.getThreadAllocatedBytes(threadId);
+
+        Assert.assertFalse(sw.toString().contains("<line"));
+        Assert.assertFalse(sw.toString().contains("<text"));
+        return after - before;
+    }
+}
@@ -0,0 +1,87 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.unkrig.txt2html.CharMatrix2Svg;
+import de.unkrig.txt2html.text.CharMatrix;
+
+public
+class CharMatrix2SvgOutputTest {
+
+    @Test public void
+    testEscaping() throws IOException {
+        String svg = TestDiagrams.convert(TestDiagrams.SPECIAL_CHARS_DIAGRAM);
+        Assert.assertTrue(svg, svg.contains(">a&lt;b &amp; &quot;c&quot;</text>"));
+        Assert.assertTrue(svg, svg.contains(">\u00e4\u20ac\ud83d\ude00</text>"));
+        Assert.assertTrue(svg, svg.startsWith("<svg class=\"asciiart\" width=\""));
+        Assert.assertTrue(svg, svg.endsWith("</svg>" + System.lineSeparator()));
+    }
+
+    /**
+     * A would-be document symbol whose dog-ear touches the right edge of the matrix must not be read past that edge.
+     */
+    @Test public void
+    testDogEarAtRightEdge() throws IOException {
+        String svg = TestDiagrams.convert(
+            ""
+            + "+--+\n"
+            + "|  |\\\n"
+            + "|  +-\n"
+            + "+----\n"
+        );
+        Assert.assertTrue(svg, svg.contains(">\\</text>"));
+    }
+
+    /**
+     * The {@link java.io.OutputStream} flavor must produce exactly the UTF-8 encoding of what the {@link
+     * java.io.Writer} flavor produces.
+     */
+    @Test public void
+    testWriterAndOutputStreamAreEquivalent() throws IOException {
+
+        // Exceed the emitter's buffer, so that a surrogate pair may be split across a buffer boundary.
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; i++) sb.append(TestDiagrams.SPECIAL_CHARS_DIAGRAM);
+        CharMatrix cm = CharMatrix.read(new StringReader(sb.toString()));
+
+        StringWriter sw = new StringWriter();
+        new CharMatrix2Svg(sw).convert(cm);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new CharMatrix2Svg(baos).convert(cm);
+
+        Assert.assertArrayEquals(sw.toString().getBytes(StandardCharsets.UTF_8), baos.toByteArray());
+    }
+}
@@ -0,0 +1,139 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test;
+
+import java.util.Random;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.unkrig.txt2html.text.ArrayCharMatrix;
+import de.unkrig.txt2html.text.CharMatrix;
+import de.unkrig.txt2html.text.CharMatrix.Orientation;
+import de.unkrig.txt2html.text.CharMatrix.Turtle;
+import de.unkrig.txt2html.text.CharMatrixScanners;
+
+/**
+ * Verifies that the {@link CharMatrixScanners} are equivalent with the regular expressions that they replace.
+ */
+public
+class CharMatrixScannersTest {
+
+    private static final Pattern NEXT_CORNER_DOWN              = Pattern.compile("\\|+\\+");
+    private static final Pattern NEXT_CORNER_RIGHT             = Pattern.compile("-+\\+");
+    private static final Pattern NEXT_HORIZONAL_POLYGON_SEGMENT = Pattern.compile("[^|]*-\\+?");
+    private static final Pattern NEXT_VERTICAL_POLYGON_SEGMENT  = Pattern.compile("[^\\-]*\\|\\+?");
+
+    @Test public void
+    testSamples() {
+        CharMatrix cm = CharMatrixScannersTest.matrix("+--+-+ x-|", "|  | |   ", "+--+-+-+-");
+
+        Assert.assertEquals(3,  CharMatrixScanners.nextCorner(cm, 0, 0, Orientation.EAST, '-'));
+        Assert.assertEquals(2,  CharMatrixScanners.nextCorner(cm, 3, 0, Orientation.EAST, '-'));
+        Assert.assertEquals(-1, CharMatrixScanners.nextCorner(cm, 5, 0, Orientation.EAST, '-'));
+        Assert.assertEquals(2,  CharMatrixScanners.nextCorner(cm, 0, 0, Orientation.SOUTH, '|'));
+        Assert.assertEquals(-1, CharMatrixScanners.nextCorner(cm, 0, 2, Orientation.SOUTH, '|'));
+
+        // Greedy: Up to the last '-' before the first '|', plus a trailing '+'.
+        Assert.assertEquals(8, CharMatrixScanners.nextPolygonSegment(cm, 0, 0, Orientation.EAST, '-', '|'));
+        Assert.assertEquals(7, CharMatrixScanners.nextPolygonSegment(cm, 1, 2, Orientation.EAST, '-', '|'));
+        Assert.assertEquals(8, CharMatrixScanners.nextPolygonSegment(cm, 8, 2, Orientation.WEST, '-', '|'));
+        Assert.assertEquals(-1, CharMatrixScanners.nextPolygonSegment(cm, 9, 0, Orientation.EAST, '-', '|'));
+    }
+
+    /**
+     * Compares the scanners with {@link Turtle#forward(Pattern)}, for all cells and directions of many random
+     * matrices.
+     */
+    @Test public void
+    testEquivalenceWithRegexes() {
+        Random random = new Random(42);
+        String chars  = "  --||++x<>^v";
+
+        for (int i = 0; i < 300; i++) {
+            int             width  = 1 + random.nextInt(12);
+            int             height = 1 + random.nextInt(12);
+            ArrayCharMatrix cm     = new ArrayCharMatrix(width, height);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) cm.charAt(x, y, chars.charAt(random.nextInt(chars.length())));
+            }
+
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    for (Orientation direction : Orientation.values()) {
+                        boolean horizontal = direction == Orientation.EAST || direction == Orientation.WEST;
+                        String  message    = cm + "x=" + x + ", y=" + y + ", direction=" + direction;
+
+                        Assert.assertEquals(
+                            message,
+                            CharMatrixScannersTest.regexDistance(
+                                cm,
+                                x,
+                                y,
+                                direction,
+                                horizontal ? NEXT_CORNER_RIGHT : NEXT_CORNER_DOWN
+                            ),
+                            CharMatrixScanners.nextCorner(cm, x, y, direction, horizontal ? '-' : '|')
+                        );
+                        Assert.assertEquals(
+                            message,
+                            CharMatrixScannersTest.regexDistance(
+                                cm,
+                                x,
+                                y,
+                                direction,
+                                horizontal ? NEXT_HORIZONAL_POLYGON_SEGMENT : NEXT_VERTICAL_POLYGON_SEGMENT
+                            ),
+                            (
+                                horizontal
+                                ? CharMatrixScanners.nextPolygonSegment(cm, x, y, direction, '-', '|')
+                                : CharMatrixScanners.nextPolygonSegment(cm, x, y, direction, '|', '-')
+                            )
+                        );
+                    }
+                }
+            }
+        }
+    }
+
+    private static int
+    regexDistance(CharMatrix cm, int x, int y, Orientation direction, Pattern pattern) {
+        Turtle      turtle = cm.new Turtle(x, y, direction);
+        MatchResult mr     = turtle.forward(pattern);
+        return mr == null ? -1 : Math.abs(turtle.getX() - x) + Math.abs(turtle.getY() - y);
+    }
+
+    private static CharMatrix
+    matrix(String... rows) {
+        ArrayCharMatrix result = new ArrayCharMatrix(rows[0].length(), rows.length);
+        for (int y = 0; y < rows.length; y++) {
+            for (int x = 0; x < rows[y].length(); x++) result.charAt(x, y, rows[y].charAt(x));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,120 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.unkrig.txt2html.text.CharMatrix;
+
+public
+class CharMatrixTest {
+
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test public void
+    testReadPath() throws IOException {
+        this.assertReadPathEqualsReadReader("", StandardCharsets.UTF_8);
+        this.assertReadPathEqualsReadReader("abc", StandardCharsets.UTF_8);
+        this.assertReadPathEqualsReadReader("a\nbc\r\ndef\rg\n\n", StandardCharsets.UTF_8);
+        this.assertReadPathEqualsReadReader("a\r\r\nb\n\r", StandardCharsets.UTF_8);
+        this.assertReadPathEqualsReadReader("+--+\n|ä€ß|\n+--+\n", StandardCharsets.UTF_8);
+        this.assertReadPathEqualsReadReader("+--+\n|äß |\n+--+\n", StandardCharsets.ISO_8859_1);
+        this.assertReadPathEqualsReadReader("ää\n", StandardCharsets.US_ASCII);
+        this.assertReadPathEqualsReadReader("a€b\nc\n", StandardCharsets.UTF_16);
+
+        // More non-ASCII lines than the decoded line cache holds.
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) sb.append(i % 3 == 0 ? "abc\n" : "|ä" + i + "€|\n");
+        this.assertReadPathEqualsReadReader(sb.toString(), StandardCharsets.UTF_8);
+    }
+
+    @Test public void
+    testReadHtml() throws IOException {
+
+        // Like "read(Reader)" after decoding the four SGML entities.
+        CharMatrixTest.assertReadHtmlEqualsReadReader("", "");
+        CharMatrixTest.assertReadHtmlEqualsReadReader("a\nbc\r\ndef\rg\n\n", "a\nbc\r\ndef\rg\n\n");
+        CharMatrixTest.assertReadHtmlEqualsReadReader("a\r\r\nb  \n\r", "a\r\r\nb  \n\r");
+        CharMatrixTest.assertReadHtmlEqualsReadReader("&lt;--+--&gt;\n&quot;a&amp;b&quot;\n", "<--+-->\n\"a&b\"\n");
+        CharMatrixTest.assertReadHtmlEqualsReadReader(
+            "&amp;lt; &lt &amp &; &foo; &#; &#x; &#12a;",
+            "&lt; &lt &amp &; &foo; &#; &#x; &#12a;"
+        );
+
+        // Numeric character references, also for line terminators.
+        CharMatrixTest.assertReadHtmlEqualsReadReader("&#124; &#x7c; &#X7C; &apos;", "| | | '");
+        CharMatrixTest.assertReadHtmlEqualsReadReader("&#xe4;&#8364;&#x1F600;", "\u00e4\u20ac\ud83d\ude00");
+        CharMatrixTest.assertReadHtmlEqualsReadReader("a&#13;&#10;b&#10;c", "a\r\nb\nc");
+        CharMatrixTest.assertReadHtmlEqualsReadReader("&#x110000; &#99999999;", "&#x110000; &#99999999;");
+    }
+
+    private static void
+    assertReadHtmlEqualsReadReader(String html, String text) throws IOException {
+        CharMatrixTest.assertEquals(CharMatrix.read(new StringReader(text)), CharMatrix.readHtml(html));
+    }
+
+    private void
+    assertReadPathEqualsReadReader(String text, Charset charset) throws IOException {
+
+        Path file = this.temporaryFolder.newFile().toPath();
+        Files.write(file, text.getBytes(charset));
+
+        CharMatrix expected = CharMatrix.read(new StringReader(new String(Files.readAllBytes(file), charset)));
+        CharMatrix actual   = CharMatrix.read(file, charset);
+
+        CharMatrixTest.assertEquals(expected, actual);
+    }
+
+    private static void
+    assertEquals(CharMatrix expected, CharMatrix actual) {
+        Assert.assertEquals(expected.width(),    actual.width());
+        Assert.assertEquals(expected.height(),   actual.height());
+        Assert.assertEquals(expected.toString(), actual.toString());
+        for (int y = 0; y < expected.height(); y++) {
+            for (int x = 0; x < expected.width(); x++) {
+                Assert.assertEquals(expected.charAt(x, y), actual.charAt(x, y));
+            }
+            Assert.assertEquals(expected.contentWidth(y), actual.contentWidth(y));
+        }
+
+        // Also column by column, like the vertical scans of the detectors.
+        for (int x = 0; x < expected.width(); x++) {
+            for (int y = 0; y < expected.height(); y++) {
+                Assert.assertEquals(expected.charAt(x, y), actual.charAt(x, y));
+            }
+        }
+    }
+}
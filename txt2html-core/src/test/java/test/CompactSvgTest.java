@@ -0,0 +1,197 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.unkrig.txt2html.CharMatrix2Svg;
+import de.unkrig.txt2html.text.CharMatrix;
+
+/**
+ * Verifies that the {@link CharMatrix2Svg#setCompact(boolean) compact} SVG depicts exactly the same segments and
+ * texts as the normal SVG.
+ */
+public
+class CompactSvgTest {
+
+    @Test public void
+    testFig1() throws IOException {
+        CompactSvgTest.assertSameGeometry(CharMatrix.read(this.getClass().getResource("fig1.txt")));
+    }
+
+    @Test public void
+    testDiagram() throws IOException {
+        CompactSvgTest.assertSameGeometry(TestDiagrams.charMatrix(TestDiagrams.DIAGRAM));
+    }
+
+    @Test public void
+    testSmaller() throws IOException {
+        CharMatrix cm = CharMatrix.read(this.getClass().getResource("fig1.txt"));
+
+        String normal  = CompactSvgTest.convert(cm, false);
+        String compact = CompactSvgTest.convert(cm, true);
+        Assert.assertTrue(compact.length() + " vs. " + normal.length(), 3 * compact.length() < 2 * normal.length());
+        Assert.assertFalse(compact, compact.trim().contains("\n"));
+    }
+
+    private static void
+    assertSameGeometry(CharMatrix cm) {
+
+        String normal  = CompactSvgTest.convert(cm, false);
+        String compact = CompactSvgTest.convert(cm, true);
+
+        // Boxes.
+        List<String> expected = new ArrayList<>();
+        for (Matcher m = Pattern.compile("<polyline points=\"([^\"]*)\"").matcher(normal); m.find();) {
+            String[] points = m.group(1).split(" ");
+            for (int i = 1; i < points.length; i++) {
+                expected.add(CompactSvgTest.segment(points[i - 1], points[i]));
+            }
+        }
+        Assert.assertEquals(
+            CompactSvgTest.sorted(expected),
+            CompactSvgTest.sorted(CompactSvgTest.pathSegments(compact, "stroke:#000"))
+        );
+
+        // Arrow segments without heads.
+        expected.clear();
+        for (Matcher m = Pattern.compile(
+            "<line x1=\"(\\d+)\" y1=\"(\\d+)\" x2=\"(\\d+)\" y2=\"(\\d+)\" style=\"[^\"]*\" />"
+        ).matcher(normal); m.find();) {
+            expected.add(CompactSvgTest.segment(m.group(1) + "," + m.group(2), m.group(3) + "," + m.group(4)));
+        }
+        Assert.assertEquals(
+            CompactSvgTest.sorted(expected),
+            CompactSvgTest.sorted(CompactSvgTest.pathSegments(compact, "stroke:#dcdcdc;stroke-width:4\"/>"))
+        );
+
+        // Arrows; direction matters.
+        expected.clear();
+        for (Matcher m = Pattern.compile(
+            "<line x1=\"(\\d+)\" y1=\"(\\d+)\" x2=\"(\\d+)\" y2=\"(\\d+)\" [^>]*marker-end"
+        ).matcher(normal); m.find();) {
+            expected.add(m.group(1) + "," + m.group(2) + "-" + m.group(3) + "," + m.group(4));
+        }
+        List<String> actual = new ArrayList<>();
+        Matcher      g      = Pattern.compile("<g style=\"[^\"]*marker-end[^\"]*\">(.*?)</g>").matcher(compact);
+        if (g.find()) {
+            for (Matcher m = Pattern.compile("<path d=\"([^\"]*)\"/>").matcher(g.group(1)); m.find();) {
+                List<int[]> segments = CompactSvgTest.parsePath(m.group(1));
+                Assert.assertEquals(1, segments.size());
+                int[] s = segments.get(0);
+                actual.add(s[0] + "," + s[1] + "-" + s[2] + "," + s[3]);
+            }
+        }
+        Assert.assertEquals(CompactSvgTest.sorted(expected), CompactSvgTest.sorted(actual));
+
+        // Texts.
+        expected.clear();
+        Pattern text = Pattern.compile("<text x=\"(\\d+)\" y=\"(\\d+)\">([^<]*)</text>");
+        for (Matcher m = text.matcher(normal); m.find();) {
+            expected.add(m.group(1) + "," + m.group(2) + ":" + m.group(3));
+        }
+        actual.clear();
+        for (
+            Matcher m = Pattern.compile("<text x=\"(\\d+)\" y=\"(\\d+)\">([^<]*)(.*?)</text>").matcher(compact);
+            m.find();
+        ) {
+            actual.add(m.group(1) + "," + m.group(2) + ":" + m.group(3));
+            for (Matcher t = Pattern.compile("<tspan x=\"(\\d+)\">([^<]*)</tspan>").matcher(m.group(4)); t.find();) {
+                actual.add(t.group(1) + "," + m.group(2) + ":" + t.group(2));
+            }
+        }
+        Assert.assertEquals(CompactSvgTest.sorted(expected), CompactSvgTest.sorted(actual));
+    }
+
+    private static String
+    convert(CharMatrix cm, boolean compact) { return TestDiagrams.convert(cm, cm2svg -> cm2svg.setCompact(compact)); }
+
+    /**
+     * @return The undirected segments of the {@code <path>} whose markup contains <var>styleSuffix</var>
+     */
+    private static List<String>
+    pathSegments(String svg, String styleSuffix) {
+
+        List<String> result = new ArrayList<>();
+
+        Matcher m = Pattern.compile("<path d=\"([^\"]*)\"[^>]*>").matcher(svg);
+        while (m.find()) {
+            if (!m.group().contains(styleSuffix)) continue;
+            for (int[] s : CompactSvgTest.parsePath(m.group(1))) {
+                result.add(CompactSvgTest.segment(s[0] + "," + s[1], s[2] + "," + s[3]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parses the subset of the path syntax that the compact renderer uses.
+     */
+    private static List<int[]>
+    parsePath(String d) {
+
+        List<int[]> result = new ArrayList<>();
+
+        Matcher m = Pattern.compile("([MmLlHhVv])(-?\\d+)(?:,?(-?\\d+))?").matcher(d);
+        int     x = 0, y = 0;
+        int     end = 0;
+        while (m.find()) {
+            Assert.assertEquals(d, end, m.start());
+            end = m.end();
+
+            int a = Integer.parseInt(m.group(2));
+            int b = m.group(3) == null ? 0 : Integer.parseInt(m.group(3));
+            switch (m.group(1).charAt(0)) {
+            case 'M': x = a;  y = b;  break;
+            case 'm': x += a; y += b; break;
+            case 'h': result.add(new int[] { x, y, x += a, y }); break;
+            case 'v': result.add(new int[] { x, y, x, y += a }); break;
+            case 'l': result.add(new int[] { x, y, x += a, y += b }); break;
+            default:  Assert.fail(d);
+            }
+        }
+        Assert.assertEquals(d, d.length(), end);
+        return result;
+    }
+
+    private static String
+    segment(String p1, String p2) { return p1.compareTo(p2) <= 0 ? p1 + "-" + p2 : p2 + "-" + p1; }
+
+    private static List<String>
+    sorted(List<String> l) {
+        List<String> result = new ArrayList<>(l);
+        Collections.sort(result);
+        return result;
+    }
+}
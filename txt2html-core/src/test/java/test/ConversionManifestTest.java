@@ -0,0 +1,141 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.unkrig.commons.file.filetransformation.FileTransformer;
+import de.unkrig.commons.file.filetransformation.FileTransformer.Mode;
+import de.unkrig.txt2html.ConversionManifest;
+
+public
+class ConversionManifestTest {
+
+    @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+    private int transformations;
+
+    // Appends an "!" to the input.
+    private final FileTransformer bang = (path, in, out, mode) -> {
+        this.transformations++;
+        ConversionManifestTest.write(out, ConversionManifestTest.read(in) + "!");
+    };
+
+    @Test public void
+    testInPlace() throws IOException {
+        File manifestFile = this.folder.newFile();
+        File file         = this.folder.newFile();
+        ConversionManifestTest.write(file, "a");
+
+        Assert.assertEquals(1, this.run(manifestFile, "x", file, file));
+        Assert.assertEquals("a!", ConversionManifestTest.read(file));
+
+        // Unchanged since the last run.
+        Assert.assertEquals(0, this.run(manifestFile, "x", file, file));
+        Assert.assertEquals("a!", ConversionManifestTest.read(file));
+
+        // Modified.
+        ConversionManifestTest.write(file, "b");
+        Assert.assertEquals(1, this.run(manifestFile, "x", file, file));
+        Assert.assertEquals(0, this.run(manifestFile, "x", file, file));
+
+        // Different settings.
+        Assert.assertEquals(1, this.run(manifestFile, "y", file, file));
+        Assert.assertEquals("b!!", ConversionManifestTest.read(file));
+    }
+
+    @Test public void
+    testOutOfPlace() throws IOException {
+        File manifestFile = this.folder.newFile();
+        File in           = this.folder.newFile();
+        File out          = new File(this.folder.getRoot(), "out");
+        ConversionManifestTest.write(in, "a");
+
+        Assert.assertEquals(1, this.run(manifestFile, "x", in, out));
+        Assert.assertEquals(0, this.run(manifestFile, "x", in, out));
+
+        // Output modified.
+        ConversionManifestTest.write(out, "c");
+        Assert.assertEquals(1, this.run(manifestFile, "x", in, out));
+        Assert.assertEquals("a!", ConversionManifestTest.read(out));
+
+        // Output deleted.
+        Assert.assertTrue(out.delete());
+        Assert.assertEquals(1, this.run(manifestFile, "x", in, out));
+        Assert.assertEquals(0, this.run(manifestFile, "x", in, out));
+    }
+
+    @Test public void
+    testPathForms() throws IOException {
+        File manifestFile = this.folder.newFile();
+        File file         = this.folder.newFile();
+        ConversionManifestTest.write(file, "a");
+
+        // The same file, relative to the working directory, and with a detour.
+        File relative = new File("").getAbsoluteFile().toPath().relativize(file.toPath()).toFile();
+        File detour   = new File(this.folder.newFolder(), "../" + file.getName());
+
+        Assert.assertEquals(1, this.run(manifestFile, "x", relative, relative));
+        Assert.assertEquals(0, this.run(manifestFile, "x", file, file));
+        Assert.assertEquals(0, this.run(manifestFile, "x", detour, detour));
+        Assert.assertEquals(0, this.run(manifestFile, "x", relative, relative));
+        Assert.assertEquals("a!", ConversionManifestTest.read(file));
+    }
+
+    /**
+     * @return The number of transformations that were executed
+     */
+    private int
+    run(File manifestFile, String settings, File in, File out) throws IOException {
+        this.transformations = 0;
+
+        ConversionManifest manifest = ConversionManifest.load(manifestFile, settings);
+        manifest.incremental(this.bang).transform(in.getPath(), in, out, Mode.TRANSFORM);
+        manifest.save();
+
+        Assert.assertEquals(this.transformations, manifest.getTransformCount());
+        Assert.assertEquals(1 - this.transformations, manifest.getSkipCount());
+        return this.transformations;
+    }
+
+    private static String
+    read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static void
+    write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,243 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.unkrig.txt2html.ArtifactDetector;
+import de.unkrig.txt2html.CharMatrix2Svg;
+import de.unkrig.txt2html.ConversionStatistics;
+import de.unkrig.txt2html.Main;
+import de.unkrig.txt2html.SvgCache;
+import de.unkrig.txt2html.Txt2SvgFilterWriter;
+import de.unkrig.txt2html.text.MutableCharMatrix;
+
+public
+class ConversionStatisticsTest {
+
+    // The "\u00e4" takes two bytes in UTF-8, so the first diagram starts at byte offset 15.
+    private static final String HTML = (
+        "<html><body>\u00e4\n" + TestDiagrams.HTML_DIAGRAM + "<p>Text</p>\n" + TestDiagrams.HTML_DIAGRAM + "</body></html>\n"
+    );
+
+    @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void
+    testTransform() throws IOException {
+
+        ConversionStatistics statistics = new ConversionStatistics();
+        SvgCache             cache      = new SvgCache(SvgCache.DEFAULT_MAX_BYTES);
+
+        byte[] html   = HTML.getBytes(StandardCharsets.UTF_8);
+        byte[] result = ConversionStatisticsTest.transform(
+            html,
+            Txt2SvgFilterWriter.PATTERN_ASCII_ART,
+            cache,
+            statistics
+        );
+
+        Assert.assertEquals(1, statistics.getDocumentCount());
+        Assert.assertEquals(html.length, statistics.getBytesIn());
+        Assert.assertEquals(result.length, statistics.getBytesOut());
+
+        // The second diagram comes from the cache.
+        Assert.assertEquals(2, statistics.getDiagramCount());
+        Assert.assertEquals(1, statistics.getConversionCount());
+        Assert.assertTrue(statistics.getCellCount() > 0);
+        Assert.assertTrue(statistics.getCellsScanned() > 0);
+        Assert.assertTrue(statistics.getMaxConversionMicros() <= statistics.getConversionMicros() + 1);
+        Assert.assertTrue(statistics.getConversionMicrosP50() <= statistics.getMaxConversionMicros());
+
+        // The box is a table with one cell, which contains one text.
+        Assert.assertEquals(1, statistics.getHitCount("TABLE"));
+        Assert.assertEquals(1, statistics.getProbeCount("DOWN_ARROW"));
+        Assert.assertEquals(1, statistics.getHitCount("DOWN_ARROW"));
+        Assert.assertEquals(0, statistics.getHitCount("DOCUMENT_SYMBOL"));
+        Assert.assertTrue(statistics.getHitCount("NORMAL_TEXT") >= 1);
+
+        String[] slowest = statistics.getSlowestDiagrams();
+        Assert.assertEquals(1, slowest.length);
+        Assert.assertTrue(slowest[0], slowest[0].contains("doc.html @ 15 ("));
+
+        // Without a cache, each diagram is converted.
+        statistics.reset();
+        ConversionStatisticsTest.transform(html, Txt2SvgFilterWriter.PATTERN_ASCII_ART, null, statistics);
+        Assert.assertEquals(2, statistics.getConversionCount());
+        Assert.assertEquals(2, statistics.getHitCount("DOWN_ARROW"));
+        Assert.assertEquals(2, statistics.getSlowestDiagrams().length);
+    }
+
+    @Test public void
+    testRegexPattern() throws IOException {
+
+        ConversionStatistics statistics = new ConversionStatistics();
+
+        // The same pattern, but different, so that "transform()" uses the regex engine, which does not tell offsets.
+        Pattern regex  = Pattern.compile(Txt2SvgFilterWriter.PATTERN_ASCII_ART.pattern() + "(?:)");
+        byte[]  html   = HTML.getBytes(StandardCharsets.UTF_8);
+        byte[]  result = ConversionStatisticsTest.transform(html, regex, null, statistics);
+
+        Assert.assertEquals(html.length, statistics.getBytesIn());
+        Assert.assertEquals(result.length, statistics.getBytesOut());
+        Assert.assertEquals(2, statistics.getConversionCount());
+
+        for (String s : statistics.getSlowestDiagrams()) Assert.assertFalse(s, s.contains("@"));
+    }
+
+    @Test public void
+    testSlowestDiagramsLimit() throws IOException {
+
+        ConversionStatistics statistics = new ConversionStatistics(3);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10; i++) sb.append(TestDiagrams.HTML_DIAGRAM);
+        ConversionStatisticsTest.transform(
+            sb.toString().getBytes(StandardCharsets.UTF_8),
+            Txt2SvgFilterWriter.PATTERN_ASCII_ART,
+            null,
+            statistics
+        );
+
+        Assert.assertEquals(10, statistics.getConversionCount());
+        Assert.assertEquals(3, statistics.getSlowestDiagrams().length);
+    }
+
+    @Test public void
+    testDetectorWithoutName() throws IOException {
+
+        ConversionStatistics statistics = new ConversionStatistics();
+
+        // Each converter has its own detector instance, whose (inherited) "toString()" differs.
+        for (int i = 0; i < 3; i++) {
+            List<ArtifactDetector> detectors = new ArrayList<>(CharMatrix2Svg.builtInDetectors());
+            detectors.add(new NeverDetector());
+
+            CharMatrix2Svg cm2svg = CharMatrix2Svg.withDetectors(new StringWriter(), detectors);
+            cm2svg.setStatistics(statistics);
+            cm2svg.convert(TestDiagrams.charMatrix("* *\n"));
+        }
+
+        Assert.assertEquals(6, statistics.getProbeCount(NeverDetector.class.getName()));
+        Assert.assertEquals(0, statistics.getHitCount(NeverDetector.class.getName()));
+        Assert.assertEquals(2, statistics.getDetectorStatistics().length); // NeverDetector and NORMAL_TEXT
+    }
+
+    @Test public void
+    testMain() throws IOException {
+
+        // "a.html" changes, so "Main" checks and then transforms it; "b.html" does not change.
+        File in = this.folder.newFolder("in");
+        Files.write(new File(in, "a.html").toPath(), TestDiagrams.HTML.getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(in, "b.html").toPath(), "<html></html>\n".getBytes(StandardCharsets.UTF_8));
+        File out = new File(this.folder.getRoot(), "out");
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintStream           pout = System.out;
+        System.setOut(new PrintStream(baos, true, "UTF-8"));
+        try {
+            Main.main(new String[] { "--stats", in.getPath(), out.getPath() });
+        } finally {
+            System.setOut(pout);
+        }
+        String[] lines = new String(baos.toByteArray(), StandardCharsets.UTF_8).split("\\R");
+
+        long bytesIn  = new File(in, "a.html").length() + new File(in, "b.html").length();
+        long bytesOut = new File(out, "a.html").length() + new File(out, "b.html").length();
+        Assert.assertEquals(String.format("Documents:   2 (%,d bytes in, %,d bytes out)", bytesIn, bytesOut), lines[0]);
+
+        // The aborted CHECK pass has converted the first diagram, so the TRANSFORM pass finds all three in the cache.
+        Assert.assertEquals("Diagrams:    3 (1 converted, 2 from the cache)", lines[1]);
+    }
+
+    @Test public void
+    testMBean() throws IOException, JMException {
+
+        ConversionStatistics statistics = new ConversionStatistics();
+        ObjectName           objectName = statistics.registerMBean();
+        try {
+            ConversionStatisticsTest.transform(
+                HTML.getBytes(StandardCharsets.UTF_8),
+                Txt2SvgFilterWriter.PATTERN_ASCII_ART,
+                null,
+                statistics
+            );
+
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            Assert.assertEquals(2L, mbs.getAttribute(objectName, "DiagramCount"));
+            Assert.assertEquals(2, ((String[]) mbs.getAttribute(objectName, "SlowestDiagrams")).length);
+
+            mbs.invoke(objectName, "reset", new Object[0], new String[0]);
+            Assert.assertEquals(0L, mbs.getAttribute(objectName, "DiagramCount"));
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        }
+    }
+
+    private static
+    class NeverDetector implements ArtifactDetector {
+        @Override public int     getPass()            { return ArtifactDetector.PASS_ARROWS; }
+        @Override public boolean isTrigger(char c)    { return c == '*'; }
+        @Override public boolean detect(MutableCharMatrix mcm, int x, int y, CharMatrix2Svg cm2svg) { return false; }
+    }
+
+    private static byte[]
+    transform(byte[] html, Pattern asciiArtPattern, SvgCache cache, ConversionStatistics statistics)
+    throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        Txt2SvgFilterWriter.transform(
+            new ByteArrayInputStream(html), // is
+            os,                             // os
+            StandardCharsets.UTF_8,         // charset
+            asciiArtPattern,                // asciiArtPattern
+            false,                          // sharedStyles
+            false,                          // compact
+            cache,                          // cache
+            "doc.html",                     // path
+            statistics                      // statistics
+        );
+        return os.toByteArray();
+    }
+}
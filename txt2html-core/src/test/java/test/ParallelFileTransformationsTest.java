@@ -0,0 +1,212 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.unkrig.commons.file.ExceptionHandler;
+import de.unkrig.commons.file.filetransformation.FileTransformations;
+import de.unkrig.commons.file.filetransformation.FileTransformer;
+import de.unkrig.commons.file.filetransformation.FileTransformer.Mode;
+import de.unkrig.txt2html.ParallelFileTransformations;
+
+public
+class ParallelFileTransformationsTest {
+
+    @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+    // Appends an "!" to the input.
+    private static final FileTransformer BANG = (path, in, out, mode) -> {
+        if ("fail".equals(in.getName())) throw new IOException(path);
+        ParallelFileTransformationsTest.write(out, ParallelFileTransformationsTest.read(in) + "!");
+    };
+
+    @Test public void
+    testTree() throws IOException {
+        File in  = this.folder.newFolder("in");
+        File out = new File(this.folder.getRoot(), "out");
+        for (int i = 0; i < 100; i++) {
+            ParallelFileTransformationsTest.write(new File(in, "d" + i % 7 + "/f" + i), "file" + i);
+        }
+
+        ParallelFileTransformations.directoryTreeTransformer(
+            BANG,                                          // regularFileTransformer
+            true,                                          // saveSpace
+            false,                                         // keepOriginals
+            3,                                             // threadCount
+            false,                                         // virtualThreads
+            100,                                           // maxBytesInFlight
+            ExceptionHandler.<IOException>defaultHandler() // exceptionHandler
+        ).transform("in", in, out, Mode.TRANSFORM);
+
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(
+                "file" + i + "!",
+                ParallelFileTransformationsTest.read(new File(out, "d" + i % 7 + "/f" + i))
+            );
+        }
+    }
+
+    @Test public void
+    testVirtualThreads() throws IOException {
+        File in  = this.folder.newFolder("in");
+        File out = new File(this.folder.getRoot(), "out");
+        ParallelFileTransformationsTest.write(new File(in, "d/f"), "f");
+
+        FileTransformer ft;
+        try {
+            ft = ParallelFileTransformations.directoryTreeTransformer(
+                BANG,                                                    // regularFileTransformer
+                true,                                                    // saveSpace
+                false,                                                   // keepOriginals
+                1,                                                       // threadCount
+                true,                                                    // virtualThreads
+                ParallelFileTransformations.DEFAULT_MAX_BYTES_IN_FLIGHT, // maxBytesInFlight
+                ExceptionHandler.<IOException>defaultHandler()           // exceptionHandler
+            );
+        } catch (UnsupportedOperationException uoe) {
+
+            // Before Java 21, the transformer cannot even be created.
+            Assert.assertFalse(ParallelFileTransformations.virtualThreadsAvailable());
+            return;
+        }
+
+        Assert.assertTrue(ParallelFileTransformations.virtualThreadsAvailable());
+        ft.transform("in", in, out, Mode.TRANSFORM);
+        Assert.assertEquals("f!", ParallelFileTransformationsTest.read(new File(out, "d/f")));
+    }
+
+    @Test public void
+    testExceptionHandler() throws IOException {
+        File in = this.folder.newFolder("in");
+        ParallelFileTransformationsTest.write(new File(in, "a"), "a");
+        ParallelFileTransformationsTest.write(new File(in, "fail"), "b");
+        ParallelFileTransformationsTest.write(new File(in, "c"), "c");
+
+        // A handler that does not throw lets the transformation continue.
+        final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+        ParallelFileTransformations.directoryTreeTransformer(
+            BANG,
+            true,
+            false,
+            2,
+            false,
+            ParallelFileTransformations.DEFAULT_MAX_BYTES_IN_FLIGHT,
+            new ExceptionHandler<IOException>() {
+                @Override public void handle(String path, IOException ioe)     { failures.add(path); }
+                @Override public void handle(String path, RuntimeException re) { throw re; }
+            }
+        ).transform("in", in, in, Mode.TRANSFORM);
+
+        Assert.assertEquals(Collections.singletonList("in" + File.separator + "fail"), failures);
+        Assert.assertEquals("a!", ParallelFileTransformationsTest.read(new File(in, "a")));
+        Assert.assertEquals("c!", ParallelFileTransformationsTest.read(new File(in, "c")));
+
+        // The default handler rethrows.
+        try {
+            ParallelFileTransformations.directoryTreeTransformer(
+                BANG,
+                true,
+                false,
+                2,
+                false,
+                ParallelFileTransformations.DEFAULT_MAX_BYTES_IN_FLIGHT,
+                ExceptionHandler.<IOException>defaultHandler()
+            ).transform("in", in, in, Mode.TRANSFORM);
+            Assert.fail();
+        } catch (IOException ioe) {
+            Assert.assertEquals("in" + File.separator + "fail", ioe.getMessage());
+        }
+    }
+
+    @Test public void
+    testInPlaceKeepOriginals() throws IOException {
+        File in = this.folder.newFolder("in");
+        for (int i = 0; i < 10; i++) {
+            ParallelFileTransformationsTest.write(new File(in, "d" + i % 3 + "/f" + i), "" + i);
+        }
+
+        // Transform into a new directory, and keep the original directory.
+        ParallelFileTransformationsTest.transformInPlace(in, false, true);
+        File orig = FileTransformations.origFile(in);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(i + "!", ParallelFileTransformationsTest.read(new File(in, "d" + i % 3 + "/f" + i)));
+            Assert.assertEquals("" + i, ParallelFileTransformationsTest.read(new File(orig, "d" + i % 3 + "/f" + i)));
+        }
+        Assert.assertFalse(FileTransformations.newFile(in).exists());
+
+        // Again; the original directory is replaced.
+        ParallelFileTransformationsTest.transformInPlace(in, false, true);
+        Assert.assertEquals("0!!", ParallelFileTransformationsTest.read(new File(in, "d0/f0")));
+        Assert.assertEquals("0!", ParallelFileTransformationsTest.read(new File(orig, "d0/f0")));
+
+        // Without "keepOriginals", the original directory is deleted.
+        Assert.assertTrue(orig.renameTo(new File(this.folder.getRoot(), "old")));
+        ParallelFileTransformationsTest.transformInPlace(in, false, false);
+        Assert.assertEquals("0!!!", ParallelFileTransformationsTest.read(new File(in, "d0/f0")));
+        Assert.assertFalse(orig.exists());
+
+        // With "saveSpace", the files are transformed one by one.
+        ParallelFileTransformationsTest.transformInPlace(in, true, true);
+        Assert.assertEquals("0!!!!", ParallelFileTransformationsTest.read(new File(in, "d0/f0")));
+        Assert.assertFalse(orig.exists());
+    }
+
+    private static void
+    transformInPlace(File dir, boolean saveSpace, boolean keepOriginals) throws IOException {
+        ParallelFileTransformations.directoryTreeTransformer(
+            BANG,                                                    // regularFileTransformer
+            saveSpace,                                               // saveSpace
+            keepOriginals,                                           // keepOriginals
+            3,                                                       // threadCount
+            false,                                                   // virtualThreads
+            ParallelFileTransformations.DEFAULT_MAX_BYTES_IN_FLIGHT, // maxBytesInFlight
+            ExceptionHandler.<IOException>defaultHandler()           // exceptionHandler
+        ).transform("in", dir, dir, Mode.TRANSFORM);
+    }
+
+    private static String
+    read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static void
+    write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
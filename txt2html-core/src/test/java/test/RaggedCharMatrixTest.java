@@ -0,0 +1,98 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.unkrig.txt2html.text.ArrayCharMatrix;
+import de.unkrig.txt2html.text.CharMatrix;
+import de.unkrig.txt2html.text.MutableCharMatrix;
+import de.unkrig.txt2html.text.RaggedCharMatrix;
+
+public
+class RaggedCharMatrixTest {
+
+    @Test public void
+    testCopyOfSparseMatrix() throws IOException {
+
+        StringBuilder sb = new StringBuilder("+--+\n|  |\n+--+\n");
+        for (int i = 0; i < 100; i++) sb.append(' ');
+        sb.append("x\n");
+        for (int i = 0; i < 10; i++) sb.append("y\n");
+        CharMatrix cm = CharMatrix.read(new StringReader(sb.toString()));
+
+        MutableCharMatrix mcm = cm.copy();
+        Assert.assertTrue(mcm instanceof RaggedCharMatrix);
+        Assert.assertEquals(101, mcm.width());
+        Assert.assertEquals(cm.toString(), mcm.toString());
+
+        Assert.assertEquals(101, mcm.contentWidth(3));
+        mcm.fill(100, 3, 1, 1, ' ');
+        Assert.assertEquals(0, mcm.contentWidth(3));
+        mcm.fill(3, 0, 1, 3, ' ');
+        Assert.assertEquals(3, mcm.contentWidth(0));
+        Assert.assertEquals(1, mcm.contentWidth(1));
+    }
+
+    /**
+     * Applies the same random modifications to an {@link ArrayCharMatrix} and a {@link RaggedCharMatrix}, and verifies
+     * that they remain equal (including their occupancy).
+     */
+    @Test public void
+    testEquivalenceWithArrayCharMatrix() throws IOException {
+
+        CharMatrix        cm = CharMatrix.read(new StringReader("abc\n\n    d e\n  f\n"));
+        MutableCharMatrix a  = new ArrayCharMatrix(cm);
+        MutableCharMatrix r  = new RaggedCharMatrix(cm);
+
+        Random random = new Random(0);
+        for (int i = 0; i < 1000; i++) {
+            int  x = random.nextInt(cm.width()), y = random.nextInt(cm.height());
+            char c = random.nextInt(3) == 0 ? (char) ('a' + random.nextInt(26)) : ' ';
+            if (random.nextBoolean()) {
+                a.charAt(x, y, c);
+                r.charAt(x, y, c);
+            } else {
+                int width  = 1 + random.nextInt(cm.width() - x);
+                int height = 1 + random.nextInt(cm.height() - y);
+                a.fill(x, y, width, height, c);
+                r.fill(x, y, width, height, c);
+            }
+            Assert.assertEquals(a.toString(), r.toString());
+            for (int yy = 0; yy < cm.height(); yy++) Assert.assertEquals(a.contentWidth(yy), r.contentWidth(yy));
+            for (int xx = 0; xx < cm.width(); xx++) {
+                for (int yy = 0; yy <= cm.height(); yy++) {
+                    Assert.assertEquals(a.nextNonBlankInColumn(xx, yy), r.nextNonBlankInColumn(xx, yy));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.unkrig.txt2html.CharMatrix2Svg;
+import de.unkrig.txt2html.Scene;
+import de.unkrig.txt2html.Scene.Kind;
+import de.unkrig.txt2html.text.CharMatrix;
+
+public
+class SceneTest {
+
+    @Test public void
+    testToScene() throws IOException {
+        CharMatrix cm    = TestDiagrams.charMatrix(TestDiagrams.SMALL_DIAGRAM);
+        Scene      scene = new CharMatrix2Svg(new StringWriter()).toScene(cm);
+
+        Assert.assertEquals(12, scene.getWidth());
+        Assert.assertEquals(5, scene.getHeight());
+        Assert.assertEquals(5, scene.size());
+
+        // The arrow is detected first, then the table cell (top/left edge, content in absolute coordinates,
+        // right/bottom edge), then the text outside the table.
+        Assert.assertEquals(Kind.ARROW, scene.getKind(0));
+        Assert.assertEquals(3, scene.getX(0, 0));
+        Assert.assertEquals(3, scene.getY(0, 0));
+        Assert.assertEquals(3, scene.getX(0, 1));
+        Assert.assertEquals(4, scene.getY(0, 1));
+
+        Assert.assertEquals(Kind.POLYLINE, scene.getKind(1));
+
+        Assert.assertEquals(Kind.TEXT, scene.getKind(2));
+        Assert.assertEquals("foo", scene.getText(2));
+        Assert.assertEquals(2, scene.getX(2, 0));
+        Assert.assertEquals(1, scene.getY(2, 0));
+
+        Assert.assertEquals(Kind.POLYLINE, scene.getKind(3));
+        Assert.assertEquals(3, scene.getPointCount(3));
+
+        Assert.assertEquals(Kind.TEXT, scene.getKind(4));
+        Assert.assertEquals("bar", scene.getText(4));
+    }
+
+    @Test public void
+    testRenderEqualsConvert() throws IOException {
+        CharMatrix cm = TestDiagrams.charMatrix(TestDiagrams.SMALL_DIAGRAM);
+
+        StringWriter   sw     = new StringWriter();
+        CharMatrix2Svg cm2svg = new CharMatrix2Svg(sw);
+        cm2svg.render(cm2svg.toScene(cm));
+
+        Assert.assertEquals(TestDiagrams.convert(TestDiagrams.SMALL_DIAGRAM), sw.toString());
+    }
+
+    @Test public void
+    testHandMadeScene() {
+        Scene scene = new Scene(10, 3);
+        scene.addText(1, 1, "a<b");
+        scene.addPolyline(0, 0, 9, 0, 9, 2);
+        scene.addArrow(0, 2, 5, 2);
+
+        StringWriter sw = new StringWriter();
+        new CharMatrix2Svg(sw).render(scene);
+
+        String svg = sw.toString();
+        Assert.assertTrue(svg, svg.contains(">a&lt;b</text>"));
+        Assert.assertTrue(svg, svg.contains("<polyline points=\"33,22 87,22 87,52\""));
+        Assert.assertTrue(svg, svg.contains("marker-end='url(#head)'"));
+    }
+
+    @Test(expected = IllegalStateException.class) public void
+    testNoConversionInProgress() {
+        new CharMatrix2Svg(new StringWriter()).text(0, 0, "foo");
+    }
+}
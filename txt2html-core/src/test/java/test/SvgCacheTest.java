@@ -0,0 +1,88 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.unkrig.txt2html.SvgCache;
+
+public
+class SvgCacheTest {
+
+    @Test public void
+    testLru() {
+        SvgCache cache = new SvgCache(3 * (128 + 2 * 10));
+
+        cache.put("k1", "12345678");
+        cache.put("k2", "12345678");
+        cache.put("k3", "12345678");
+        Assert.assertEquals(3, cache.size());
+
+        // Touch "k1", so that "k2" is the least recently used entry.
+        Assert.assertEquals("12345678", cache.get("k1"));
+        cache.put("k4", "12345678");
+        Assert.assertEquals(3, cache.size());
+        Assert.assertNull(cache.get("k2"));
+        Assert.assertNotNull(cache.get("k1"));
+        Assert.assertNotNull(cache.get("k4"));
+
+        // One big entry displaces two small ones.
+        cache.put("k5", "1234567890123456789");
+        Assert.assertEquals(2, cache.size());
+        Assert.assertTrue(cache.getBytes() <= cache.getMaxBytes());
+
+        // Too big to be cached at all.
+        cache.put("k6", new String(new char[1000]));
+        Assert.assertNull(cache.get("k6"));
+
+        Assert.assertEquals(3, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertEquals(3, cache.getEvictionCount());
+    }
+
+    @Test public void
+    testFilterWriter() throws IOException {
+        String   html  = TestDiagrams.HTML;
+        SvgCache cache = new SvgCache(SvgCache.DEFAULT_MAX_BYTES);
+
+        for (boolean sharedStyles : new boolean[] { false, true }) {
+            for (boolean compact : new boolean[] { false, true }) {
+                Assert.assertEquals(
+                    TestDiagrams.filter(html, sharedStyles, compact, null),
+                    TestDiagrams.filter(html, sharedStyles, compact, cache)
+                );
+            }
+        }
+
+        // One miss per combination of settings.
+        Assert.assertEquals(4, cache.getMissCount());
+        Assert.assertEquals(8, cache.getHitCount());
+        Assert.assertEquals(4, cache.size());
+    }
+}
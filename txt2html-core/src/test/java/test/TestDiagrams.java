@@ -0,0 +1,145 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.function.Consumer;
+
+import de.unkrig.txt2html.CharMatrix2Svg;
+import de.unkrig.txt2html.SvgCache;
+import de.unkrig.txt2html.Txt2SvgFilterWriter;
+import de.unkrig.txt2html.text.CharMatrix;
+
+/**
+ * Diagrams and helpers that are shared by the conversion tests.
+ */
+public final
+class TestDiagrams {
+
+    private TestDiagrams() {}
+
+    /**
+     * Tables, a document symbol, arrows, and texts that need escaping.
+     */
+    public static final String DIAGRAM = (
+        ""
+        + "+-----+-----+   +---+\\     +--+\n"
+        + "| a&b | c<d |   |   +-+    |  |  x\n"
+        + "+--+--+-----+   | doc |    +--+\n"
+        + "   |            +-----+\n"
+        + "---+--->  +--+  +--+ +--+      +--+\\\n"
+        + "          |  |  |  | |  |      |  +-+\n"
+        + "  text    +--+  +--+ +--+ more |    |\n"
+        + "                               +----+\n"
+    );
+
+    /**
+     * One box with one text, one arrow, and one text outside the box.
+     */
+    public static final String SMALL_DIAGRAM = (
+        ""
+        + "+-----+\n"
+        + "| foo |  bar\n"
+        + "+-----+\n"
+        + "   |\n"
+        + "   v\n"
+    );
+
+    /**
+     * Texts with XML special characters, and with characters outside the BMP.
+     */
+    public static final String SPECIAL_CHARS_DIAGRAM = (
+        ""
+        + "+-------------+\n"
+        + "| a<b & \"c\" |  --> \u00e4\u20ac\ud83d\ude00\n"
+        + "+-------------+\n"
+    );
+
+    /**
+     * An "ASCII art" region, as {@link Txt2SvgFilterWriter#PATTERN_ASCII_ART} matches it.
+     */
+    public static final String HTML_DIAGRAM = (
+        ""
+        + "<pre class=\"asciiart\"><code>\n"
+        + "+-----+\n"
+        + "| a&amp;b | --+--&gt;\n"
+        + "+-----+   |\n"
+        + "          v\n"
+        + "</code></pre>\n"
+    );
+
+    /**
+     * A document with three {@link #HTML_DIAGRAM}s.
+     */
+    public static final String HTML = (
+        "<html><body>\n" + HTML_DIAGRAM + "<p>Text</p>\n" + HTML_DIAGRAM + HTML_DIAGRAM + "</body></html>\n"
+    );
+
+    public static CharMatrix
+    charMatrix(String diagram) throws IOException { return CharMatrix.read(new StringReader(diagram)); }
+
+    /**
+     * @return The SVG that a {@link CharMatrix2Svg} with the default settings produces for the <var>diagram</var>
+     */
+    public static String
+    convert(String diagram) throws IOException {
+        return TestDiagrams.convert(TestDiagrams.charMatrix(diagram), cm2svg -> {});
+    }
+
+    /**
+     * @param settings Configures the {@link CharMatrix2Svg} before the conversion
+     * @return         The SVG for the <var>cm</var>
+     */
+    public static String
+    convert(CharMatrix cm, Consumer<? super CharMatrix2Svg> settings) {
+        StringWriter   sw     = new StringWriter();
+        CharMatrix2Svg cm2svg = new CharMatrix2Svg(sw);
+        settings.accept(cm2svg);
+        cm2svg.convert(cm);
+        return sw.toString();
+    }
+
+    /**
+     * @return The <var>html</var>, filtered through a {@link Txt2SvgFilterWriter} with the default pattern
+     */
+    public static String
+    filter(String html, boolean sharedStyles, boolean compact, SvgCache cache) throws IOException {
+        StringWriter sw = new StringWriter();
+        try (Writer w = Txt2SvgFilterWriter.make(
+            sw,
+            Txt2SvgFilterWriter.PATTERN_ASCII_ART,
+            sharedStyles,
+            compact,
+            cache
+        )) {
+            w.write(html);
+        }
+        return sw.toString();
+    }
+}
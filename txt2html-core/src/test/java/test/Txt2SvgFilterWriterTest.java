@@ -0,0 +1,258 @@
+
+/*
+ * txt2html - Converts text to an HTML document
+ *
+ * Copyright (c) 2020 Arno Unkrig. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the
+ * following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *       following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the
+ *       following disclaimer in the documentation and/or other materials provided with the distribution.
+ *    3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.unkrig.txt2html.CharMatrix2Svg;
+import de.unkrig.txt2html.SvgCache;
+import de.unkrig.txt2html.Txt2SvgFilterWriter;
+
+public
+class Txt2SvgFilterWriterTest {
+
+    @Test public void
+    testSharedStyles() throws IOException {
+        String inline = TestDiagrams.filter(TestDiagrams.HTML, false, false, null);
+        String shared = TestDiagrams.filter(TestDiagrams.HTML, true, false, null);
+
+        // Without shared styles, each diagram defines its own marker.
+        Assert.assertEquals(3, Txt2SvgFilterWriterTest.count(inline, "<marker id="));
+        Assert.assertEquals(0, Txt2SvgFilterWriterTest.count(inline, "<style>"));
+
+        // With shared styles, the styles and the marker appear once, right before the first diagram.
+        Assert.assertEquals(1, Txt2SvgFilterWriterTest.count(shared, "<marker id="));
+        Assert.assertEquals(1, Txt2SvgFilterWriterTest.count(shared, CharMatrix2Svg.SHARED_STYLES));
+        Assert.assertTrue(shared, shared.startsWith("<html><body>\n" + CharMatrix2Svg.SHARED_STYLES + "<svg "));
+
+        // ... and the diagrams refer to them through CSS classes.
+        Assert.assertEquals(3, Txt2SvgFilterWriterTest.count(shared, "<svg class=\"asciiart\""));
+        Assert.assertEquals(6, Txt2SvgFilterWriterTest.count(shared, "<polyline class=\"box\""));
+        Assert.assertEquals(6, Txt2SvgFilterWriterTest.count(shared, "<line class=\"line\""));
+        Assert.assertEquals(6, Txt2SvgFilterWriterTest.count(shared, "<line class=\"arrow\""));
+        Assert.assertEquals(3, Txt2SvgFilterWriterTest.count(shared, ">a&amp;b</text>"));
+        Assert.assertEquals(
+            Txt2SvgFilterWriterTest.count(CharMatrix2Svg.SHARED_STYLES, "style="),
+            Txt2SvgFilterWriterTest.count(shared, "style=")
+        );
+
+        Assert.assertTrue(shared.length() < inline.length());
+    }
+
+    /**
+     * Verifies that the converter, which is re-used for all diagrams of a document, carries no state from one diagram
+     * to the next: Each diagram of a document must become exactly what it becomes in a document of its own.
+     */
+    @Test public void
+    testConverterReuse() throws IOException {
+
+        String[] regions = {
+            Txt2SvgFilterWriterTest.asciiArtRegion(TestDiagrams.DIAGRAM),
+            Txt2SvgFilterWriterTest.asciiArtRegion(TestDiagrams.SMALL_DIAGRAM),
+            Txt2SvgFilterWriterTest.asciiArtRegion(TestDiagrams.SPECIAL_CHARS_DIAGRAM),
+            Txt2SvgFilterWriterTest.asciiArtRegion(TestDiagrams.DIAGRAM),
+        };
+
+        for (boolean compact : new boolean[] { false, true }) {
+            StringBuilder expected = new StringBuilder();
+            for (String region : regions) expected.append(TestDiagrams.filter(region, false, compact, null));
+
+            Assert.assertEquals(
+                expected.toString(),
+                TestDiagrams.filter(String.join("", regions), false, compact, null)
+            );
+        }
+    }
+
+    /**
+     * Verifies that the dedicated scanner for the default pattern replaces exactly what the regex engine replaces,
+     * regardless of how the text is chunked and flushed.
+     */
+    @Test public void
+    testScannerMatchesRegex() throws IOException {
+
+        String[] fragments = {
+            "<pre class=\"asciiart\"><code>", "<pre class=\"asciiart\"><", "<pre", "<p", "<", ".", "x", "ab\n",
+            "</code></pre>", "</code><", "</code></p", "</", "&lt;", "<code>", "+--+\n|  |\n+--+\n", ">",
+        };
+
+        // The same pattern, but different, so that "make()" uses the regex engine.
+        Pattern regex = Pattern.compile(Txt2SvgFilterWriter.PATTERN_ASCII_ART.pattern() + "(?:)");
+
+        Random r = new Random(42);
+        for (int i = 0; i < 3000; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = r.nextInt(12); j > 0; j--) sb.append(fragments[r.nextInt(fragments.length)]);
+            char[] html = sb.toString().toCharArray();
+
+            StringWriter sw1 = new StringWriter(), sw2 = new StringWriter();
+            try (
+                Writer w1 = Txt2SvgFilterWriter.make(sw1, regex, false, false, null);
+                Writer w2 = Txt2SvgFilterWriter.make(sw2, Txt2SvgFilterWriter.PATTERN_ASCII_ART, false, false, null)
+            ) {
+                for (int off = 0; off < html.length;) {
+                    int len = Math.min(1 + r.nextInt(6), html.length - off);
+                    w1.write(html, off, len);
+                    w2.write(html, off, len);
+                    off += len;
+                    if (r.nextInt(5) == 0) {
+                        w1.flush();
+                        w2.flush();
+                    }
+                }
+            }
+            Assert.assertEquals(sb.toString(), sw1.toString(), sw2.toString());
+        }
+    }
+
+    /**
+     * Verifies that the byte-level path produces the same bytes as the reader/writer path, regardless of how the
+     * input is chunked (also within multi-byte characters).
+     */
+    @Test public void
+    testBytesMatchChars() throws IOException {
+
+        String[] fragments = {
+            "<pre class=\"asciiart\"><code>", "<pre class=\"asciiart\"><", "<pre", "<", "x", "\u00e4", "\u20ac\n",
+            "</code></pre>", "</code><", "</", "&lt;", "+--+\n|\u00e4 |\n+--+\n", ">",
+        };
+
+        // The same pattern, but different, so that "transform()" decodes and encodes the entire document.
+        Pattern regex = Pattern.compile(Txt2SvgFilterWriter.PATTERN_ASCII_ART.pattern() + "(?:)");
+
+        Random r = new Random(42);
+        for (Charset charset : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1 }) {
+            for (int i = 0; i < 1000; i++) {
+                StringBuilder sb = new StringBuilder();
+                for (int j = r.nextInt(12); j > 0; j--) sb.append(fragments[r.nextInt(fragments.length)]);
+                byte[] html = sb.toString().getBytes(charset);
+
+                ByteArrayOutputStream os1 = new ByteArrayOutputStream(), os2 = new ByteArrayOutputStream();
+                Txt2SvgFilterWriter.transform(new ByteArrayInputStream(html), os1, charset, regex, true, false, null);
+                Txt2SvgFilterWriter.transform(
+                    Txt2SvgFilterWriterTest.chunked(html, r), // is
+                    os2,                                      // os
+                    charset,                                  // charset
+                    Txt2SvgFilterWriter.PATTERN_ASCII_ART,    // asciiArtPattern
+                    true,                                     // sharedStyles
+                    false,                                    // compact
+                    null                                      // cache
+                );
+                Assert.assertArrayEquals(sb.toString(), os1.toByteArray(), os2.toByteArray());
+            }
+        }
+    }
+
+    /**
+     * Verifies that characters which the charset cannot encode (here: decoded from numeric character references in
+     * the ASCII art) appear as numeric character references in the SVG, and not as "?".
+     */
+    @Test public void
+    testUnencodableCharacters() throws IOException {
+
+        String html = (
+            ""
+            + "<p>\u00e4</p>\n"
+            + "<pre class=\"asciiart\"><code>\n"
+            + "+--+  \u00e4&#x20ac;&#x1F600;\n"
+            + "|  |\n"
+            + "+--+\n"
+            + "</code></pre>\n"
+        );
+
+        // The regex engine takes the reader/writer path, the default pattern the byte-level path.
+        Pattern regex = Pattern.compile(Txt2SvgFilterWriter.PATTERN_ASCII_ART.pattern() + "(?:)");
+
+        // Also verifies that the cache keeps the SVGs for different charsets apart.
+        SvgCache cache = new SvgCache(SvgCache.DEFAULT_MAX_BYTES);
+
+        for (Pattern pattern : new Pattern[] { Txt2SvgFilterWriter.PATTERN_ASCII_ART, regex }) {
+            for (Charset charset : new Charset[] { StandardCharsets.ISO_8859_1, StandardCharsets.UTF_8 }) {
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                Txt2SvgFilterWriter.transform(
+                    new ByteArrayInputStream(html.getBytes(charset)), // is
+                    os,                                               // os
+                    charset,                                          // charset
+                    pattern,                                          // asciiArtPattern
+                    false,                                            // sharedStyles
+                    false,                                            // compact
+                    cache                                             // cache
+                );
+                String result = new String(os.toByteArray(), charset);
+
+                Assert.assertTrue(result, result.startsWith("<p>\u00e4</p>\n<svg "));
+                Assert.assertTrue(result, result.contains(
+                    charset == StandardCharsets.UTF_8
+                    ? ">\u00e4\u20ac\ud83d\ude00</text>"
+                    : ">\u00e4&#8364;&#128512;</text>"
+                ));
+            }
+        }
+    }
+
+    /**
+     * @return Reads the <var>bytes</var> in small chunks of random size
+     */
+    private static InputStream
+    chunked(byte[] bytes, Random r) {
+
+        return new ByteArrayInputStream(bytes) {
+
+            @Override public synchronized int
+            read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1 + r.nextInt(6)));
+            }
+        };
+    }
+
+    private static String
+    asciiArtRegion(String diagram) {
+        return (
+            "<pre class=\"asciiart\"><code>\n"
+            + diagram.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;")
+            + "</code></pre>\n"
+        );
+    }
+
+    private static int
+    count(String s, String infix) {
+        int result = 0;
+        for (int i = s.indexOf(infix); i != -1; i = s.indexOf(infix, i + infix.length())) result++;
+        return result;
+    }
+}
@@ -28,11 +28,7 @@ package de.unkrig.txt2html.mavenplugin;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.StringReader;
-import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.regex.Pattern;
@@ -50,13 +46,14 @@ import de.unkrig.commons.file.filetransformation.FileTransformations;
 import de.unkrig.commons.file.filetransformation.FileTransformations.DirectoryCombiner;
 import de.unkrig.commons.file.filetransformation.FileTransformer;
 import de.unkrig.commons.file.filetransformation.FileTransformer.Mode;
-import de.unkrig.commons.io.IoUtil;
 import de.unkrig.commons.lang.ObjectUtil;
 import de.unkrig.commons.lang.protocol.PredicateUtil;
 import de.unkrig.commons.text.pattern.Glob;
-import de.unkrig.commons.text.pattern.PatternUtil;
-import de.unkrig.txt2html.CharMatrix2Svg;
-import de.unkrig.txt2html.text.CharMatrix;
+import de.unkrig.txt2html.ConversionManifest;
+import de.unkrig.txt2html.ConversionStatistics;
+import de.unkrig.txt2html.ParallelFileTransformations;
+import de.unkrig.txt2html.SvgCache;
+import de.unkrig.txt2html.Txt2SvgFilterWriter;
 
 @Mojo(name = "txt2html", defaultPhase = LifecyclePhase.PACKAGE)
 public
@@ -80,9 +77,55 @@ class Txt2HtmlMojo extends AbstractMojo {
     @Parameter(defaultValue = "<pre class=\"asciiart\"><code>\\.?([^<]*)</code></pre>", property = "asciiArtPattern")
     private String asciiArtRegex;
 
+    /**
+     * Whether to emit one stylesheet and arrow head marker per HTML document, and let all diagrams refer to it,
+     * instead of repeating the styles in each diagram.
+     */
+    @Parameter(defaultValue = "false", property = "sharedStyles", required = false)
+    private boolean sharedStyles;
+
+    /**
+     * Whether to produce smaller SVG markup, with merged paths and without whitespace.
+     */
+    @Parameter(defaultValue = "false", property = "compact", required = false)
+    private boolean compact;
+
+    /**
+     * If set, then the hashes of all input and output files are recorded in this file, and the next run skips the
+     * files that have not changed since.
+     */
+    @Parameter(property = "manifestFile", required = false)
+    private File manifestFile;
+
+    /**
+     * The number of files to transform concurrently; 0 means "one per processor".
+     */
+    @Parameter(defaultValue = "1", property = "threads", required = false)
+    private int threads;
+
+    /**
+     * Whether to transform each file on its own virtual thread; requires Java 21 or later.
+     */
+    @Parameter(defaultValue = "false", property = "virtualThreads", required = false)
+    private boolean virtualThreads;
+
+    /**
+     * Whether to count the documents, diagrams, detector probes and conversion times, and log a summary at the end.
+     */
+    @Parameter(defaultValue = "false", property = "statistics", required = false)
+    private boolean statistics;
+
+    // Javadoc trees repeat the same diagrams on many pages.
+    private final SvgCache cache = new SvgCache(SvgCache.DEFAULT_MAX_BYTES);
+
     public void
     execute() throws MojoExecutionException {
-        
+
+        if (this.threads < 0) throw new MojoExecutionException("Invalid thread count " + this.threads);
+        if (this.virtualThreads && !ParallelFileTransformations.virtualThreadsAvailable()) {
+            throw new MojoExecutionException("\"virtualThreads\" requires Java 21 or later");
+        }
+
         try {
             this.execute2();
         } catch (Exception e) {
@@ -94,29 +137,70 @@ class Txt2HtmlMojo extends AbstractMojo {
     execute2() throws IOException {
 
         // Set up a FileContentsTransformer.
-        Charset charset = Charset.forName(this.encoding);
+        Charset              charset         = Charset.forName(this.encoding);
+        Pattern              asciiArtPattern = Pattern.compile(this.asciiArtRegex);
+        ConversionStatistics statistics      = this.statistics ? new ConversionStatistics() : null;
         FileTransformer ft = new FileContentsTransformer(new ContentsTransformer() {
             
             @Override public void
             transform(String path, InputStream is, OutputStream os) throws IOException {
-                IoUtil.copy(
-                    new InputStreamReader(is, charset),       // reader
-                    make(new OutputStreamWriter(os, charset)) // writer
+                Txt2SvgFilterWriter.transform(
+                    is,                                // is
+                    os,                                // os
+                    charset,                           // charset
+                    asciiArtPattern,                   // asciiArtPattern
+                    Txt2HtmlMojo.this.sharedStyles,    // sharedStyles
+                    Txt2HtmlMojo.this.compact,         // compact
+                    Txt2HtmlMojo.this.cache,           // cache
+                    path,                              // path
+                    statistics                         // statistics
                 );
             }
         }, this.keepOriginals);
-        
+
+        // Skip files that have not changed since the last run.
+        ConversionManifest manifest = null;
+        if (this.manifestFile != null) {
+            manifest = ConversionManifest.load(
+                this.manifestFile,
+                (
+                    "encoding="
+                    + this.encoding
+                    + ",asciiArtPattern="
+                    + this.asciiArtRegex
+                    + ",sharedStyles="
+                    + this.sharedStyles
+                    + ",compact="
+                    + this.compact
+                )
+            );
+            ft = manifest.incremental(ft);
+        }
+
         // Wrap it such that it processes directory trees recursively.
-        ft = FileTransformations.directoryTreeTransformer(
-            null,                                          // directoryMemberNameComparator
-            PredicateUtil.never(),                         // directoryMemberRemoval
-            Glob.ANY,                                      // directoryMemberRenaming
-            DirectoryCombiner.NOP,                         // directoryCombiner
-            ft,                                            // regularFileTransformer
-            this.saveSpace,                                // saveSpace
-            this.keepOriginals,                            // keepOriginals
-            ExceptionHandler.<IOException>defaultHandler() // exceptionHandler
-        );
+        int threadCount = this.threads == 0 ? Runtime.getRuntime().availableProcessors() : this.threads;
+        if (threadCount > 1 || this.virtualThreads) {
+            ft = ParallelFileTransformations.directoryTreeTransformer(
+                ft,                                                      // regularFileTransformer
+                this.saveSpace,                                          // saveSpace
+                this.keepOriginals,                                      // keepOriginals
+                threadCount,                                             // threadCount
+                this.virtualThreads,                                     // virtualThreads
+                ParallelFileTransformations.DEFAULT_MAX_BYTES_IN_FLIGHT, // maxBytesInFlight
+                ExceptionHandler.<IOException>defaultHandler()           // exceptionHandler
+            );
+        } else {
+            ft = FileTransformations.directoryTreeTransformer(
+                null,                                          // directoryMemberNameComparator
+                PredicateUtil.never(),                         // directoryMemberRemoval
+                Glob.ANY,                                      // directoryMemberRenaming
+                DirectoryCombiner.NOP,                         // directoryCombiner
+                ft,                                            // regularFileTransformer
+                this.saveSpace,                                // saveSpace
+                this.keepOriginals,                            // keepOriginals
+                ExceptionHandler.<IOException>defaultHandler() // exceptionHandler
+            );
+        }
         
         ft.transform(
             this.directory.getPath(),                            // path
@@ -124,25 +208,30 @@ class Txt2HtmlMojo extends AbstractMojo {
             ObjectUtil.or(this.outputDirectory, this.directory), // out
             Mode.CHECK_AND_TRANSFORM                             // mode
         );
+
+        if (manifest != null) {
+            manifest.save();
+            this.getLog().info(
+                manifest.getTransformCount()
+                + " file(s) transformed, "
+                + manifest.getSkipCount()
+                + " unchanged file(s) skipped"
+            );
+        }
+
+        if (statistics != null) {
+            for (String line : statistics.toString().split("\\R")) this.getLog().info(line);
+        }
     }
 
     public Writer
     make(Writer delegate) {
-        
-        return PatternUtil.replaceAllFilterWriter(
-            Pattern.compile(this.asciiArtRegex),     // pattern
-            mr -> {                                  // matchReplacer
-                String text = mr.group(1);
-                text = text.replace("&lt;",   "<");
-                text = text.replace("&gt;",   ">");
-                text = text.replace("&quot;", "\"");
-                text = text.replace("&amp;",  "&");
-                
-                StringWriter sw = new StringWriter();
-                new CharMatrix2Svg(sw).convert(CharMatrix.read(new StringReader(text)));
-                return sw.toString();
-            },
-            delegate                                 // delegate
+        return Txt2SvgFilterWriter.make(
+            delegate,                            // delegate
+            Pattern.compile(this.asciiArtRegex), // asciiArtPattern
+            this.sharedStyles,                   // sharedStyles
+            this.compact,                        // compact
+            this.cache                           // cache
         );
     }
 }